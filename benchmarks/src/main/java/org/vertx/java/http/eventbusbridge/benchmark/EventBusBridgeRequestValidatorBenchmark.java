@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.security.EventBusBridgeRequestValidator;
+
+/**
+ * Benchmarks whitelist validation of addresses. Half of the whitelist is exact addresses and half is
+ * regexes; the regex and rejected addresses are only matched after every regex has been tried. Successive
+ * validations rotate through the config copies held by several simulated verticle instances, which share the
+ * whitelist compiled when the module starts.
+ *
+ * @author j2ro
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBusBridgeRequestValidatorBenchmark {
+
+	private static final int INSTANCES = 4;
+
+	@Param({ "10", "100", "1000" })
+	public int whitelistSize;
+
+	@Param({ "0", "1024" })
+	public int decisionCacheSize;
+
+	private JsonObject[] configs;
+	private int instance;
+	private String exactAddress;
+	private String regexAddress;
+	private String rejectedAddress;
+
+	@Setup
+	public void setUp() {
+		JsonArray addresses = new JsonArray();
+		JsonArray addressRegexes = new JsonArray();
+		int regexes = whitelistSize / 2;
+		for (int i = 0; i < whitelistSize - regexes; i++) {
+			addresses.addString("address." + i);
+		}
+		for (int i = 0; i < regexes; i++) {
+			addressRegexes.addString("regex\\." + i + "\\..*");
+		}
+		JsonObject config = new JsonObject()
+				.putObject("whitelist", new JsonObject()
+						.putNumber("decision_cache_size", decisionCacheSize)
+						.putObject("inbound", new JsonObject()
+								.putArray("address", addresses)
+								.putArray("address_re", addressRegexes)));
+		configs = new JsonObject[INSTANCES];
+		for (int i = 0; i < INSTANCES; i++) {
+			configs[i] = config.copy();
+		}
+		EventBusBridgeRequestValidator.clearWhitelists();
+		EventBusBridgeRequestValidator.getInboundWhitelist(configs[0]);
+
+		exactAddress = "address." + (whitelistSize - regexes - 1);
+		regexAddress = "regex." + (regexes - 1) + ".benchmark";
+		rejectedAddress = "rejected.benchmark";
+	}
+
+	@Benchmark
+	public boolean validateExactAddress() {
+		return EventBusBridgeRequestValidator.validateIncomingAddress(exactAddress, nextConfig());
+	}
+
+	@Benchmark
+	public boolean validateRegexAddress() {
+		return EventBusBridgeRequestValidator.validateIncomingAddress(regexAddress, nextConfig());
+	}
+
+	@Benchmark
+	public boolean validateRejectedAddress() {
+		return EventBusBridgeRequestValidator.validateIncomingAddress(rejectedAddress, nextConfig());
+	}
+
+	private JsonObject nextConfig() {
+		instance = (instance + 1) % INSTANCES;
+		return configs[instance];
+	}
+}
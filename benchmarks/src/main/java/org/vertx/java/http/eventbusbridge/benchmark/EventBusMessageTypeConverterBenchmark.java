@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
+import org.vertx.java.http.eventbusbridge.util.EventBusMessageTypeConverter;
+
+/**
+ * Benchmarks conversion of messages to and from the bytes carried in requests and responses.
+ *
+ * @author j2ro
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventBusMessageTypeConverterBenchmark {
+
+	@Param({ "String", "ByteArray", "JsonObject", "JsonArray" })
+	public EventBusMessageType messageType;
+
+	@Param({ "64", "1024", "16384" })
+	public int payloadSize;
+
+	private byte[] incomingMessage;
+	private Object outgoingMessage;
+
+	@Setup
+	public void setUp() {
+		incomingMessage = Payloads.create(messageType, payloadSize);
+		outgoingMessage = EventBusMessageTypeConverter.convertIncomingMessage(incomingMessage, messageType);
+	}
+
+	@Benchmark
+	public Object convertIncomingMessage() {
+		return EventBusMessageTypeConverter.convertIncomingMessage(incomingMessage, messageType);
+	}
+
+	@Benchmark
+	public byte[] convertOutgoingMessage() {
+		return EventBusMessageTypeConverter.convertOutgoingMessage(outgoingMessage);
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.benchmark;
+
+import java.util.Arrays;
+
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
+
+/**
+ * Creates messages of a given type and approximate size for the benchmarks.
+ *
+ * @author j2ro
+ *
+ */
+final class Payloads {
+
+	private static final int FIELD_SIZE = 32;
+
+	private Payloads() {
+	}
+
+	/**
+	 * Creates a message encoded as it would arrive in a request.
+	 * @param messageType Type of the message
+	 * @param size Approximate size of the message in bytes
+	 * @return The encoded message
+	 */
+	static byte[] create(final EventBusMessageType messageType, final int size) {
+		switch (messageType) {
+			case String:
+				return text(size).getBytes();
+			case ByteArray:
+				byte[] bytes = new byte[size];
+				Arrays.fill(bytes, (byte) 'x');
+				return bytes;
+			case JsonObject:
+				JsonObject jsonObject = new JsonObject();
+				for (int i = 0; i * FIELD_SIZE < size; i++) {
+					jsonObject.putString("field" + i, text(FIELD_SIZE - 12));
+				}
+				return jsonObject.encode().getBytes();
+			case JsonArray:
+				JsonArray jsonArray = new JsonArray();
+				for (int i = 0; i * FIELD_SIZE < size; i++) {
+					jsonArray.addString(text(FIELD_SIZE - 3));
+				}
+				return jsonArray.encode().getBytes();
+			default:
+				throw new IllegalArgumentException("Unsupported benchmark message type: " + messageType);
+		}
+	}
+
+	private static String text(final int size) {
+		char[] chars = new char[size];
+		Arrays.fill(chars, 'x');
+		return new String(chars);
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeRequest;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeResponse;
+import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
+import org.vertx.java.http.eventbusbridge.util.SerializationHelper;
+
+/**
+ * Benchmarks serialisation of responses, and deserialisation of requests, to and from JSON and XML.
+ *
+ * @author j2ro
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationHelperBenchmark {
+
+	@Param({ "application/json", "application/xml" })
+	public String mediaType;
+
+	@Param({ "String", "JsonObject" })
+	public EventBusMessageType messageType;
+
+	@Param({ "64", "1024", "16384" })
+	public int payloadSize;
+
+	@Param({ "true", "false" })
+	public boolean compact;
+
+	private EventBusBridgeResponse response;
+	private byte[] serializedRequest;
+
+	@Setup
+	public void setUp() throws IOException, JAXBException {
+		byte[] message = Payloads.create(messageType, payloadSize);
+
+		response = new EventBusBridgeResponse();
+		response.setAddress("benchmark.address");
+		response.setSuccessful(true);
+		response.setResponseMessage(message);
+		response.setEventBusMessageType(messageType);
+
+		EventBusBridgeRequest request = new EventBusBridgeRequest();
+		request.setAddress("benchmark.address");
+		request.setMessage(message);
+		request.setEventBusMessageType(messageType);
+		request.setResponseUrl("http://localhost:8080/response");
+		request.setResponseMediaType(mediaType);
+		serializedRequest = SerializationHelper.serialize(request, mediaType).getBytes();
+	}
+
+	@Benchmark
+	public String serializeResponse() throws IOException, JAXBException {
+		return SerializationHelper.serialize(response, mediaType, compact);
+	}
+
+	@Benchmark
+	public Buffer serializeResponseToBuffer() throws IOException, JAXBException {
+		return SerializationHelper.serializeToBuffer(response, mediaType, compact);
+	}
+
+	@Benchmark
+	public EventBusBridgeRequest deserializeRequest() throws IOException, JAXBException {
+		return SerializationHelper.deserialize(serializedRequest, mediaType, EventBusBridgeRequest.class);
+	}
+}
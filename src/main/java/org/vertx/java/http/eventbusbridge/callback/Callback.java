@@ -0,0 +1,93 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.callback;
+
+import java.net.URL;
+
+import org.vertx.java.core.buffer.Buffer;
+
+/**
+ * A serialized reply, or batch of replies, waiting to be posted to its response url.
+ *
+ * @author j2ro
+ *
+ */
+final class Callback {
+
+	private final URL url;
+	private final String mediaType;
+	private final Buffer body;
+	private int attempts;
+	private long retryTimerId;
+	private CallbackOutbox.Entry outboxEntry;
+	private String correlationId;
+
+	/**
+	 * Creates new instance of Callback.
+	 * @param url URL to post the body to
+	 * @param mediaType Media type of the body
+	 * @param body The serialized reply
+	 */
+	Callback(final URL url, final String mediaType, final Buffer body) {
+		this.url = url;
+		this.mediaType = mediaType;
+		this.body = body;
+	}
+
+	URL getUrl() {
+		return url;
+	}
+
+	String getMediaType() {
+		return mediaType;
+	}
+
+	Buffer getBody() {
+		return body;
+	}
+
+	int getAttempts() {
+		return attempts;
+	}
+
+	int attempt() {
+		return ++attempts;
+	}
+
+	long getRetryTimerId() {
+		return retryTimerId;
+	}
+
+	void setRetryTimerId(final long retryTimerId) {
+		this.retryTimerId = retryTimerId;
+	}
+
+	CallbackOutbox.Entry getOutboxEntry() {
+		return outboxEntry;
+	}
+
+	void setOutboxEntry(final CallbackOutbox.Entry outboxEntry) {
+		this.outboxEntry = outboxEntry;
+	}
+
+	String getCorrelationId() {
+		return correlationId;
+	}
+
+	void setCorrelationId(final String correlationId) {
+		this.correlationId = correlationId;
+	}
+}
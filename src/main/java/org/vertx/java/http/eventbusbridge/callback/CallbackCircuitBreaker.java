@@ -0,0 +1,106 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.callback;
+
+/**
+ * Circuit breaker guarding the posts to a single callback host.
+ *
+ * The circuit is closed while the host is answering. Once 'failureThreshold' posts in a row have failed, the
+ * circuit opens and no posts are made to the host for 'resetTimeout' milliseconds. The circuit is then
+ * half-open: up to 'halfOpenMaxCalls' trial posts are let through, and the first of them to succeed closes
+ * the circuit again, while a failure opens it for another 'resetTimeout'.
+ *
+ * @author j2ro
+ *
+ */
+final class CallbackCircuitBreaker {
+
+	/**
+	 * States of the circuit.
+	 */
+	enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long resetTimeout;
+	private final int halfOpenMaxCalls;
+	private State state = State.CLOSED;
+	private int failures;
+	private int trialCalls;
+	private long openedAt;
+
+	/**
+	 * Creates new instance of CallbackCircuitBreaker.
+	 * @param failureThreshold Number of consecutive failures that open the circuit, 0 to never open it
+	 * @param resetTimeout Period in milliseconds the circuit stays open for
+	 * @param halfOpenMaxCalls Number of trial posts allowed while the circuit is half-open
+	 */
+	CallbackCircuitBreaker(final int failureThreshold, final long resetTimeout, final int halfOpenMaxCalls) {
+		this.failureThreshold = failureThreshold;
+		this.resetTimeout = resetTimeout;
+		this.halfOpenMaxCalls = halfOpenMaxCalls;
+	}
+
+	/**
+	 * Determines whether a post may be made to the host now. A post that is allowed must be followed by a
+	 * call to {@link #success()} or {@link #failure(long)} once its outcome is known.
+	 * @param now Current time in milliseconds
+	 * @return true if the post may be made
+	 */
+	boolean allow(final long now) {
+		if (state == State.OPEN && now - openedAt >= resetTimeout) {
+			state = State.HALF_OPEN;
+			trialCalls = 0;
+		}
+		switch (state) {
+		case CLOSED:
+			return true;
+		case HALF_OPEN:
+			if (trialCalls < halfOpenMaxCalls) {
+				trialCalls++;
+				return true;
+			}
+			return false;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Records that the host answered a post.
+	 */
+	void success() {
+		state = State.CLOSED;
+		failures = 0;
+	}
+
+	/**
+	 * Records that a post to the host failed.
+	 * @param now Current time in milliseconds
+	 */
+	void failure(final long now) {
+		failures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && failureThreshold > 0 && failures >= failureThreshold)) {
+			state = State.OPEN;
+			openedAt = now;
+		}
+	}
+
+	State getState() {
+		return state;
+	}
+}
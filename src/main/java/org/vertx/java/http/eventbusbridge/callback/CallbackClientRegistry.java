@@ -0,0 +1,198 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.callback;
+
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Registry of pooled, keep-alive HTTP clients used to post replies back to response urls.
+ *
+ * One registry exists per event loop thread, so every HttpResponseHandler running on that event loop shares
+ * the same clients. Clients are keyed by scheme, host and port, and are closed once they have been idle
+ * for longer than the configured idle timeout.
+ *
+ * @author j2ro
+ *
+ */
+public final class CallbackClientRegistry {
+
+	private static final Logger LOGGER = Logger.getLogger(CallbackClientRegistry.class);
+
+	private static final String CALLBACK_CONFIG = "callback";
+	private static final String KEEP_ALIVE = "keep_alive";
+	private static final String MAX_POOL_SIZE = "max_pool_size";
+	private static final String IDLE_TIMEOUT = "idle_timeout";
+
+	private static final boolean DEFAULT_KEEP_ALIVE = true;
+	private static final int DEFAULT_MAX_POOL_SIZE = 5;
+	private static final long DEFAULT_IDLE_TIMEOUT = 60000;
+	private static final long NO_TIMER = -1;
+
+	private static final ThreadLocal<CallbackClientRegistry> REGISTRIES = new ThreadLocal<CallbackClientRegistry>();
+
+	private final Vertx vertx;
+	private final boolean keepAlive;
+	private final int maxPoolSize;
+	private final long idleTimeout;
+	private final Map<String, PooledClient> clients = new HashMap<String, PooledClient>();
+	private long evictionTimerId = NO_TIMER;
+
+	private CallbackClientRegistry(final Vertx vertx, final JsonObject config) {
+		JsonObject callbackConfig = config.getObject(CALLBACK_CONFIG, new JsonObject());
+		this.vertx = vertx;
+		this.keepAlive = callbackConfig.getBoolean(KEEP_ALIVE, DEFAULT_KEEP_ALIVE);
+		this.maxPoolSize = callbackConfig.getInteger(MAX_POOL_SIZE, DEFAULT_MAX_POOL_SIZE);
+		this.idleTimeout = callbackConfig.getLong(IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * Gets the registry belonging to the calling event loop, creating it on first use.
+	 * @param vertx Vertx instance
+	 * @param config Configuration
+	 * @return The registry for the current event loop
+	 */
+	public static CallbackClientRegistry get(final Vertx vertx, final JsonObject config) {
+		CallbackClientRegistry registry = REGISTRIES.get();
+		if (registry == null || registry.vertx != vertx) {
+			if (registry != null) {
+				registry.close();
+			}
+			registry = new CallbackClientRegistry(vertx, config);
+			REGISTRIES.set(registry);
+		}
+		return registry;
+	}
+
+	/**
+	 * Acquires the client for the scheme, host and port of the url. Every call must be matched by a call to
+	 * {@link #release(URL)} once the request made with the client has completed.
+	 * @param url URL the client will be used to post to
+	 * @return HTTP client connected to the url's host and port
+	 */
+	public HttpClient acquire(final URL url) {
+		String key = keyFor(url);
+		PooledClient pooledClient = clients.get(key);
+		if (pooledClient == null) {
+			pooledClient = new PooledClient(createClient(url));
+			clients.put(key, pooledClient);
+			startEvictionTimer();
+		}
+		pooledClient.inFlight++;
+		pooledClient.lastUsed = System.currentTimeMillis();
+		return pooledClient.httpClient;
+	}
+
+	/**
+	 * Releases a client previously acquired with {@link #acquire(URL)}.
+	 * @param url URL the client was used to post to
+	 */
+	public void release(final URL url) {
+		PooledClient pooledClient = clients.get(keyFor(url));
+		if (pooledClient != null && pooledClient.inFlight > 0) {
+			pooledClient.inFlight--;
+			pooledClient.lastUsed = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Gets the number of clients currently held by the registry.
+	 * @return number of pooled clients
+	 */
+	public int size() {
+		return clients.size();
+	}
+
+	/**
+	 * Closes all clients held by the registry.
+	 */
+	public void close() {
+		if (evictionTimerId != NO_TIMER) {
+			vertx.cancelTimer(evictionTimerId);
+			evictionTimerId = NO_TIMER;
+		}
+		for (PooledClient pooledClient : clients.values()) {
+			pooledClient.httpClient.close();
+		}
+		clients.clear();
+	}
+
+	private HttpClient createClient(final URL url) {
+		HttpClient httpClient = vertx.createHttpClient();
+		httpClient.setHost(url.getHost());
+		httpClient.setPort(portFor(url));
+		httpClient.setSSL("https".equalsIgnoreCase(url.getProtocol()));
+		httpClient.setKeepAlive(keepAlive);
+		httpClient.setMaxPoolSize(maxPoolSize);
+		return httpClient;
+	}
+
+	private void startEvictionTimer() {
+		if (evictionTimerId == NO_TIMER && idleTimeout > 0) {
+			evictionTimerId = vertx.setPeriodic(idleTimeout, new Handler<Long>() {
+				@Override
+				public void handle(final Long timerId) {
+					evictIdleClients();
+				}
+			});
+		}
+	}
+
+	private void evictIdleClients() {
+		long now = System.currentTimeMillis();
+		Iterator<Map.Entry<String, PooledClient>> iterator = clients.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, PooledClient> entry = iterator.next();
+			PooledClient pooledClient = entry.getValue();
+			if (pooledClient.inFlight == 0 && now - pooledClient.lastUsed >= idleTimeout) {
+				LOGGER.debug("Closing idle callback client for " + entry.getKey());
+				pooledClient.httpClient.close();
+				iterator.remove();
+			}
+		}
+		if (clients.isEmpty()) {
+			vertx.cancelTimer(evictionTimerId);
+			evictionTimerId = NO_TIMER;
+		}
+	}
+
+	static String keyFor(final URL url) {
+		return url.getProtocol().toLowerCase() + "://" + url.getHost().toLowerCase() + ':' + portFor(url);
+	}
+
+	private static int portFor(final URL url) {
+		return url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+	}
+
+	private static final class PooledClient {
+
+		private final HttpClient httpClient;
+		private int inFlight;
+		private long lastUsed;
+
+		private PooledClient(final HttpClient httpClient) {
+			this.httpClient = httpClient;
+		}
+	}
+}
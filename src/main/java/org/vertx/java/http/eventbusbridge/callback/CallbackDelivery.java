@@ -0,0 +1,626 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.callback;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.xml.bind.JAXBException;
+
+import org.apache.log4j.Logger;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.metrics.BridgeMetrics;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeResponse;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeResponseBatch;
+import org.vertx.java.http.eventbusbridge.security.Whitelist;
+import org.vertx.java.http.eventbusbridge.util.SerializationHelper;
+
+/**
+ * Delivers replies to their response urls.
+ *
+ * One instance exists per event loop thread, alongside its CallbackClientRegistry. Replies bound for a
+ * response url that has opted in to batching are held for up to the configured window, and posted together
+ * as a single EventBusBridgeResponseBatch once the window closes or the batch is full. All other replies are
+ * posted as soon as they are delivered. A reply posted on its own can carry the correlation id of its request
+ * in the configured 'correlation_header'.
+ *
+ * Posts that fail to connect, time out, or are answered with a 5xx, 408 or 429 status are retried with
+ * exponential backoff and jitter. Callbacks waiting to be retried are held in a bounded queue per host, so a
+ * host that is down cannot hold on to an unbounded number of replies.
+ *
+ * At most 'max_in_flight' posts are outstanding to a host at any time. Further callbacks to the host wait
+ * in a bounded queue of their own, so a slow host only holds up its own callbacks. Each host also has a
+ * circuit breaker: while a host's circuit is open no posts are made to it, and its callbacks are sent to the
+ * dead-letter event bus address instead, if one is configured, or dropped.
+ *
+ * Like the client pools of CallbackClientRegistry, the in-flight limit, the queues and the circuit breaker
+ * of a host belong to the event loop, so up to 'max_in_flight' posts per event loop are outstanding to a
+ * host, and each event loop opens its own circuit. The totals over every event loop are kept in the host's
+ * CallbackHostMetrics. A host with nothing in flight or queued and a closed circuit is forgotten once it
+ * has been idle for the configured 'idle_timeout'.
+ *
+ * When a callback outbox is configured, every callback is appended to it before it is posted and
+ * acknowledged once it has been delivered or dropped, so callbacks still pending when the bridge stops are
+ * posted again by {@link #replay()} when it next starts.
+ *
+ * @author j2ro
+ *
+ */
+public final class CallbackDelivery {
+
+	private static final Logger LOGGER = Logger.getLogger(CallbackDelivery.class);
+
+	private static final String CALLBACK_CONFIG = "callback";
+	private static final String BATCH_CONFIG = "batch";
+	private static final String URL_FIELD = "url";
+	private static final String URL_REGEX_FIELD = "url_re";
+	private static final String MAX_SIZE = "max_size";
+	private static final String WINDOW = "window";
+	private static final String REQUEST_TIMEOUT = "request_timeout";
+	private static final String CORRELATION_HEADER = "correlation_header";
+	private static final String RETRY_CONFIG = "retry";
+	private static final String MAX_RETRIES = "max_retries";
+	private static final String INITIAL_BACKOFF = "initial_backoff";
+	private static final String MAX_BACKOFF = "max_backoff";
+	private static final String MULTIPLIER = "multiplier";
+	private static final String JITTER = "jitter";
+	private static final String QUEUE_SIZE = "queue_size";
+	private static final String OVERFLOW = "overflow";
+	private static final String DROP_OLDEST = "drop_oldest";
+	private static final String DROP_NEWEST = "drop_newest";
+	private static final String BULKHEAD_CONFIG = "bulkhead";
+	private static final String MAX_IN_FLIGHT = "max_in_flight";
+	private static final String MAX_POOL_SIZE = "max_pool_size";
+	private static final String CIRCUIT_BREAKER_CONFIG = "circuit_breaker";
+	private static final String FAILURE_THRESHOLD = "failure_threshold";
+	private static final String RESET_TIMEOUT = "reset_timeout";
+	private static final String HALF_OPEN_MAX_CALLS = "half_open_max_calls";
+	private static final String IDLE_TIMEOUT = "idle_timeout";
+	private static final String DEAD_LETTER_ADDRESS = "dead_letter_address";
+	private static final String RESPONSE_URL = "response_url";
+	private static final String MEDIA_TYPE = "media_type";
+	private static final String BODY = "body";
+	private static final String CIRCUIT = "circuit";
+	private static final String IN_FLIGHT = "in_flight";
+	private static final String QUEUED = "queued";
+	private static final String RETRYING = "retrying";
+
+	private static final int DEFAULT_MAX_SIZE = 100;
+	private static final long DEFAULT_WINDOW = 100;
+	private static final long DEFAULT_REQUEST_TIMEOUT = 30000;
+	private static final int DEFAULT_MAX_RETRIES = 3;
+	private static final long DEFAULT_INITIAL_BACKOFF = 100;
+	private static final long DEFAULT_MAX_BACKOFF = 10000;
+	private static final double DEFAULT_MULTIPLIER = 2;
+	private static final double DEFAULT_JITTER = 0.2;
+	private static final int DEFAULT_QUEUE_SIZE = 1000;
+	private static final int DEFAULT_MAX_POOL_SIZE = 5;
+	private static final int DEFAULT_FAILURE_THRESHOLD = 5;
+	private static final long DEFAULT_RESET_TIMEOUT = 30000;
+	private static final int DEFAULT_HALF_OPEN_MAX_CALLS = 1;
+	private static final long DEFAULT_IDLE_TIMEOUT = 60000;
+	private static final long NO_TIMER = -1;
+
+	private static final ThreadLocal<CallbackDelivery> DELIVERIES = new ThreadLocal<CallbackDelivery>();
+
+	private final Vertx vertx;
+	private final CallbackClientRegistry clientRegistry;
+	private final Whitelist batchUrls;
+	private final int maxBatchSize;
+	private final long batchWindow;
+	private final long requestTimeout;
+	private final String correlationHeader;
+	private final int maxRetries;
+	private final long initialBackoff;
+	private final long maxBackoff;
+	private final double multiplier;
+	private final double jitter;
+	private final int retryQueueSize;
+	private final boolean dropOldest;
+	private final int maxInFlight;
+	private final int waitQueueSize;
+	private final int failureThreshold;
+	private final long resetTimeout;
+	private final int halfOpenMaxCalls;
+	private final String deadLetterAddress;
+	private final long idleTimeout;
+	private final Map<String, PendingBatch> batches = new HashMap<String, PendingBatch>();
+	private final Map<String, CallbackHost> hosts = new HashMap<String, CallbackHost>();
+	private final CallbackOutbox outbox;
+	private long evictionTimerId = NO_TIMER;
+
+	private CallbackDelivery(final Vertx vertx, final JsonObject config) {
+		JsonObject callbackConfig = config.getObject(CALLBACK_CONFIG, new JsonObject());
+		JsonObject batchConfig = callbackConfig.getObject(BATCH_CONFIG, new JsonObject());
+		JsonObject retryConfig = callbackConfig.getObject(RETRY_CONFIG, new JsonObject());
+		JsonObject bulkheadConfig = callbackConfig.getObject(BULKHEAD_CONFIG, new JsonObject());
+		JsonObject circuitBreakerConfig = callbackConfig.getObject(CIRCUIT_BREAKER_CONFIG, new JsonObject());
+		this.vertx = vertx;
+		this.clientRegistry = CallbackClientRegistry.get(vertx, config);
+		this.batchUrls = Whitelist.compile(batchConfig, URL_FIELD, URL_REGEX_FIELD, 0);
+		this.maxBatchSize = batchConfig.getInteger(MAX_SIZE, DEFAULT_MAX_SIZE);
+		this.batchWindow = batchConfig.getLong(WINDOW, DEFAULT_WINDOW);
+		this.requestTimeout = callbackConfig.getLong(REQUEST_TIMEOUT, DEFAULT_REQUEST_TIMEOUT);
+		this.correlationHeader = callbackConfig.getString(CORRELATION_HEADER);
+		this.maxRetries = retryConfig.getInteger(MAX_RETRIES, DEFAULT_MAX_RETRIES);
+		this.initialBackoff = retryConfig.getLong(INITIAL_BACKOFF, DEFAULT_INITIAL_BACKOFF);
+		this.maxBackoff = retryConfig.getLong(MAX_BACKOFF, DEFAULT_MAX_BACKOFF);
+		this.multiplier = retryConfig.getNumber(MULTIPLIER, DEFAULT_MULTIPLIER).doubleValue();
+		this.jitter = retryConfig.getNumber(JITTER, DEFAULT_JITTER).doubleValue();
+		this.retryQueueSize = retryConfig.getInteger(QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+		String overflow = retryConfig.getString(OVERFLOW, DROP_NEWEST);
+		if (!DROP_NEWEST.equals(overflow) && !DROP_OLDEST.equals(overflow)) {
+			throw new IllegalArgumentException("Unsupported callback retry overflow policy: " + overflow);
+		}
+		this.dropOldest = DROP_OLDEST.equals(overflow);
+		this.maxInFlight = bulkheadConfig.getInteger(MAX_IN_FLIGHT, callbackConfig.getInteger(MAX_POOL_SIZE, DEFAULT_MAX_POOL_SIZE));
+		this.waitQueueSize = bulkheadConfig.getInteger(QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+		this.failureThreshold = circuitBreakerConfig.getInteger(FAILURE_THRESHOLD, DEFAULT_FAILURE_THRESHOLD);
+		this.resetTimeout = circuitBreakerConfig.getLong(RESET_TIMEOUT, DEFAULT_RESET_TIMEOUT);
+		this.halfOpenMaxCalls = circuitBreakerConfig.getInteger(HALF_OPEN_MAX_CALLS, DEFAULT_HALF_OPEN_MAX_CALLS);
+		this.deadLetterAddress = circuitBreakerConfig.getString(DEAD_LETTER_ADDRESS);
+		this.idleTimeout = callbackConfig.getLong(IDLE_TIMEOUT, DEFAULT_IDLE_TIMEOUT);
+		try {
+			this.outbox = CallbackOutbox.get(config);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to open the callback outbox", e);
+		}
+	}
+
+	/**
+	 * Gets the delivery belonging to the calling event loop, creating it on first use.
+	 * @param vertx Vertx instance
+	 * @param config Configuration
+	 * @return The delivery for the current event loop
+	 */
+	public static CallbackDelivery get(final Vertx vertx, final JsonObject config) {
+		CallbackDelivery delivery = DELIVERIES.get();
+		if (delivery == null || delivery.vertx != vertx) {
+			if (delivery != null) {
+				delivery.close();
+			}
+			delivery = new CallbackDelivery(vertx, config);
+			DELIVERIES.set(delivery);
+		}
+		return delivery;
+	}
+
+	/**
+	 * Delivers a reply to its response url, batching it with other replies to the same url if the url has
+	 * opted in to batching.
+	 * @param url URL to post the reply to
+	 * @param mediaType Media type of the reply
+	 * @param compact Whether the reply is serialized without formatting
+	 * @param response The reply
+	 */
+	public void deliver(final URL url, final String mediaType, final boolean compact, final EventBusBridgeResponse response) {
+		if (batchUrls.allows(url.toExternalForm())) {
+			batch(url, mediaType, compact, response);
+		} else {
+			send(url, mediaType, serialize(response, mediaType, compact), response.getCorrelationId());
+		}
+	}
+
+	/**
+	 * Posts the callbacks recovered from the outbox when it was opened. Only the first call posts anything.
+	 */
+	public void replay() {
+		if (outbox == null) {
+			return;
+		}
+		for (CallbackOutbox.Entry entry : outbox.takeRecovered()) {
+			try {
+				Callback callback = new Callback(new URL(entry.getUrl()), entry.getMediaType(), new Buffer(entry.getBody()));
+				callback.setOutboxEntry(entry);
+				post(callback);
+			} catch (MalformedURLException e) {
+				LOGGER.error("Discarding recovered reply to invalid url: " + entry.getUrl());
+				outbox.acknowledge(entry);
+			}
+		}
+	}
+
+	/**
+	 * Gets the registry the HTTP clients are acquired from.
+	 * @return the callback client registry
+	 */
+	public CallbackClientRegistry getClientRegistry() {
+		return clientRegistry;
+	}
+
+	/**
+	 * Gets the number of batches waiting for their window to close.
+	 * @return number of pending batches
+	 */
+	public int pendingBatches() {
+		return batches.size();
+	}
+
+	/**
+	 * Gets the number of callbacks waiting to be retried for a host.
+	 * @param url Any URL of the host
+	 * @return number of callbacks in the host's retry queue
+	 */
+	public int retryQueueDepth(final URL url) {
+		CallbackHost host = hosts.get(CallbackClientRegistry.keyFor(url));
+		return host != null ? host.getRetrying() : 0;
+	}
+
+	/**
+	 * Gets the number of callbacks waiting for a post to a host to complete before they are posted.
+	 * @param url Any URL of the host
+	 * @return number of callbacks in the host's wait queue
+	 */
+	public int queueDepth(final URL url) {
+		CallbackHost host = hosts.get(CallbackClientRegistry.keyFor(url));
+		return host != null ? host.getQueued() : 0;
+	}
+
+	/**
+	 * Gets the number of posts outstanding to a host.
+	 * @param url Any URL of the host
+	 * @return number of posts in flight
+	 */
+	public int inFlight(final URL url) {
+		CallbackHost host = hosts.get(CallbackClientRegistry.keyFor(url));
+		return host != null ? host.getInFlight() : 0;
+	}
+
+	/**
+	 * Gets the number of callback hosts known to this delivery.
+	 * @return number of hosts
+	 */
+	public int hosts() {
+		return hosts.size();
+	}
+
+	/**
+	 * Gets the state of every callback host known to this delivery.
+	 * @return JSON object keyed by scheme, host and port, giving the state of the circuit, the posts in
+	 * flight, and the callbacks waiting and being retried, for each host
+	 */
+	public JsonObject hostStatus() {
+		JsonObject status = new JsonObject();
+		for (CallbackHost host : hosts.values()) {
+			status.putObject(host.getKey(), new JsonObject()
+					.putString(CIRCUIT, host.getCircuitBreaker().getState().name().toLowerCase())
+					.putNumber(IN_FLIGHT, host.getInFlight())
+					.putNumber(QUEUED, host.getQueued())
+					.putNumber(RETRYING, host.getRetrying()));
+		}
+		return status;
+	}
+
+	/**
+	 * Discards all pending batches and callbacks waiting to be posted or retried.
+	 */
+	public void close() {
+		for (PendingBatch batch : batches.values()) {
+			vertx.cancelTimer(batch.timerId);
+		}
+		batches.clear();
+		if (evictionTimerId != NO_TIMER) {
+			vertx.cancelTimer(evictionTimerId);
+			evictionTimerId = NO_TIMER;
+		}
+		for (CallbackHost host : hosts.values()) {
+			for (Callback callback : host.clear()) {
+				vertx.cancelTimer(callback.getRetryTimerId());
+			}
+		}
+		hosts.clear();
+	}
+
+	private void batch(final URL url, final String mediaType, final boolean compact, final EventBusBridgeResponse response) {
+		final String key = mediaType + ' ' + compact + ' ' + url.toExternalForm();
+		PendingBatch batch = batches.get(key);
+		if (batch == null) {
+			batch = new PendingBatch(url, mediaType, compact);
+			batch.timerId = vertx.setTimer(batchWindow, new Handler<Long>() {
+				@Override
+				public void handle(final Long timerId) {
+					flush(key);
+				}
+			});
+			batches.put(key, batch);
+		}
+		batch.responses.add(response);
+		if (batch.responses.size() >= maxBatchSize) {
+			vertx.cancelTimer(batch.timerId);
+			flush(key);
+		}
+	}
+
+	private void flush(final String key) {
+		PendingBatch batch = batches.remove(key);
+		if (batch != null) {
+			EventBusBridgeResponseBatch responseBatch = new EventBusBridgeResponseBatch(batch.responses);
+			send(batch.url, batch.mediaType, serialize(responseBatch, batch.mediaType, batch.compact), null);
+		}
+	}
+
+	private void send(final URL url, final String mediaType, final Buffer body, final String correlationId) {
+		if (body != null) {
+			Callback callback = new Callback(url, mediaType, body);
+			callback.setCorrelationId(correlationId);
+			if (outbox != null) {
+				try {
+					callback.setOutboxEntry(outbox.append(url.toExternalForm(), mediaType, body.getBytes()));
+				} catch (IOException e) {
+					LOGGER.error("Unable to append the reply to " + url + " to the callback outbox", e);
+				}
+			}
+			post(callback);
+		}
+	}
+
+	private void finish(final Callback callback) {
+		if (outbox != null && callback.getOutboxEntry() != null) {
+			outbox.acknowledge(callback.getOutboxEntry());
+		}
+	}
+
+	private void post(final Callback callback) {
+		CallbackHost host = hostFor(callback.getUrl());
+		if (maxInFlight <= 0 || host.getInFlight() < maxInFlight) {
+			start(host, callback);
+		} else if (host.getQueued() < waitQueueSize) {
+			host.enqueue(callback);
+		} else {
+			CallbackMetrics.dropped();
+			finish(callback);
+			LOGGER.warn("Wait queue full for " + host.getKey() + ", dropping reply to: " + callback.getUrl());
+		}
+	}
+
+	private boolean start(final CallbackHost host, final Callback callback) {
+		if (!host.getCircuitBreaker().allow(System.currentTimeMillis())) {
+			deadLetter(callback);
+			return false;
+		}
+		execute(host, callback);
+		return true;
+	}
+
+	private void deadLetter(final Callback callback) {
+		finish(callback);
+		if (deadLetterAddress == null) {
+			CallbackMetrics.dropped();
+			LOGGER.warn("Circuit open for " + CallbackClientRegistry.keyFor(callback.getUrl()) + ", dropping reply to: "
+					    + callback.getUrl());
+			return;
+		}
+		CallbackMetrics.deadLettered();
+		LOGGER.debug("Circuit open for " + CallbackClientRegistry.keyFor(callback.getUrl()) + ", sending reply to: "
+				     + callback.getUrl() + " to " + deadLetterAddress);
+		vertx.eventBus().send(deadLetterAddress, new JsonObject()
+				.putString(RESPONSE_URL, callback.getUrl().toExternalForm())
+				.putString(MEDIA_TYPE, callback.getMediaType())
+				.putString(BODY, callback.getBody().toString()));
+	}
+
+	private void execute(final CallbackHost host, final Callback callback) {
+		host.started();
+		URL url = callback.getUrl();
+		int attempt = callback.attempt();
+		CallbackMetrics.attempt();
+		/* the body is released once written, so keep the original for any retry */
+		Buffer body = attempt <= maxRetries ? callback.getBody().copy() : callback.getBody();
+		AttemptHandler attemptHandler = new AttemptHandler(host, callback);
+		HttpClient httpClient = clientRegistry.acquire(url);
+		HttpClientRequest request = httpClient.post(url.toExternalForm(), attemptHandler);
+		request.exceptionHandler(attemptHandler.exceptionHandler());
+		if (requestTimeout > 0) {
+			request.setTimeout(requestTimeout);
+		}
+		request.headers().add("Content-Type", callback.getMediaType());
+		request.headers().add("Content-Length", String.valueOf(body.length()));
+		if (correlationHeader != null && callback.getCorrelationId() != null) {
+			request.headers().add(correlationHeader, callback.getCorrelationId());
+		}
+		request.end(body);
+	}
+
+	private void retry(final Callback callback, final String reason, final Throwable cause) {
+		URL url = callback.getUrl();
+		if (callback.getAttempts() > maxRetries) {
+			CallbackMetrics.dropped();
+			finish(callback);
+			LOGGER.warn("Error sending the reply to client: " + url + " giving up after " + callback.getAttempts() + " attempts: "
+					    + reason, cause);
+			return;
+		}
+		final CallbackHost host = hostFor(url);
+		if (host.getRetrying() >= retryQueueSize) {
+			CallbackMetrics.dropped();
+			if (!dropOldest || host.getRetrying() == 0) {
+				finish(callback);
+				LOGGER.warn("Retry queue full for " + host.getKey() + ", dropping reply to: " + url);
+				return;
+			}
+			Callback oldest = host.removeOldestRetry();
+			vertx.cancelTimer(oldest.getRetryTimerId());
+			finish(oldest);
+			LOGGER.warn("Retry queue full for " + host.getKey() + ", dropping oldest reply to: " + oldest.getUrl());
+		}
+		CallbackMetrics.retry();
+		long delay = backoff(callback.getAttempts());
+		LOGGER.debug("Error sending the reply to client: " + url + " (" + reason + "), retrying in " + delay + "ms");
+		callback.setRetryTimerId(vertx.setTimer(delay, new Handler<Long>() {
+			@Override
+			public void handle(final Long timerId) {
+				host.removeRetry(callback);
+				post(callback);
+			}
+		}));
+		host.addRetry(callback);
+	}
+
+	/**
+	 * Calculates the delay before a retry, growing exponentially with the number of attempts already made
+	 * up to the maximum backoff, less a random fraction of up to 'jitter' of the delay so that retries of
+	 * callbacks that failed together are spread out.
+	 */
+	private long backoff(final int attempts) {
+		double delay = Math.min(maxBackoff, initialBackoff * Math.pow(multiplier, attempts - 1));
+		return Math.max(1, (long) (delay * (1 - jitter * ThreadLocalRandom.current().nextDouble())));
+	}
+
+	private CallbackHost hostFor(final URL url) {
+		String key = CallbackClientRegistry.keyFor(url);
+		CallbackHost host = hosts.get(key);
+		if (host == null) {
+			host = new CallbackHost(key, new CallbackCircuitBreaker(failureThreshold, resetTimeout, halfOpenMaxCalls));
+			hosts.put(key, host);
+			startEvictionTimer();
+		}
+		return host;
+	}
+
+	private void startEvictionTimer() {
+		if (evictionTimerId == NO_TIMER && idleTimeout > 0) {
+			evictionTimerId = vertx.setPeriodic(idleTimeout, new Handler<Long>() {
+				@Override
+				public void handle(final Long timerId) {
+					evictIdleHosts();
+				}
+			});
+		}
+	}
+
+	private void evictIdleHosts() {
+		long now = System.currentTimeMillis();
+		Iterator<CallbackHost> iterator = hosts.values().iterator();
+		while (iterator.hasNext()) {
+			CallbackHost host = iterator.next();
+			if (host.isIdle() && now - host.getLastUsed() >= idleTimeout) {
+				LOGGER.debug("Forgetting idle callback host " + host.getKey());
+				iterator.remove();
+			}
+		}
+		if (hosts.isEmpty()) {
+			vertx.cancelTimer(evictionTimerId);
+			evictionTimerId = NO_TIMER;
+		}
+	}
+
+	private static boolean isRetryable(final int status) {
+		return status >= 500 || status == 429 || status == 408;
+	}
+
+	private static Buffer serialize(final Object reply, final String mediaType, final boolean compact) {
+		try {
+			return SerializationHelper.serializeToBuffer(reply, mediaType, compact);
+		} catch (IOException | JAXBException e) {
+			LOGGER.error("Unable to serialize response\n" + reply + "\n to: " + mediaType);
+			return null;
+		}
+	}
+
+	/**
+	 * Handles the outcome of a single attempt to post a callback. Only the first outcome counts, as a
+	 * connection can fail after its response has been received.
+	 */
+	private final class AttemptHandler implements Handler<HttpClientResponse> {
+
+		private final CallbackHost host;
+		private final Callback callback;
+		private final long start = System.nanoTime();
+		private boolean completed;
+
+		private AttemptHandler(final CallbackHost host, final Callback callback) {
+			this.host = host;
+			this.callback = callback;
+		}
+
+		@Override
+		public void handle(final HttpClientResponse response) {
+			int status = response.statusCode();
+			if (complete(isRetryable(status))) {
+				if (status >= 200 && status < 300) {
+					CallbackMetrics.delivered();
+					finish(callback);
+					LOGGER.debug("Reply sent successfully");
+				} else if (isRetryable(status)) {
+					retry(callback, "status code:" + status + "  message: " + response.statusMessage(), null);
+				} else {
+					CallbackMetrics.dropped();
+					finish(callback);
+					LOGGER.warn("Error sending the reply to client. status code:" + status + "  message: " + response.statusMessage());
+				}
+			}
+		}
+
+		private Handler<Throwable> exceptionHandler() {
+			return new Handler<Throwable>() {
+				@Override
+				public void handle(final Throwable cause) {
+					if (complete(true)) {
+						retry(callback, String.valueOf(cause.getMessage()), cause);
+					}
+				}
+			};
+		}
+
+		private boolean complete(final boolean failed) {
+			if (completed) {
+				return false;
+			}
+			completed = true;
+			BridgeMetrics.callbackCompleted(host.getKey(), System.nanoTime() - start);
+			clientRegistry.release(callback.getUrl());
+			if (failed) {
+				host.getCircuitBreaker().failure(System.currentTimeMillis());
+			} else {
+				host.getCircuitBreaker().success();
+			}
+			host.finished();
+			Callback next = host.dequeue();
+			while (next != null && !start(host, next)) {
+				next = host.dequeue();
+			}
+			return true;
+		}
+	}
+
+	private static final class PendingBatch {
+
+		private final URL url;
+		private final String mediaType;
+		private final boolean compact;
+		private final List<EventBusBridgeResponse> responses = new ArrayList<EventBusBridgeResponse>();
+		private long timerId;
+
+		private PendingBatch(final URL url, final String mediaType, final boolean compact) {
+			this.url = url;
+			this.mediaType = mediaType;
+			this.compact = compact;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.callback;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.vertx.java.http.eventbusbridge.metrics.BridgeMetrics;
+import org.vertx.java.http.eventbusbridge.metrics.CallbackHostMetrics;
+
+/**
+ * State kept for each callback host (scheme, host and port), isolating hosts from each other.
+ *
+ * The state belongs to a single event loop. Every change to the posts in flight and to the wait and retry
+ * queues is also added to the host's CallbackHostMetrics, which sum the state over every event loop.
+ *
+ * @author j2ro
+ *
+ */
+final class CallbackHost {
+
+	private final String key;
+	private final CallbackCircuitBreaker circuitBreaker;
+	private final CallbackHostMetrics metrics;
+	private final Deque<Callback> retryQueue = new ArrayDeque<Callback>();
+	private final Deque<Callback> waitQueue = new ArrayDeque<Callback>();
+	private int inFlight;
+	private long lastUsed = System.currentTimeMillis();
+
+	/**
+	 * Creates new instance of CallbackHost.
+	 * @param key The scheme, host and port of the host
+	 * @param circuitBreaker Circuit breaker guarding the posts to the host
+	 */
+	CallbackHost(final String key, final CallbackCircuitBreaker circuitBreaker) {
+		this.key = key;
+		this.circuitBreaker = circuitBreaker;
+		this.metrics = BridgeMetrics.getCallbackHost(key);
+	}
+
+	String getKey() {
+		return key;
+	}
+
+	CallbackCircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	int getInFlight() {
+		return inFlight;
+	}
+
+	int getQueued() {
+		return waitQueue.size();
+	}
+
+	int getRetrying() {
+		return retryQueue.size();
+	}
+
+	long getLastUsed() {
+		return lastUsed;
+	}
+
+	/**
+	 * Determines whether the host holds no state worth keeping: nothing is in flight or queued, and its
+	 * circuit is closed.
+	 * @return true if the host is idle
+	 */
+	boolean isIdle() {
+		return inFlight == 0 && waitQueue.isEmpty() && retryQueue.isEmpty()
+			   && circuitBreaker.getState() == CallbackCircuitBreaker.State.CLOSED;
+	}
+
+	void started() {
+		inFlight++;
+		lastUsed = System.currentTimeMillis();
+		metrics.addInFlight(1);
+	}
+
+	void finished() {
+		inFlight--;
+		lastUsed = System.currentTimeMillis();
+		metrics.addInFlight(-1);
+	}
+
+	void enqueue(final Callback callback) {
+		waitQueue.addLast(callback);
+		metrics.addQueued(1);
+	}
+
+	Callback dequeue() {
+		Callback callback = waitQueue.pollFirst();
+		if (callback != null) {
+			metrics.addQueued(-1);
+		}
+		return callback;
+	}
+
+	void addRetry(final Callback callback) {
+		retryQueue.addLast(callback);
+		metrics.addRetrying(1);
+	}
+
+	void removeRetry(final Callback callback) {
+		if (retryQueue.remove(callback)) {
+			metrics.addRetrying(-1);
+		}
+	}
+
+	Callback removeOldestRetry() {
+		Callback callback = retryQueue.pollFirst();
+		if (callback != null) {
+			metrics.addRetrying(-1);
+		}
+		return callback;
+	}
+
+	/**
+	 * Discards the callbacks waiting to be posted or retried, returning those waiting to be retried so their
+	 * timers can be cancelled.
+	 * @return the callbacks that were waiting to be retried
+	 */
+	Deque<Callback> clear() {
+		metrics.addQueued(-waitQueue.size());
+		metrics.addRetrying(-retryQueue.size());
+		waitQueue.clear();
+		Deque<Callback> retrying = new ArrayDeque<Callback>(retryQueue);
+		retryQueue.clear();
+		return retrying;
+	}
+}
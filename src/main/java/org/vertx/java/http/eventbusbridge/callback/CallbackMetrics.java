@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.callback;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of callback delivery outcomes, shared by every event loop.
+ *
+ * @author j2ro
+ *
+ */
+public final class CallbackMetrics {
+
+	private static final AtomicLong ATTEMPTS = new AtomicLong();
+	private static final AtomicLong DELIVERED = new AtomicLong();
+	private static final AtomicLong RETRIES = new AtomicLong();
+	private static final AtomicLong DROPPED = new AtomicLong();
+	private static final AtomicLong DEAD_LETTERED = new AtomicLong();
+
+	private CallbackMetrics() {
+	}
+
+	static void attempt() {
+		ATTEMPTS.incrementAndGet();
+	}
+
+	static void delivered() {
+		DELIVERED.incrementAndGet();
+	}
+
+	static void retry() {
+		RETRIES.incrementAndGet();
+	}
+
+	static void dropped() {
+		DROPPED.incrementAndGet();
+	}
+
+	static void deadLettered() {
+		DEAD_LETTERED.incrementAndGet();
+	}
+
+	/**
+	 * Gets the number of attempts made to post a callback, including retries.
+	 * @return number of attempts
+	 */
+	public static long getAttempts() {
+		return ATTEMPTS.get();
+	}
+
+	/**
+	 * Gets the number of callbacks posted successfully.
+	 * @return number of callbacks delivered
+	 */
+	public static long getDelivered() {
+		return DELIVERED.get();
+	}
+
+	/**
+	 * Gets the number of failed attempts that were scheduled to be retried.
+	 * @return number of retries
+	 */
+	public static long getRetries() {
+		return RETRIES.get();
+	}
+
+	/**
+	 * Gets the number of callbacks given up on, either because they ran out of attempts, failed with a
+	 * status that is not worth retrying, did not fit in one of their host's queues, or their host's circuit
+	 * was open and no dead-letter address is configured.
+	 * @return number of callbacks dropped
+	 */
+	public static long getDropped() {
+		return DROPPED.get();
+	}
+
+	/**
+	 * Gets the number of callbacks sent to the dead-letter address because the circuit of their host was
+	 * open.
+	 * @return number of callbacks dead-lettered
+	 */
+	public static long getDeadLettered() {
+		return DEAD_LETTERED.get();
+	}
+
+	/**
+	 * Resets all counters to zero.
+	 */
+	public static void reset() {
+		ATTEMPTS.set(0);
+		DELIVERED.set(0);
+		RETRIES.set(0);
+		DROPPED.set(0);
+		DEAD_LETTERED.set(0);
+	}
+}
@@ -0,0 +1,518 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.callback;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Durable outbox of callbacks that have not yet been delivered, so they survive a restart of the bridge.
+ *
+ * Callbacks are appended to a journal of memory-mapped segment files. Appending only copies the callback
+ * into the mapped segment; the segments written to are flushed to disk together by a background thread
+ * every sync interval, so many appends share one fsync. Once a callback has been delivered (or given up
+ * on) its record is marked as acknowledged in place, and a segment is deleted as soon as every record in it
+ * has been acknowledged and no more records will be appended to it. Records still pending when the outbox
+ * is opened are recovered, to be delivered again.
+ *
+ * Appends are made on event loops, so they never create a segment file themselves: the background thread
+ * keeps the next segment created, mapped and its pages touched ahead of time, and rolling over to it only
+ * renames it. A segment is only created inline when a record is too large for the prepared one.
+ *
+ * Each record is laid out as: int payload length, byte state, unsigned short url length, url, unsigned short
+ * media type length, media type, body. The length is written last, so a record torn by a crash is ignored.
+ * Callbacks whose url or media type is too long to be recorded are not appended.
+ *
+ * @author j2ro
+ *
+ */
+public final class CallbackOutbox {
+
+	private static final Logger LOGGER = Logger.getLogger(CallbackOutbox.class);
+
+	private static final String CALLBACK_CONFIG = "callback";
+	private static final String OUTBOX_CONFIG = "outbox";
+	private static final String DIRECTORY = "directory";
+	private static final String SEGMENT_SIZE = "segment_size";
+	private static final String SYNC_INTERVAL = "sync_interval";
+
+	private static final int DEFAULT_SEGMENT_SIZE = 16 * 1024 * 1024;
+	private static final long DEFAULT_SYNC_INTERVAL = 100;
+
+	private static final String SEGMENT_SUFFIX = ".log";
+	private static final String SPARE_PREFIX = "next-";
+	private static final String SPARE_SUFFIX = ".spare";
+	private static final int PAGE_SIZE = 4096;
+	private static final int HEADER_SIZE = 5;
+	private static final int MAX_FIELD_LENGTH = 0xFFFF;
+	private static final byte PENDING = 1;
+	private static final byte ACKNOWLEDGED = 2;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static CallbackOutbox instance;
+
+	private final File directory;
+	private final int segmentSize;
+	private final ScheduledExecutorService syncExecutor;
+	private final Runnable spareAllocator = new Runnable() {
+		@Override
+		public void run() {
+			prepareSpareSegment();
+		}
+	};
+	private final Set<Segment> segments = new HashSet<Segment>();
+	private final Set<Segment> dirtySegments = new HashSet<Segment>();
+	private List<Entry> recovered = new ArrayList<Entry>();
+	private Segment activeSegment;
+	private Segment spareSegment;
+	private long nextSegmentIndex;
+	private boolean closed;
+
+	private CallbackOutbox(final File directory, final int segmentSize, final long syncInterval) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create callback outbox directory: " + directory);
+		}
+		recover();
+		prepareSpareSegment();
+		this.syncExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable runnable) {
+				Thread thread = new Thread(runnable, "callback-outbox-sync");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		syncExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				sync();
+				prepareSpareSegment();
+			}
+		}, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Gets the outbox, opening it on first use.
+	 * @param config Configuration
+	 * @return The outbox, or null if no outbox directory is configured
+	 * @throws IOException if the outbox could not be opened
+	 */
+	public static synchronized CallbackOutbox get(final JsonObject config) throws IOException {
+		JsonObject outboxConfig = config.getObject(CALLBACK_CONFIG, new JsonObject()).getObject(OUTBOX_CONFIG);
+		if (outboxConfig == null || outboxConfig.getString(DIRECTORY) == null) {
+			return null;
+		}
+		if (instance == null) {
+			instance = open(new File(outboxConfig.getString(DIRECTORY)), outboxConfig.getInteger(SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE),
+					        outboxConfig.getLong(SYNC_INTERVAL, DEFAULT_SYNC_INTERVAL));
+		}
+		return instance;
+	}
+
+	/**
+	 * Closes the outbox opened by {@link #get(JsonObject)}, if it has been opened, flushing it to disk.
+	 */
+	public static void closeInstance() {
+		CallbackOutbox outbox;
+		synchronized (CallbackOutbox.class) {
+			outbox = instance;
+		}
+		if (outbox != null) {
+			outbox.close();
+		}
+	}
+
+	/**
+	 * Opens an outbox.
+	 * @param directory Directory holding the segment files
+	 * @param segmentSize Size of each segment file in bytes
+	 * @param syncInterval Period in milliseconds between flushes of the segments to disk
+	 * @return The outbox
+	 * @throws IOException if the outbox could not be opened
+	 */
+	public static CallbackOutbox open(final File directory, final int segmentSize, final long syncInterval) throws IOException {
+		return new CallbackOutbox(directory, segmentSize, syncInterval);
+	}
+
+	/**
+	 * Appends a callback to the outbox.
+	 * @param url URL the callback is posted to
+	 * @param mediaType Media type of the body
+	 * @param body The serialized reply
+	 * @return The entry, to be acknowledged once the callback has been delivered
+	 * @throws IOException if the outbox is closed, the url or media type is longer than 65535 bytes, or a new
+	 * segment could not be created
+	 */
+	public synchronized Entry append(final String url, final String mediaType, final byte[] body) throws IOException {
+		if (closed) {
+			throw new IOException("Callback outbox is closed");
+		}
+		byte[] urlBytes = url.getBytes(UTF8);
+		byte[] mediaTypeBytes = mediaType.getBytes(UTF8);
+		if (urlBytes.length > MAX_FIELD_LENGTH || mediaTypeBytes.length > MAX_FIELD_LENGTH) {
+			throw new IOException("Callback url or media type longer than " + MAX_FIELD_LENGTH + " bytes");
+		}
+		int length = 2 + urlBytes.length + 2 + mediaTypeBytes.length + body.length;
+		if (activeSegment == null || activeSegment.writeOffset + HEADER_SIZE + length > activeSegment.buffer.capacity()) {
+			rollSegment(HEADER_SIZE + length);
+		}
+		Segment segment = activeSegment;
+		int offset = segment.writeOffset;
+		ByteBuffer buffer = segment.buffer.duplicate();
+		buffer.position(offset + 4);
+		buffer.put(PENDING);
+		buffer.putShort((short) urlBytes.length);
+		buffer.put(urlBytes);
+		buffer.putShort((short) mediaTypeBytes.length);
+		buffer.put(mediaTypeBytes);
+		buffer.put(body);
+		segment.buffer.putInt(offset, length);
+		segment.writeOffset = offset + HEADER_SIZE + length;
+		segment.live++;
+		dirtySegments.add(segment);
+		return new Entry(segment, offset, url, mediaType, body);
+	}
+
+	/**
+	 * Acknowledges that a callback no longer needs to be delivered.
+	 * @param entry The entry returned when the callback was appended or recovered
+	 */
+	public synchronized void acknowledge(final Entry entry) {
+		Segment segment = entry.segment;
+		if (segment.buffer.get(entry.offset + 4) != PENDING) {
+			return;
+		}
+		segment.buffer.put(entry.offset + 4, ACKNOWLEDGED);
+		segment.live--;
+		dirtySegments.add(segment);
+		if (segment.live == 0 && segment != activeSegment) {
+			delete(segment);
+		}
+	}
+
+	/**
+	 * Takes the callbacks that were still pending when the outbox was opened. They are only returned to
+	 * the first caller.
+	 * @return The recovered callbacks, in the order they were appended
+	 */
+	public synchronized List<Entry> takeRecovered() {
+		List<Entry> entries = recovered;
+		recovered = new ArrayList<Entry>();
+		return entries;
+	}
+
+	/**
+	 * Gets the number of segment files in the outbox.
+	 * @return number of segments
+	 */
+	public int segmentCount() {
+		return listSegmentFiles().length;
+	}
+
+	/**
+	 * Flushes all appended and acknowledged records to disk.
+	 */
+	public void sync() {
+		Segment[] segments;
+		synchronized (this) {
+			segments = dirtySegments.toArray(new Segment[dirtySegments.size()]);
+			dirtySegments.clear();
+		}
+		for (Segment segment : segments) {
+			if (segment.channel.isOpen()) {
+				segment.buffer.force();
+			}
+		}
+	}
+
+	/**
+	 * Flushes the outbox to disk and closes it.
+	 */
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		syncExecutor.shutdown();
+		sync();
+		synchronized (this) {
+			for (Segment segment : segments) {
+				closeQuietly(segment);
+			}
+			segments.clear();
+			activeSegment = null;
+			if (spareSegment != null) {
+				discard(spareSegment);
+				spareSegment = null;
+			}
+		}
+		synchronized (CallbackOutbox.class) {
+			if (instance == this) {
+				instance = null;
+			}
+		}
+	}
+
+	private void recover() throws IOException {
+		for (File file : listFiles(SPARE_SUFFIX)) {
+			if (!file.delete()) {
+				LOGGER.warn("Unable to delete unused callback outbox segment: " + file);
+			}
+		}
+		for (File file : listSegmentFiles()) {
+			Segment segment = map(file, (int) file.length());
+			segments.add(segment);
+			int offset = 0;
+			while (offset + HEADER_SIZE <= segment.buffer.capacity()) {
+				int length = segment.buffer.getInt(offset);
+				if (length <= 0 || offset + HEADER_SIZE + length > segment.buffer.capacity()) {
+					break;
+				}
+				if (segment.buffer.get(offset + 4) == PENDING) {
+					Entry entry = readEntry(segment, offset, length);
+					if (entry != null) {
+						recovered.add(entry);
+						segment.live++;
+					} else {
+						LOGGER.warn("Skipping corrupt callback outbox record at offset " + offset + " of " + file);
+					}
+				}
+				offset += HEADER_SIZE + length;
+			}
+			segment.writeOffset = offset;
+			nextSegmentIndex = Math.max(nextSegmentIndex, indexOf(file) + 1);
+			if (segment.live == 0) {
+				delete(segment);
+			}
+		}
+		if (!recovered.isEmpty()) {
+			LOGGER.info("Recovered " + recovered.size() + " undelivered callbacks from " + directory);
+		}
+	}
+
+	/* Returns null if the field lengths of the record do not fit in its payload length */
+	private Entry readEntry(final Segment segment, final int offset, final int length) {
+		ByteBuffer buffer = segment.buffer.duplicate();
+		buffer.position(offset + HEADER_SIZE);
+		int remaining = length - 2;
+		int urlLength = buffer.getShort() & MAX_FIELD_LENGTH;
+		if (urlLength + 2 > remaining) {
+			return null;
+		}
+		byte[] url = new byte[urlLength];
+		buffer.get(url);
+		remaining -= urlLength + 2;
+		int mediaTypeLength = buffer.getShort() & MAX_FIELD_LENGTH;
+		if (mediaTypeLength > remaining) {
+			return null;
+		}
+		byte[] mediaType = new byte[mediaTypeLength];
+		buffer.get(mediaType);
+		byte[] body = new byte[remaining - mediaTypeLength];
+		buffer.get(body);
+		return new Entry(segment, offset, new String(url, UTF8), new String(mediaType, UTF8), body);
+	}
+
+	private void rollSegment(final int minimumSize) throws IOException {
+		Segment previous = activeSegment;
+		File file = new File(directory, String.format("%019d", nextSegmentIndex++) + SEGMENT_SUFFIX);
+		if (spareSegment != null && spareSegment.buffer.capacity() >= minimumSize && spareSegment.file.renameTo(file)) {
+			spareSegment.file = file;
+			activeSegment = spareSegment;
+			spareSegment = null;
+			syncExecutor.execute(spareAllocator);
+		} else {
+			activeSegment = map(file, Math.max(segmentSize, minimumSize));
+		}
+		segments.add(activeSegment);
+		if (previous != null && previous.live == 0) {
+			delete(previous);
+		}
+	}
+
+	/* Runs on the sync thread, creating the segment the next roll switches to and touching each of its pages */
+	private void prepareSpareSegment() {
+		synchronized (this) {
+			if (closed || spareSegment != null) {
+				return;
+			}
+		}
+		Segment spare;
+		try {
+			spare = map(File.createTempFile(SPARE_PREFIX, SPARE_SUFFIX, directory), segmentSize);
+		} catch (IOException e) {
+			LOGGER.warn("Unable to prepare the next callback outbox segment", e);
+			return;
+		}
+		for (int position = 0; position < spare.buffer.capacity(); position += PAGE_SIZE) {
+			spare.buffer.put(position, (byte) 0);
+		}
+		synchronized (this) {
+			if (!closed) {
+				spareSegment = spare;
+				return;
+			}
+		}
+		discard(spare);
+	}
+
+	private void delete(final Segment segment) {
+		closeQuietly(segment);
+		segments.remove(segment);
+		dirtySegments.remove(segment);
+		if (!segment.file.delete()) {
+			LOGGER.warn("Unable to delete acknowledged callback outbox segment: " + segment.file);
+		}
+	}
+
+	private static void discard(final Segment segment) {
+		closeQuietly(segment.channel);
+		if (!segment.file.delete()) {
+			LOGGER.warn("Unable to delete unused callback outbox segment: " + segment.file);
+		}
+	}
+
+	private File[] listSegmentFiles() {
+		return listFiles(SEGMENT_SUFFIX);
+	}
+
+	private File[] listFiles(final String suffix) {
+		File[] files = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(final File dir, final String name) {
+				return name.endsWith(suffix);
+			}
+		});
+		if (files == null) {
+			return new File[0];
+		}
+		Arrays.sort(files);
+		return files;
+	}
+
+	private static long indexOf(final File file) {
+		String name = file.getName();
+		try {
+			return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return 0;
+		}
+	}
+
+	private static Segment map(final File file, final int size) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		FileChannel channel = randomAccessFile.getChannel();
+		try {
+			return new Segment(file, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+		} catch (IOException e) {
+			randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	private static void closeQuietly(final Segment segment) {
+		if (segment.channel.isOpen()) {
+			segment.buffer.force();
+		}
+		closeQuietly(segment.channel);
+	}
+
+	private static void closeQuietly(final FileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			LOGGER.warn("Unable to close callback outbox segment", e);
+		}
+	}
+
+	/**
+	 * A callback held in the outbox.
+	 */
+	public static final class Entry {
+
+		private final Segment segment;
+		private final int offset;
+		private final String url;
+		private final String mediaType;
+		private final byte[] body;
+
+		private Entry(final Segment segment, final int offset, final String url, final String mediaType, final byte[] body) {
+			this.segment = segment;
+			this.offset = offset;
+			this.url = url;
+			this.mediaType = mediaType;
+			this.body = body;
+		}
+
+		/**
+		 * Gets the URL the callback is posted to.
+		 * @return the url
+		 */
+		public String getUrl() {
+			return url;
+		}
+
+		/**
+		 * Gets the media type of the body.
+		 * @return the media type
+		 */
+		public String getMediaType() {
+			return mediaType;
+		}
+
+		/**
+		 * Gets the serialized reply.
+		 * @return the body
+		 */
+		public byte[] getBody() {
+			return body;
+		}
+	}
+
+	private static final class Segment {
+
+		private File file;
+		private final FileChannel channel;
+		private final MappedByteBuffer buffer;
+		private int writeOffset;
+		private int live;
+
+		private Segment(final File file, final FileChannel channel, final MappedByteBuffer buffer) {
+			this.file = file;
+			this.channel = channel;
+			this.buffer = buffer;
+		}
+	}
+}
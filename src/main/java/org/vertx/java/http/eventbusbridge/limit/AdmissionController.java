@@ -0,0 +1,299 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.limit;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Caps the number of sends waiting for their reply, in total and per address, and optionally the total size
+ * of their messages, so the reply handlers held by the bridge cannot grow without bound under a burst.
+ *
+ * A send must acquire a permit before it is dispatched, and the permit is released when its reply handler
+ * fires. Sends that would exceed a cap are refused instead. One controller is shared by every event loop,
+ * created when the module starts and discarded when it stops, so the sends in flight are counted by a
+ * single controller for the life of the deployment.
+ *
+ * The sends in flight to an address are only tracked while there are any, so the number of addresses
+ * tracked is bounded by the sends in flight rather than by the addresses ever sent to.
+ *
+ * A permit is only released once the reply handler of its send fires, which needs the reply 'timeout' to be
+ * set, so a cap configured without a timeout is refused.
+ *
+ * @author j2ro
+ *
+ */
+public final class AdmissionController {
+
+	private static final String ADMISSION_CONFIG = "admission";
+	private static final String MAX_IN_FLIGHT = "max_in_flight";
+	private static final String MAX_IN_FLIGHT_PER_ADDRESS = "max_in_flight_per_address";
+	private static final String MAX_IN_FLIGHT_BYTES = "max_in_flight_bytes";
+	private static final String RETRY_AFTER = "retry_after";
+	private static final String TIMEOUT = "timeout";
+
+	private static final int DEFAULT_MAX_IN_FLIGHT = 0;
+	private static final int DEFAULT_MAX_IN_FLIGHT_PER_ADDRESS = 0;
+	private static final long DEFAULT_MAX_IN_FLIGHT_BYTES = 0;
+	private static final int DEFAULT_RETRY_AFTER = 1;
+	private static final long DEFAULT_TIMEOUT = 0;
+
+	/* Value of an address counter released to zero, which is removed and must no longer be incremented */
+	private static final int REMOVED = -1;
+
+	private static final AtomicReference<AdmissionController> CONTROLLER = new AtomicReference<AdmissionController>();
+
+	private final int maxInFlight;
+	private final int maxInFlightPerAddress;
+	private final long maxInFlightBytes;
+	private final int retryAfter;
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong inFlightBytes = new AtomicLong();
+	private final ConcurrentMap<String, AtomicInteger> inFlightPerAddress = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private AdmissionController(final JsonObject config) {
+		JsonObject admissionConfig = config.getObject(ADMISSION_CONFIG, new JsonObject());
+		this.maxInFlight = admissionConfig.getInteger(MAX_IN_FLIGHT, DEFAULT_MAX_IN_FLIGHT);
+		this.maxInFlightPerAddress = admissionConfig.getInteger(MAX_IN_FLIGHT_PER_ADDRESS, DEFAULT_MAX_IN_FLIGHT_PER_ADDRESS);
+		this.maxInFlightBytes = admissionConfig.getLong(MAX_IN_FLIGHT_BYTES, DEFAULT_MAX_IN_FLIGHT_BYTES);
+		this.retryAfter = admissionConfig.getInteger(RETRY_AFTER, DEFAULT_RETRY_AFTER);
+		if ((maxInFlight > 0 || maxInFlightPerAddress > 0 || maxInFlightBytes > 0) && config.getLong(TIMEOUT, DEFAULT_TIMEOUT) <= 0) {
+			throw new IllegalArgumentException("Admission caps require a reply 'timeout' greater than 0");
+		}
+	}
+
+	/**
+	 * Gets the controller, creating it from the configuration on first use. A controller in use is never
+	 * replaced, so the configuration is only read by the first call after the module starts.
+	 * @param config Configuration
+	 * @return the admission controller
+	 * @throws IllegalArgumentException if an admission cap is configured without a reply timeout
+	 */
+	public static AdmissionController get(final JsonObject config) {
+		AdmissionController controller = CONTROLLER.get();
+		if (controller == null) {
+			CONTROLLER.compareAndSet(null, new AdmissionController(config));
+			controller = CONTROLLER.get();
+		}
+		return controller;
+	}
+
+	/**
+	 * Discards the controller created by {@link #get(JsonObject)}, so the next call creates a new one.
+	 */
+	public static void closeInstance() {
+		CONTROLLER.set(null);
+	}
+
+	/**
+	 * Acquires a permit for a send.
+	 * @param address Address the message is sent to
+	 * @param size Size of the message in bytes
+	 * @return The permit, or null if admitting the send would exceed a cap
+	 */
+	public Permit acquire(final String address, final int size) {
+		if (!increment(inFlight, maxInFlight)) {
+			return null;
+		}
+		AtomicInteger addressInFlight = null;
+		if (maxInFlightPerAddress > 0) {
+			addressInFlight = incrementAddress(address);
+			if (addressInFlight == null) {
+				inFlight.decrementAndGet();
+				return null;
+			}
+		}
+		if (maxInFlightBytes > 0 && !add(inFlightBytes, size, maxInFlightBytes)) {
+			inFlight.decrementAndGet();
+			if (addressInFlight != null) {
+				decrementAddress(address, addressInFlight);
+			}
+			return null;
+		}
+		return new Permit(address, addressInFlight, maxInFlightBytes > 0 ? size : 0);
+	}
+
+	/**
+	 * Gets the number of seconds a refused client is asked to wait before trying again.
+	 * @return the Retry-After period in seconds
+	 */
+	public int getRetryAfter() {
+		return retryAfter;
+	}
+
+	/**
+	 * Gets the number of sends waiting for their reply.
+	 * @return number of sends in flight
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * Gets the number of sends to an address waiting for their reply. Only counted when a per-address cap
+	 * is configured.
+	 * @param address The address
+	 * @return number of sends to the address in flight
+	 */
+	public int getInFlight(final String address) {
+		AtomicInteger counter = inFlightPerAddress.get(address);
+		return counter != null ? Math.max(counter.get(), 0) : 0;
+	}
+
+	/**
+	 * Gets the number of addresses whose sends in flight are being counted.
+	 * @return number of addresses tracked
+	 */
+	public int getTrackedAddresses() {
+		return inFlightPerAddress.size();
+	}
+
+	/**
+	 * Gets the total size of the messages of sends waiting for their reply. Only counted when a cap on the
+	 * size is configured.
+	 * @return number of bytes in flight
+	 */
+	public long getInFlightBytes() {
+		return inFlightBytes.get();
+	}
+
+	private AtomicInteger counterFor(final String address) {
+		AtomicInteger counter = inFlightPerAddress.get(address);
+		if (counter == null) {
+			AtomicInteger created = new AtomicInteger();
+			counter = inFlightPerAddress.putIfAbsent(address, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * Increments the sends in flight to an address, unless that would exceed the per-address cap. A counter
+	 * released to zero by another thread is being removed, so it is removed here too and a new one created.
+	 */
+	private AtomicInteger incrementAddress(final String address) {
+		while (true) {
+			AtomicInteger counter = counterFor(address);
+			int current = counter.get();
+			if (current == REMOVED) {
+				inFlightPerAddress.remove(address, counter);
+			} else if (current >= maxInFlightPerAddress) {
+				return null;
+			} else if (counter.compareAndSet(current, current + 1)) {
+				return counter;
+			}
+		}
+	}
+
+	/**
+	 * Decrements the sends in flight to an address, removing its counter once none are left.
+	 */
+	private void decrementAddress(final String address, final AtomicInteger counter) {
+		if (counter.decrementAndGet() == 0 && counter.compareAndSet(0, REMOVED)) {
+			inFlightPerAddress.remove(address, counter);
+		}
+	}
+
+	private static boolean increment(final AtomicInteger counter, final int max) {
+		if (max <= 0) {
+			counter.incrementAndGet();
+			return true;
+		}
+		while (true) {
+			int current = counter.get();
+			if (current >= max) {
+				return false;
+			}
+			if (counter.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Adds a message's size to the bytes in flight, unless the total would then exceed the maximum. A message
+	 * larger than the maximum is still admitted when nothing else is in flight, so it is not refused forever.
+	 */
+	private static boolean add(final AtomicLong counter, final int size, final long max) {
+		while (true) {
+			long current = counter.get();
+			if (current > 0 && current + size > max) {
+				return false;
+			}
+			if (counter.compareAndSet(current, current + size)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Permit held by a send until its reply handler fires.
+	 */
+	public final class Permit {
+
+		private final String address;
+		private final AtomicInteger addressInFlight;
+		private final int size;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		private Permit(final String address, final AtomicInteger addressInFlight, final int size) {
+			this.address = address;
+			this.addressInFlight = addressInFlight;
+			this.size = size;
+		}
+
+		/**
+		 * Releases the permit. Only the first call has any effect.
+		 */
+		public void release() {
+			if (released.compareAndSet(false, true)) {
+				inFlight.decrementAndGet();
+				if (addressInFlight != null) {
+					decrementAddress(address, addressInFlight);
+				}
+				if (size > 0) {
+					inFlightBytes.addAndGet(-size);
+				}
+			}
+		}
+
+		/**
+		 * Wraps a reply handler so the permit is released when it fires.
+		 * @param handler The reply handler
+		 * @return reply handler releasing the permit before calling the wrapped handler
+		 */
+		public Handler<AsyncResult<Message<Object>>> releaseOnReply(final Handler<AsyncResult<Message<Object>>> handler) {
+			return new Handler<AsyncResult<Message<Object>>>() {
+				@Override
+				public void handle(final AsyncResult<Message<Object>> event) {
+					release();
+					handler.handle(event);
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,292 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.limit;
+
+import java.net.InetSocketAddress;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+import org.vertx.java.core.MultiMap;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Limits the rate of requests per event bus address and per client, using a token bucket for each.
+ *
+ * Address limits are configured like the whitelist, for exact addresses and for address regexes; every
+ * address matching a regex gets a bucket of its own. Clients are identified by a configured header, or by
+ * their remote address when the header is absent. At most 'max_buckets' address buckets and 'max_buckets'
+ * client buckets are held: they are split into segments, each evicting its least recently used bucket when
+ * full, so a flood of new addresses or clients costs a constant amount of work per request. An evicted
+ * bucket starts full again when its address or client next makes a request. One limiter is shared by every
+ * event loop, created when the module starts and discarded when it stops.
+ *
+ * @author j2ro
+ *
+ */
+public final class RateLimiter {
+
+	private static final String RATE_LIMIT_CONFIG = "rate_limit";
+	private static final String ADDRESS = "address";
+	private static final String ADDRESS_REGEX = "address_re";
+	private static final String CLIENT = "client";
+	private static final String HEADER = "header";
+	private static final String RATE = "rate";
+	private static final String BURST = "burst";
+	private static final String MAX_BUCKETS = "max_buckets";
+
+	private static final int DEFAULT_MAX_BUCKETS = 10000;
+
+	private static final int MAX_SEGMENTS = 16;
+	private static final int MIN_SEGMENT_SIZE = 16;
+
+	private static final AtomicReference<RateLimiter> LIMITER = new AtomicReference<RateLimiter>();
+
+	private final Map<String, Limit> addressLimits = new HashMap<String, Limit>();
+	private final Map<Pattern, Limit> addressRegexLimits = new LinkedHashMap<Pattern, Limit>();
+	private final Limit clientLimit;
+	private final String clientHeader;
+	private final BucketTable addressBuckets;
+	private final BucketTable clientBuckets;
+
+	private RateLimiter(final JsonObject config) {
+		JsonObject rateLimitConfig = config.getObject(RATE_LIMIT_CONFIG, new JsonObject());
+		JsonObject addresses = rateLimitConfig.getObject(ADDRESS, new JsonObject());
+		for (String address : addresses.getFieldNames()) {
+			addressLimits.put(address, Limit.of(addresses.getObject(address)));
+		}
+		JsonObject addressRegexes = rateLimitConfig.getObject(ADDRESS_REGEX, new JsonObject());
+		for (String regex : addressRegexes.getFieldNames()) {
+			addressRegexLimits.put(Pattern.compile(regex), Limit.of(addressRegexes.getObject(regex)));
+		}
+		JsonObject clientConfig = rateLimitConfig.getObject(CLIENT);
+		this.clientLimit = clientConfig != null ? Limit.of(clientConfig) : null;
+		this.clientHeader = clientConfig != null ? clientConfig.getString(HEADER) : null;
+		int maxBuckets = rateLimitConfig.getInteger(MAX_BUCKETS, DEFAULT_MAX_BUCKETS);
+		this.addressBuckets = new BucketTable(maxBuckets);
+		this.clientBuckets = new BucketTable(maxBuckets);
+	}
+
+	/**
+	 * Gets the limiter, creating it from the configuration on first use. A limiter in use is never replaced,
+	 * so the configuration is only read by the first call after the module starts.
+	 * @param config Configuration
+	 * @return the rate limiter
+	 * @throws IllegalArgumentException if a configured limit has no rate
+	 */
+	public static RateLimiter get(final JsonObject config) {
+		RateLimiter limiter = LIMITER.get();
+		if (limiter == null) {
+			LIMITER.compareAndSet(null, new RateLimiter(config));
+			limiter = LIMITER.get();
+		}
+		return limiter;
+	}
+
+	/**
+	 * Discards the limiter created by {@link #get(JsonObject)}, so the next call creates a new one.
+	 */
+	public static void closeInstance() {
+		LIMITER.set(null);
+	}
+
+	/**
+	 * Identifies the client making a request.
+	 * @param request The HTTP request, may be null
+	 * @return The value of the client header if configured and present, otherwise the remote address of
+	 * the request, or null if the client cannot be identified
+	 */
+	public String identify(final HttpServerRequest request) {
+		return request != null ? identify(request.headers(), request.remoteAddress()) : null;
+	}
+
+	/**
+	 * Identifies the client of a connection from its headers and remote address.
+	 * @param headers The headers sent by the client
+	 * @param remoteAddress The remote address of the connection, may be null
+	 * @return The value of the client header if configured and present, otherwise the remote address, or
+	 * null if the client cannot be identified
+	 */
+	public String identify(final MultiMap headers, final InetSocketAddress remoteAddress) {
+		if (clientHeader != null && headers != null) {
+			String client = headers.get(clientHeader);
+			if (client != null) {
+				return client;
+			}
+		}
+		return remoteAddress != null && remoteAddress.getAddress() != null ? remoteAddress.getAddress().getHostAddress() : null;
+	}
+
+	/**
+	 * Takes a token for a request from the bucket of its client, then from the bucket of its address.
+	 * @param address Address the request is made to
+	 * @param client Identity of the client making the request, may be null
+	 * @return 0 if the request is allowed, otherwise the number of nanoseconds until it would be allowed
+	 */
+	public long acquire(final String address, final String client) {
+		long now = System.nanoTime();
+		if (clientLimit != null && client != null) {
+			long wait = clientBuckets.bucketFor(client, clientLimit).tryAcquire(now);
+			if (wait > 0) {
+				return wait;
+			}
+		}
+		if (address == null) {
+			return 0;
+		}
+		TokenBucket bucket = addressBuckets.get(address);
+		if (bucket == null) {
+			Limit addressLimit = limitFor(address);
+			if (addressLimit == null) {
+				return 0;
+			}
+			bucket = addressBuckets.bucketFor(address, addressLimit);
+		}
+		return bucket.tryAcquire(now);
+	}
+
+	/**
+	 * Gets the number of address buckets held.
+	 * @return number of address buckets
+	 */
+	public int addressBuckets() {
+		return addressBuckets.size();
+	}
+
+	/**
+	 * Gets the number of client buckets held.
+	 * @return number of client buckets
+	 */
+	public int clientBuckets() {
+		return clientBuckets.size();
+	}
+
+	private Limit limitFor(final String address) {
+		Limit limit = addressLimits.get(address);
+		if (limit != null) {
+			return limit;
+		}
+		for (Map.Entry<Pattern, Limit> regexLimit : addressRegexLimits.entrySet()) {
+			if (regexLimit.getKey().matcher(address).matches()) {
+				return regexLimit.getValue();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Buckets keyed by address or client, split into segments so event loops rarely contend for a lock.
+	 * Each segment holds its share of the buckets in access order, evicting the least recently used bucket
+	 * once it is full.
+	 */
+	private static final class BucketTable {
+
+		private final Segment[] segments;
+		private final int segmentMask;
+
+		private BucketTable(final int maxBuckets) {
+			int segmentCount = 1;
+			while (segmentCount < MAX_SEGMENTS && segmentCount * 2 * MIN_SEGMENT_SIZE <= maxBuckets) {
+				segmentCount *= 2;
+			}
+			segments = new Segment[segmentCount];
+			for (int i = 0; i < segmentCount; i++) {
+				segments[i] = new Segment(Math.max(1, (maxBuckets + segmentCount - 1) / segmentCount));
+			}
+			segmentMask = segmentCount - 1;
+		}
+
+		private TokenBucket get(final String key) {
+			return segmentFor(key).get(key);
+		}
+
+		private TokenBucket bucketFor(final String key, final Limit limit) {
+			return segmentFor(key).bucketFor(key, limit);
+		}
+
+		private int size() {
+			int size = 0;
+			for (Segment segment : segments) {
+				size += segment.size();
+			}
+			return size;
+		}
+
+		private Segment segmentFor(final String key) {
+			int hash = key.hashCode();
+			return segments[(hash ^ (hash >>> 16)) & segmentMask];
+		}
+	}
+
+	private static final class Segment {
+
+		private final LinkedHashMap<String, TokenBucket> buckets;
+
+		private Segment(final int maxBuckets) {
+			this.buckets = new LinkedHashMap<String, TokenBucket>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<String, TokenBucket> eldest) {
+					return size() > maxBuckets;
+				}
+			};
+		}
+
+		private synchronized TokenBucket get(final String key) {
+			return buckets.get(key);
+		}
+
+		private synchronized TokenBucket bucketFor(final String key, final Limit limit) {
+			TokenBucket bucket = buckets.get(key);
+			if (bucket == null) {
+				bucket = new TokenBucket(limit.rate, limit.burst);
+				buckets.put(key, bucket);
+			}
+			return bucket;
+		}
+
+		private synchronized int size() {
+			return buckets.size();
+		}
+	}
+
+	/**
+	 * Rate and burst of a configured limit.
+	 */
+	private static final class Limit {
+
+		private final double rate;
+		private final int burst;
+
+		private Limit(final double rate, final int burst) {
+			this.rate = rate;
+			this.burst = burst;
+		}
+
+		private static Limit of(final JsonObject limitConfig) {
+			Number configuredRate = limitConfig.getNumber(RATE);
+			if (configuredRate == null) {
+				throw new IllegalArgumentException("Rate limit has no rate: " + limitConfig);
+			}
+			double rate = configuredRate.doubleValue();
+			return new Limit(rate, limitConfig.getInteger(BURST, (int) Math.max(1, Math.ceil(rate))));
+		}
+	}
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.limit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, refilled at 'rate' tokens per second and holding at most 'burst' tokens.
+ *
+ * Rather than counting tokens, the bucket keeps the time at which it would next be full were no more
+ * tokens taken (the generic cell rate algorithm), so taking a token is a single compare-and-set on one long
+ * and the bucket never has to be refilled.
+ *
+ * @author j2ro
+ *
+ */
+public final class TokenBucket {
+
+	private final long interval;
+	private final long tolerance;
+	private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+
+	/**
+	 * Creates new instance of TokenBucket.
+	 * @param rate Number of tokens added per second
+	 * @param burst Maximum number of tokens held
+	 */
+	public TokenBucket(final double rate, final int burst) {
+		if (rate <= 0 || burst <= 0) {
+			throw new IllegalArgumentException("Token bucket rate and burst must be positive: " + rate + ", " + burst);
+		}
+		this.interval = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / rate));
+		this.tolerance = interval * (burst - 1);
+	}
+
+	/**
+	 * Takes a token from the bucket, if it holds one.
+	 * @param now Current time in nanoseconds, as given by System.nanoTime()
+	 * @return 0 if a token was taken, otherwise the number of nanoseconds until the next token is added
+	 */
+	public long tryAcquire(final long now) {
+		while (true) {
+			long current = fullAt.get();
+			long start = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+			long wait = start - now - tolerance;
+			if (wait > 0) {
+				return wait;
+			}
+			if (fullAt.compareAndSet(current, start + interval)) {
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Determines whether the bucket is full, so it can be discarded and recreated without any effect.
+	 * @param now Current time in nanoseconds, as given by System.nanoTime()
+	 * @return true if the bucket is full
+	 */
+	public boolean isFull(final long now) {
+		long current = fullAt.get();
+		return current == Long.MIN_VALUE || current - now <= 0;
+	}
+}
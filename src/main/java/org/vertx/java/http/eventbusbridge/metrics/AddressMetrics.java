@@ -0,0 +1,199 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.vertx.java.core.eventbus.ReplyFailure;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.model.EventBusInstruction;
+
+/**
+ * Metrics of the requests made to a single event bus address.
+ *
+ * @author j2ro
+ *
+ */
+public final class AddressMetrics {
+
+	private static final EventBusInstruction[] INSTRUCTIONS = EventBusInstruction.values();
+	private static final ReplyFailure[] REPLY_FAILURES = ReplyFailure.values();
+
+	private static final String ADDRESS = "address";
+	private static final String FAILURE = "failure";
+	private static final String OTHER_FAILURE = "other";
+	private static final double MICROS_TO_SECONDS = 1e-6;
+
+	private final StripedCounter[] requests = new StripedCounter[INSTRUCTIONS.length];
+	private final StripedCounter[] replyFailures = new StripedCounter[REPLY_FAILURES.length];
+	private final StripedCounter otherReplyFailures = new StripedCounter();
+	private final ConcurrentMap<Integer, StripedCounter> rejections = new ConcurrentHashMap<Integer, StripedCounter>();
+	private final Histogram payloadBytes = new Histogram();
+	private final Histogram replyLatency = new Histogram();
+	private final String address;
+	private final String labels;
+	private final String[] requestLabels = new String[INSTRUCTIONS.length];
+	private final String[] replyFailureLabels = new String[REPLY_FAILURES.length + 1];
+	private final ConcurrentMap<Integer, String> rejectionLabels = new ConcurrentHashMap<Integer, String>();
+
+	AddressMetrics(final String address) {
+		this.address = address;
+		this.labels = PrometheusWriter.labels(ADDRESS, address);
+		for (int i = 0; i < requests.length; i++) {
+			requests[i] = new StripedCounter();
+			requestLabels[i] = PrometheusWriter.labels(ADDRESS, address, "instruction", INSTRUCTIONS[i].name());
+		}
+		for (int i = 0; i < replyFailures.length; i++) {
+			replyFailures[i] = new StripedCounter();
+			replyFailureLabels[i] = PrometheusWriter.labels(ADDRESS, address, FAILURE, REPLY_FAILURES[i].name().toLowerCase());
+		}
+		replyFailureLabels[REPLY_FAILURES.length] = PrometheusWriter.labels(ADDRESS, address, FAILURE, OTHER_FAILURE);
+	}
+
+	void requested(final EventBusInstruction instruction, final int size) {
+		requests[instruction.ordinal()].increment();
+		payloadBytes.record(size);
+	}
+
+	void rejected(final int status) {
+		StripedCounter counter = rejections.get(status);
+		if (counter == null) {
+			StripedCounter created = new StripedCounter();
+			counter = rejections.putIfAbsent(status, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+		counter.increment();
+	}
+
+	void replied(final long latencyMicros) {
+		replyLatency.record(latencyMicros);
+	}
+
+	void replyFailed(final ReplyFailure failure, final long latencyMicros) {
+		replyLatency.record(latencyMicros);
+		if (failure != null) {
+			replyFailures[failure.ordinal()].increment();
+		} else {
+			otherReplyFailures.increment();
+		}
+	}
+
+	/**
+	 * Gets the number of requests made to the address with an instruction.
+	 * @param instruction The instruction
+	 * @return number of requests
+	 */
+	public long getRequests(final EventBusInstruction instruction) {
+		return requests[instruction.ordinal()].sum();
+	}
+
+	/**
+	 * Gets the number of requests to the address refused with a status.
+	 * @param status HTTP status of the refusal
+	 * @return number of requests refused
+	 */
+	public long getRejections(final int status) {
+		StripedCounter counter = rejections.get(status);
+		return counter != null ? counter.sum() : 0;
+	}
+
+	/**
+	 * Gets the number of sends to the address that failed to get a reply for a reason.
+	 * @param failure The reason, or null for failures other than a ReplyException
+	 * @return number of failed sends
+	 */
+	public long getReplyFailures(final ReplyFailure failure) {
+		return failure != null ? replyFailures[failure.ordinal()].sum() : otherReplyFailures.sum();
+	}
+
+	/**
+	 * Gets the sizes in bytes of the messages sent or published to the address.
+	 * @return payload size histogram
+	 */
+	public Histogram getPayloadBytes() {
+		return payloadBytes;
+	}
+
+	/**
+	 * Gets the time in microseconds from a send to the address until its reply handler fired.
+	 * @return reply latency histogram
+	 */
+	public Histogram getReplyLatency() {
+		return replyLatency;
+	}
+
+	/**
+	 * Summarises the metrics of the address.
+	 * @return JSON object of the metrics
+	 */
+	public JsonObject toJson() {
+		JsonObject requestCounts = new JsonObject();
+		for (EventBusInstruction instruction : INSTRUCTIONS) {
+			requestCounts.putNumber(instruction.name(), getRequests(instruction));
+		}
+		JsonObject rejectionCounts = new JsonObject();
+		for (Map.Entry<Integer, StripedCounter> rejection : rejections.entrySet()) {
+			rejectionCounts.putNumber(String.valueOf(rejection.getKey()), rejection.getValue().sum());
+		}
+		JsonObject failureCounts = new JsonObject();
+		for (ReplyFailure failure : REPLY_FAILURES) {
+			failureCounts.putNumber(failure.name().toLowerCase(), getReplyFailures(failure));
+		}
+		failureCounts.putNumber(OTHER_FAILURE, getReplyFailures(null));
+		return new JsonObject()
+				.putObject("requests", requestCounts)
+				.putObject("rejected", rejectionCounts)
+				.putObject("payload_bytes", payloadBytes.toJson())
+				.putObject("reply_latency_us", replyLatency.toJson())
+				.putObject("reply_failures", failureCounts);
+	}
+
+	void writeRequests(final PrometheusWriter writer, final String name) {
+		for (int i = 0; i < requests.length; i++) {
+			writer.sample(name, requestLabels[i], requests[i].sum());
+		}
+	}
+
+	void writeRejections(final PrometheusWriter writer, final String name) {
+		for (Map.Entry<Integer, StripedCounter> rejection : rejections.entrySet()) {
+			String statusLabels = rejectionLabels.get(rejection.getKey());
+			if (statusLabels == null) {
+				statusLabels = PrometheusWriter.labels(ADDRESS, address, "status", String.valueOf(rejection.getKey()));
+				rejectionLabels.put(rejection.getKey(), statusLabels);
+			}
+			writer.sample(name, statusLabels, rejection.getValue().sum());
+		}
+	}
+
+	void writeReplyFailures(final PrometheusWriter writer, final String name) {
+		for (int i = 0; i < replyFailures.length; i++) {
+			writer.sample(name, replyFailureLabels[i], replyFailures[i].sum());
+		}
+		writer.sample(name, replyFailureLabels[REPLY_FAILURES.length], otherReplyFailures.sum());
+	}
+
+	void writePayloadBytes(final PrometheusWriter writer, final String name) {
+		writer.summary(name, labels, payloadBytes, 1);
+	}
+
+	void writeReplyLatency(final PrometheusWriter writer, final String name) {
+		writer.summary(name, labels, replyLatency, MICROS_TO_SECONDS);
+	}
+}
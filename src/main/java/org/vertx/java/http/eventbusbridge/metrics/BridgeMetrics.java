@@ -0,0 +1,257 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.eventbus.ReplyException;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.model.EventBusInstruction;
+
+/**
+ * Metrics of the bridge, per event bus address and per callback host, shared by every event loop.
+ *
+ * Metrics are kept for at most 1000 addresses and 1000 callback hosts; any further addresses or hosts are
+ * counted together under '_other', so addresses matched by a whitelist regex cannot grow the metrics
+ * without bound.
+ *
+ * @author j2ro
+ *
+ */
+public final class BridgeMetrics {
+
+	private static final int MAX_KEYS = 1000;
+	private static final String OTHER = "_other";
+
+	private static final ConcurrentMap<String, AddressMetrics> ADDRESSES = new ConcurrentHashMap<String, AddressMetrics>();
+	private static final ConcurrentMap<String, Histogram> CALLBACK_LATENCIES = new ConcurrentHashMap<String, Histogram>();
+	private static final ConcurrentMap<String, String> CALLBACK_HOST_LABELS = new ConcurrentHashMap<String, String>();
+	private static final ConcurrentMap<String, CallbackHostMetrics> CALLBACK_HOSTS = new ConcurrentHashMap<String, CallbackHostMetrics>();
+	private static final double MICROS_TO_SECONDS = 1e-6;
+
+	private BridgeMetrics() {
+	}
+
+	/**
+	 * Records a request forwarded to an address.
+	 * @param address The address
+	 * @param instruction The instruction of the request
+	 * @param size Size of the message in bytes
+	 */
+	public static void requested(final String address, final EventBusInstruction instruction, final int size) {
+		getAddress(address).requested(instruction, size);
+	}
+
+	/**
+	 * Records a request to an address that was refused.
+	 * @param address The address, or null to count the refusal under '_other', as for an address that is not
+	 * whitelisted
+	 * @param status HTTP status of the refusal
+	 */
+	public static void rejected(final String address, final int status) {
+		getAddress(address).rejected(status);
+	}
+
+	/**
+	 * Wraps the reply handler of a send so the time until it fires, and the reason the send failed if it
+	 * did, are recorded for the address.
+	 * @param address The address
+	 * @param handler The reply handler
+	 * @return reply handler recording the outcome before calling the wrapped handler
+	 */
+	public static Handler<AsyncResult<Message<Object>>> timeReply(final String address, final Handler<AsyncResult<Message<Object>>> handler) {
+		final AddressMetrics metrics = getAddress(address);
+		final long start = System.nanoTime();
+		return new Handler<AsyncResult<Message<Object>>>() {
+			@Override
+			public void handle(final AsyncResult<Message<Object>> event) {
+				long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+				if (event.succeeded()) {
+					metrics.replied(latency);
+				} else {
+					Throwable cause = event.cause();
+					metrics.replyFailed(cause instanceof ReplyException ? ((ReplyException) cause).failureType() : null, latency);
+				}
+				handler.handle(event);
+			}
+		};
+	}
+
+	/**
+	 * Records the time taken by a post to a callback host, from sending the request until it was answered
+	 * or failed.
+	 * @param host The scheme, host and port of the callback host
+	 * @param latencyNanos Time taken in nanoseconds
+	 */
+	public static void callbackCompleted(final String host, final long latencyNanos) {
+		getCallbackLatency(host).record(TimeUnit.NANOSECONDS.toMicros(latencyNanos));
+	}
+
+	/**
+	 * Gets the metrics of an address.
+	 * @param address The address, may be null
+	 * @return metrics of the address, or of '_other' if metrics are already kept for too many addresses
+	 */
+	public static AddressMetrics getAddress(final String address) {
+		String key = address != null ? address : OTHER;
+		AddressMetrics metrics = ADDRESSES.get(key);
+		if (metrics == null && ADDRESSES.size() >= MAX_KEYS) {
+			key = OTHER;
+			metrics = ADDRESSES.get(key);
+		}
+		if (metrics == null) {
+			AddressMetrics created = new AddressMetrics(key);
+			metrics = ADDRESSES.putIfAbsent(key, created);
+			if (metrics == null) {
+				metrics = created;
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Gets the time in microseconds taken by posts to a callback host.
+	 * @param host The scheme, host and port of the callback host
+	 * @return callback latency histogram of the host, or of '_other' if latencies are already kept for too
+	 * many hosts
+	 */
+	public static Histogram getCallbackLatency(final String host) {
+		String key = host;
+		Histogram histogram = CALLBACK_LATENCIES.get(key);
+		if (histogram == null && CALLBACK_LATENCIES.size() >= MAX_KEYS) {
+			key = OTHER;
+			histogram = CALLBACK_LATENCIES.get(key);
+		}
+		if (histogram == null) {
+			Histogram created = new Histogram();
+			histogram = CALLBACK_LATENCIES.putIfAbsent(key, created);
+			if (histogram == null) {
+				histogram = created;
+			}
+		}
+		return histogram;
+	}
+
+	/**
+	 * Gets the gauges of the callbacks to a callback host.
+	 * @param host The scheme, host and port of the callback host
+	 * @return gauges of the host, or of '_other' if gauges are already kept for too many hosts
+	 */
+	public static CallbackHostMetrics getCallbackHost(final String host) {
+		String key = host;
+		CallbackHostMetrics metrics = CALLBACK_HOSTS.get(key);
+		if (metrics == null && CALLBACK_HOSTS.size() >= MAX_KEYS) {
+			key = OTHER;
+			metrics = CALLBACK_HOSTS.get(key);
+		}
+		if (metrics == null) {
+			CallbackHostMetrics created = new CallbackHostMetrics(key);
+			metrics = CALLBACK_HOSTS.putIfAbsent(key, created);
+			if (metrics == null) {
+				metrics = created;
+			}
+		}
+		return metrics;
+	}
+
+	/**
+	 * Summarises the metrics of every address and callback host.
+	 * @return JSON object with an 'addresses' object keyed by address, and 'callback_latency_us' and
+	 * 'callback_hosts' objects keyed by callback host
+	 */
+	public static JsonObject toJson() {
+		JsonObject addresses = new JsonObject();
+		for (Map.Entry<String, AddressMetrics> address : ADDRESSES.entrySet()) {
+			addresses.putObject(address.getKey(), address.getValue().toJson());
+		}
+		JsonObject callbackLatencies = new JsonObject();
+		for (Map.Entry<String, Histogram> host : CALLBACK_LATENCIES.entrySet()) {
+			callbackLatencies.putObject(host.getKey(), host.getValue().toJson());
+		}
+		JsonObject callbackHosts = new JsonObject();
+		for (Map.Entry<String, CallbackHostMetrics> host : CALLBACK_HOSTS.entrySet()) {
+			callbackHosts.putObject(host.getKey(), host.getValue().toJson());
+		}
+		return new JsonObject()
+				.putObject("addresses", addresses)
+				.putObject("callback_latency_us", callbackLatencies)
+				.putObject("callback_hosts", callbackHosts);
+	}
+
+	/**
+	 * Writes the metrics of every address and callback host in the Prometheus text exposition format.
+	 * @param writer The writer
+	 */
+	public static void writePrometheus(final PrometheusWriter writer) {
+		writer.header("eventbus_bridge_requests_total", "counter", "Requests forwarded to the event bus.");
+		for (AddressMetrics metrics : ADDRESSES.values()) {
+			metrics.writeRequests(writer, "eventbus_bridge_requests_total");
+		}
+		writer.header("eventbus_bridge_rejected_total", "counter", "Requests refused, by HTTP status.");
+		for (AddressMetrics metrics : ADDRESSES.values()) {
+			metrics.writeRejections(writer, "eventbus_bridge_rejected_total");
+		}
+		writer.header("eventbus_bridge_payload_bytes", "summary", "Size of the messages forwarded to the event bus.");
+		for (AddressMetrics metrics : ADDRESSES.values()) {
+			metrics.writePayloadBytes(writer, "eventbus_bridge_payload_bytes");
+		}
+		writer.header("eventbus_bridge_reply_latency_seconds", "summary", "Time from a send until its reply or failure.");
+		for (AddressMetrics metrics : ADDRESSES.values()) {
+			metrics.writeReplyLatency(writer, "eventbus_bridge_reply_latency_seconds");
+		}
+		writer.header("eventbus_bridge_reply_failures_total", "counter", "Sends that failed to get a reply, by reason.");
+		for (AddressMetrics metrics : ADDRESSES.values()) {
+			metrics.writeReplyFailures(writer, "eventbus_bridge_reply_failures_total");
+		}
+		writer.header("eventbus_bridge_callback_latency_seconds", "summary", "Time taken by posts to a callback host.");
+		for (Map.Entry<String, Histogram> host : CALLBACK_LATENCIES.entrySet()) {
+			String labels = CALLBACK_HOST_LABELS.get(host.getKey());
+			if (labels == null) {
+				labels = PrometheusWriter.labels("host", host.getKey());
+				CALLBACK_HOST_LABELS.put(host.getKey(), labels);
+			}
+			writer.summary("eventbus_bridge_callback_latency_seconds", labels, host.getValue(), MICROS_TO_SECONDS);
+		}
+		writer.header("eventbus_bridge_callback_in_flight", "gauge", "Posts outstanding to a callback host.");
+		for (CallbackHostMetrics metrics : CALLBACK_HOSTS.values()) {
+			metrics.writeInFlight(writer, "eventbus_bridge_callback_in_flight");
+		}
+		writer.header("eventbus_bridge_callback_queued", "gauge", "Callbacks waiting for a post to a callback host to complete.");
+		for (CallbackHostMetrics metrics : CALLBACK_HOSTS.values()) {
+			metrics.writeQueued(writer, "eventbus_bridge_callback_queued");
+		}
+		writer.header("eventbus_bridge_callback_retrying", "gauge", "Callbacks waiting to be retried to a callback host.");
+		for (CallbackHostMetrics metrics : CALLBACK_HOSTS.values()) {
+			metrics.writeRetrying(writer, "eventbus_bridge_callback_retrying");
+		}
+	}
+
+	/**
+	 * Discards all metrics.
+	 */
+	public static void reset() {
+		ADDRESSES.clear();
+		CALLBACK_LATENCIES.clear();
+		CALLBACK_HOST_LABELS.clear();
+		CALLBACK_HOSTS.clear();
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.metrics;
+
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Gauges of the callbacks to a single callback host, summed over every event loop.
+ *
+ * Each event loop keeps its own bulkhead and queues for a host, and adds to or takes from these gauges as
+ * its callbacks start, wait or are retried, so the gauges give the state of the host across the bridge.
+ *
+ * @author j2ro
+ *
+ */
+public final class CallbackHostMetrics {
+
+	private final StripedCounter inFlight = new StripedCounter();
+	private final StripedCounter queued = new StripedCounter();
+	private final StripedCounter retrying = new StripedCounter();
+	private final String labels;
+
+	CallbackHostMetrics(final String host) {
+		this.labels = PrometheusWriter.labels("host", host);
+	}
+
+	/**
+	 * Adds to the number of posts outstanding to the host.
+	 * @param delta Value to add, negative once posts complete
+	 */
+	public void addInFlight(final int delta) {
+		inFlight.add(delta);
+	}
+
+	/**
+	 * Adds to the number of callbacks waiting for a post to the host to complete.
+	 * @param delta Value to add, negative once callbacks leave the wait queue
+	 */
+	public void addQueued(final int delta) {
+		queued.add(delta);
+	}
+
+	/**
+	 * Adds to the number of callbacks waiting to be retried.
+	 * @param delta Value to add, negative once callbacks leave the retry queue
+	 */
+	public void addRetrying(final int delta) {
+		retrying.add(delta);
+	}
+
+	/**
+	 * Gets the number of posts outstanding to the host.
+	 * @return number of posts in flight
+	 */
+	public long getInFlight() {
+		return inFlight.sum();
+	}
+
+	/**
+	 * Gets the number of callbacks waiting for a post to the host to complete.
+	 * @return number of callbacks in the wait queues
+	 */
+	public long getQueued() {
+		return queued.sum();
+	}
+
+	/**
+	 * Gets the number of callbacks waiting to be retried.
+	 * @return number of callbacks in the retry queues
+	 */
+	public long getRetrying() {
+		return retrying.sum();
+	}
+
+	/**
+	 * Summarises the gauges of the host.
+	 * @return JSON object of the gauges
+	 */
+	public JsonObject toJson() {
+		return new JsonObject()
+				.putNumber("in_flight", getInFlight())
+				.putNumber("queued", getQueued())
+				.putNumber("retrying", getRetrying());
+	}
+
+	void writeInFlight(final PrometheusWriter writer, final String name) {
+		writer.sample(name, labels, getInFlight());
+	}
+
+	void writeQueued(final PrometheusWriter writer, final String name) {
+		writer.sample(name, labels, getQueued());
+	}
+
+	void writeRetrying(final PrometheusWriter writer, final String name) {
+		writer.sample(name, labels, getRetrying());
+	}
+}
@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Histogram of non-negative values with buckets of bounded relative width, in the manner of an HDR histogram.
+ *
+ * Values below 16 each have a bucket of their own. Every power of two above that is split into 16 buckets
+ * of equal width, so any recorded value is reported to within 1/16 (6.25%) of its true value while the
+ * histogram has a fixed number of buckets. Recording a value is a single atomic increment of its bucket
+ * plus updates of the count, sum and maximum, and takes no locks.
+ *
+ * @author j2ro
+ *
+ */
+public final class Histogram {
+
+	private static final int SUB_BUCKET_BITS = 4;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	private static final int MAX_EXPONENT = 40;
+	private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+	private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) << SUB_BUCKET_BITS;
+
+	/** Quantiles reported in summaries of the histogram. */
+	static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private final StripedCounter count = new StripedCounter();
+	private final StripedCounter sum = new StripedCounter();
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records a value. Negative values are recorded as 0, and values of 2^41 or more as 2^41 - 1.
+	 * @param value The value
+	 */
+	public void record(final long value) {
+		long clamped = Math.max(0, Math.min(MAX_VALUE, value));
+		counts.incrementAndGet(indexOf(clamped));
+		count.increment();
+		sum.add(clamped);
+		long currentMax = max.get();
+		while (clamped > currentMax && !max.compareAndSet(currentMax, clamped)) {
+			currentMax = max.get();
+		}
+	}
+
+	/**
+	 * Gets the number of values recorded.
+	 * @return count
+	 */
+	public long getCount() {
+		return count.sum();
+	}
+
+	/**
+	 * Gets the largest value recorded.
+	 * @return maximum
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * Gets the sum of the values recorded.
+	 * @return sum
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+
+	/**
+	 * Gets the mean of the values recorded.
+	 * @return mean, or 0 if no values were recorded
+	 */
+	public double getMean() {
+		long n = count.sum();
+		return n > 0 ? (double) sum.sum() / n : 0;
+	}
+
+	/**
+	 * Gets the value below which a fraction of the recorded values fall.
+	 * @param quantile Fraction of values, between 0 and 1
+	 * @return The upper bound of the bucket holding the quantile, or 0 if no values were recorded
+	 */
+	public long getValueAtQuantile(final double quantile) {
+		long[] values = new long[1];
+		getValuesAtQuantiles(new double[] { quantile }, values);
+		return values[0];
+	}
+
+	/**
+	 * Gets the values below which several fractions of the recorded values fall, in a single pass over the
+	 * buckets.
+	 * @param quantiles Fractions of values, between 0 and 1, in ascending order
+	 * @param values Array the upper bound of the bucket holding each quantile is written to, or 0 if no values
+	 * were recorded
+	 */
+	public void getValuesAtQuantiles(final double[] quantiles, final long[] values) {
+		long total = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		long currentMax = max.get();
+		int next = 0;
+		long cumulative = 0;
+		for (int i = 0; i < BUCKETS && next < quantiles.length && total > 0; i++) {
+			cumulative += counts.get(i);
+			while (next < quantiles.length && cumulative >= Math.max(1, (long) Math.ceil(quantiles[next] * total))) {
+				values[next++] = Math.min(upperBoundOf(i), currentMax);
+			}
+		}
+		while (next < quantiles.length) {
+			values[next++] = total > 0 ? currentMax : 0;
+		}
+	}
+
+	/**
+	 * Summarises the histogram.
+	 * @return JSON object giving the count, mean, 50th, 90th, 99th and 99.9th percentiles, and maximum
+	 */
+	public JsonObject toJson() {
+		long[] values = new long[QUANTILES.length];
+		getValuesAtQuantiles(QUANTILES, values);
+		return new JsonObject()
+				.putNumber("count", getCount())
+				.putNumber("mean", getMean())
+				.putNumber("p50", values[0])
+				.putNumber("p90", values[1])
+				.putNumber("p99", values[2])
+				.putNumber("p999", values[3])
+				.putNumber("max", getMax());
+	}
+
+	static int indexOf(final long value) {
+		if (value < SUB_BUCKETS) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	static long lowerBoundOf(final int index) {
+		if (index < SUB_BUCKETS) {
+			return index;
+		}
+		int exponent = (index >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+		return ((long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1)))) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	static long upperBoundOf(final int index) {
+		return index + 1 < BUCKETS ? lowerBoundOf(index + 1) - 1 : MAX_VALUE;
+	}
+}
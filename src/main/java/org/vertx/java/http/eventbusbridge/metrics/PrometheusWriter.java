@@ -0,0 +1,186 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.metrics;
+
+/**
+ * Writes metrics in the Prometheus text exposition format (version 0.0.4).
+ *
+ * One writer is kept per thread and its buffer is reused by every scrape made on that thread. Label sets
+ * are rendered once, when the address or host they belong to is first seen (see {@link #labels(String...)}),
+ * so a scrape mostly appends pre-rendered text and numbers.
+ *
+ * @author j2ro
+ *
+ */
+public final class PrometheusWriter {
+
+	/** Content type of the text exposition format. */
+	public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+	private static final int INITIAL_CAPACITY = 16 * 1024;
+	private static final String[] QUANTILE_LABELS = new String[Histogram.QUANTILES.length];
+
+	static {
+		for (int i = 0; i < QUANTILE_LABELS.length; i++) {
+			QUANTILE_LABELS[i] = "quantile=\"" + Histogram.QUANTILES[i] + '"';
+		}
+	}
+
+	private static final ThreadLocal<PrometheusWriter> WRITERS = new ThreadLocal<PrometheusWriter>() {
+		@Override
+		protected PrometheusWriter initialValue() {
+			return new PrometheusWriter();
+		}
+	};
+
+	private final StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+	private final long[] quantileValues = new long[Histogram.QUANTILES.length];
+
+	private PrometheusWriter() {
+	}
+
+	/**
+	 * Gets the writer of the calling thread, emptied of anything written before.
+	 * @return the writer
+	 */
+	public static PrometheusWriter get() {
+		PrometheusWriter writer = WRITERS.get();
+		writer.builder.setLength(0);
+		return writer;
+	}
+
+	/**
+	 * Renders a set of labels.
+	 * @param namesAndValues Label names each followed by its value
+	 * @return The labels, escaped and separated by commas, without braces
+	 */
+	public static String labels(final String... namesAndValues) {
+		StringBuilder labels = new StringBuilder();
+		for (int i = 0; i + 1 < namesAndValues.length; i += 2) {
+			if (i > 0) {
+				labels.append(',');
+			}
+			labels.append(namesAndValues[i]).append("=\"");
+			String value = namesAndValues[i + 1];
+			for (int j = 0; j < value.length(); j++) {
+				char c = value.charAt(j);
+				if (c == '\\' || c == '"') {
+					labels.append('\\').append(c);
+				} else if (c == '\n') {
+					labels.append("\\n");
+				} else {
+					labels.append(c);
+				}
+			}
+			labels.append('"');
+		}
+		return labels.toString();
+	}
+
+	/**
+	 * Writes the HELP and TYPE lines of a metric.
+	 * @param name Name of the metric
+	 * @param type Type of the metric: counter, gauge or summary
+	 * @param help Description of the metric
+	 * @return this writer
+	 */
+	public PrometheusWriter header(final String name, final String type, final String help) {
+		builder.append("# HELP ").append(name).append(' ').append(help).append('\n');
+		builder.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+		return this;
+	}
+
+	/**
+	 * Writes a sample.
+	 * @param name Name of the metric
+	 * @param labels Rendered labels, or null for none
+	 * @param value The value
+	 * @return this writer
+	 */
+	public PrometheusWriter sample(final String name, final String labels, final long value) {
+		name(name, labels, null);
+		builder.append(value).append('\n');
+		return this;
+	}
+
+	/**
+	 * Writes a sample.
+	 * @param name Name of the metric
+	 * @param labels Rendered labels, or null for none
+	 * @param value The value
+	 * @return this writer
+	 */
+	public PrometheusWriter sample(final String name, final String labels, final double value) {
+		name(name, labels, null);
+		builder.append(value).append('\n');
+		return this;
+	}
+
+	/**
+	 * Writes the quantiles, sum and count of a histogram as a summary.
+	 * @param name Name of the metric
+	 * @param labels Rendered labels, or null for none
+	 * @param histogram The histogram
+	 * @param scale Factor the recorded values are multiplied by (e.g. 1e-6 to report microseconds as seconds)
+	 * @return this writer
+	 */
+	public PrometheusWriter summary(final String name, final String labels, final Histogram histogram, final double scale) {
+		histogram.getValuesAtQuantiles(Histogram.QUANTILES, quantileValues);
+		for (int i = 0; i < quantileValues.length; i++) {
+			name(name, labels, QUANTILE_LABELS[i]);
+			builder.append(quantileValues[i] * scale).append('\n');
+		}
+		builder.append(name).append("_sum");
+		labels(labels, null);
+		builder.append(histogram.getSum() * scale).append('\n');
+		builder.append(name).append("_count");
+		labels(labels, null);
+		builder.append(histogram.getCount()).append('\n');
+		return this;
+	}
+
+	/**
+	 * Gets everything written since the writer was got.
+	 * @return the exposition text
+	 */
+	@Override
+	public String toString() {
+		return builder.toString();
+	}
+
+	private void name(final String name, final String labels, final String extraLabel) {
+		builder.append(name);
+		labels(labels, extraLabel);
+	}
+
+	private void labels(final String labels, final String extraLabel) {
+		boolean hasLabels = labels != null && !labels.isEmpty();
+		if (hasLabels || extraLabel != null) {
+			builder.append('{');
+			if (hasLabels) {
+				builder.append(labels);
+			}
+			if (extraLabel != null) {
+				if (hasLabels) {
+					builder.append(',');
+				}
+				builder.append(extraLabel);
+			}
+			builder.append('}');
+		}
+		builder.append(' ');
+	}
+}
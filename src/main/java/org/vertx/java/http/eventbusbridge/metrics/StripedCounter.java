@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spread over several cells, so threads incrementing it at the same time rarely contend.
+ *
+ * Each thread adds to the cell picked by its id, and cells are padded a cache line apart so event loops do
+ * not share cache lines. The value of the counter is the sum of its cells.
+ *
+ * @author j2ro
+ *
+ */
+public final class StripedCounter {
+
+	private static final int STRIPES = stripes();
+	private static final int PADDING = 8;
+
+	private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+	/**
+	 * Adds one to the counter.
+	 */
+	public void increment() {
+		add(1);
+	}
+
+	/**
+	 * Adds to the counter.
+	 * @param value Value to add
+	 */
+	public void add(final long value) {
+		cells.addAndGet((int) (Thread.currentThread().getId() & (STRIPES - 1)) * PADDING, value);
+	}
+
+	/**
+	 * Gets the value of the counter.
+	 * @return sum of all cells
+	 */
+	public long sum() {
+		long sum = 0;
+		for (int i = 0; i < STRIPES; i++) {
+			sum += cells.get(i * PADDING);
+		}
+		return sum;
+	}
+
+	private static int stripes() {
+		int stripes = 1;
+		while (stripes < Runtime.getRuntime().availableProcessors() * 2 && stripes < 64) {
+			stripes <<= 1;
+		}
+		return stripes;
+	}
+}
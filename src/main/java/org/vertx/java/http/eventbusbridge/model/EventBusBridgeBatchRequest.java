@@ -0,0 +1,68 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.model;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import org.vertx.java.http.eventbusbridge.util.EventBusBridgeBatchRequestDeserializer;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+/**
+ * Class encapsulates a batch of requests sent to the HTTP Event Bus Bridge in a single HTTP request. In JSON,
+ * the batch is either an object holding the requests or a bare array of requests.
+ *
+ * @author j2ro
+ *
+ */
+@XmlRootElement(name = "eventBusBridgeBatchRequest")
+@JsonRootName(value = "eventBusBridgeBatchRequest")
+@JsonDeserialize(using = EventBusBridgeBatchRequestDeserializer.class)
+public final class EventBusBridgeBatchRequest {
+
+	private List<EventBusBridgeRequest> requests;
+
+	/**
+	 * Get the requests in the batch.
+	 * @return The requests
+	 */
+	@XmlElement(name = "requests", required = true)
+	@JsonProperty(value = "requests", required = true)
+	public List<EventBusBridgeRequest> getRequests() {
+		return requests;
+	}
+
+	/**
+	 * Set the requests in the batch.
+	 * @param requests The requests
+	 */
+	public void setRequests(final List<EventBusBridgeRequest> requests) {
+		this.requests = requests;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "requests: " + requests;
+	}
+}
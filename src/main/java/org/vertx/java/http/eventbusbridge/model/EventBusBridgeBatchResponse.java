@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.model;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+
+/**
+ * Class encapsulates the outcome of each request of a batch sent to the HTTP Event Bus Bridge.
+ *
+ * @author j2ro
+ *
+ */
+@XmlRootElement(name = "eventBusBridgeBatchResponse")
+@JsonRootName(value = "eventBusBridgeBatchResponse")
+public final class EventBusBridgeBatchResponse {
+
+	private List<EventBusBridgeBatchStatus> statuses;
+
+	/**
+	 * Creates an empty batch response.
+	 */
+	public EventBusBridgeBatchResponse() {
+	}
+
+	/**
+	 * Creates a batch response.
+	 * @param statuses The status of each request, in the order the requests appeared in the batch
+	 */
+	public EventBusBridgeBatchResponse(final List<EventBusBridgeBatchStatus> statuses) {
+		this.statuses = statuses;
+	}
+
+	/**
+	 * Get the status of each request, in the order the requests appeared in the batch.
+	 * @return The statuses
+	 */
+	@XmlElement(name = "statuses", required = true)
+	@JsonProperty(value = "statuses", required = true)
+	public List<EventBusBridgeBatchStatus> getStatuses() {
+		return statuses;
+	}
+
+	/**
+	 * Set the status of each request.
+	 * @param statuses The statuses
+	 */
+	public void setStatuses(final List<EventBusBridgeBatchStatus> statuses) {
+		this.statuses = statuses;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "statuses: " + statuses;
+	}
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.model;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+
+/**
+ * Class encapsulates the outcome of a single request within a batch.
+ *
+ * @author j2ro
+ *
+ */
+@XmlRootElement(name = "eventBusBridgeBatchStatus")
+@JsonRootName(value = "eventBusBridgeBatchStatus")
+public final class EventBusBridgeBatchStatus {
+
+	private int index;
+	private String address;
+	private int status;
+	private String cause;
+	private String ticket;
+	private String correlationId;
+
+	/**
+	 * Creates an empty status.
+	 */
+	public EventBusBridgeBatchStatus() {
+	}
+
+	/**
+	 * Creates a status.
+	 * @param index Position of the request within the batch
+	 * @param address The address of the request
+	 * @param status The HTTP status code the request would have received if sent on its own
+	 * @param cause The cause of any error (if any occurred)
+	 */
+	public EventBusBridgeBatchStatus(final int index, final String address, final int status, final String cause) {
+		this.index = index;
+		this.address = address;
+		this.status = status;
+		this.cause = cause;
+	}
+
+	/**
+	 * Get the position of the request within the batch.
+	 * @return The index
+	 */
+	@XmlElement(name = "index", required = true)
+	@JsonProperty(value = "index", required = true)
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Set the position of the request within the batch.
+	 * @param index The index
+	 */
+	public void setIndex(final int index) {
+		this.index = index;
+	}
+
+	/**
+	 * Get the address of the request.
+	 * @return The address
+	 */
+	@XmlElement(name = "address", required = false)
+	@JsonProperty(value = "address", required = false)
+	public String getAddress() {
+		return address;
+	}
+
+	/**
+	 * Set the address of the request.
+	 * @param address The address
+	 */
+	public void setAddress(final String address) {
+		this.address = address;
+	}
+
+	/**
+	 * Get the HTTP status code the request would have received if sent on its own.
+	 * @return The status code
+	 */
+	@XmlElement(name = "status", required = true)
+	@JsonProperty(value = "status", required = true)
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Set the HTTP status code of the request.
+	 * @param status The status code
+	 */
+	public void setStatus(final int status) {
+		this.status = status;
+	}
+
+	/**
+	 * Gets the cause of any error (if any occurred).
+	 * @return The cause
+	 */
+	@XmlElement(name = "cause", required = false)
+	@JsonProperty(value = "cause", required = false)
+	public String getCause() {
+		return cause;
+	}
+
+	/**
+	 * Sets the cause of any error (if any occurred).
+	 * @param cause The cause
+	 */
+	public void setCause(final String cause) {
+		this.cause = cause;
+	}
+
+	/**
+	 * Gets the ticket the reply to the request can be retrieved with (if the request was a send and the
+	 * reply store is enabled).
+	 * @return The ticket
+	 */
+	@XmlElement(name = "ticket", required = false)
+	@JsonProperty(value = "ticket", required = false)
+	public String getTicket() {
+		return ticket;
+	}
+
+	/**
+	 * Sets the ticket the reply to the request can be retrieved with.
+	 * @param ticket The ticket
+	 */
+	public void setTicket(final String ticket) {
+		this.ticket = ticket;
+	}
+
+	/**
+	 * Gets the correlation id of the request (if it had one).
+	 * @return The correlation id
+	 */
+	@XmlElement(name = "correlationId", required = false)
+	@JsonProperty(value = "correlationId", required = false)
+	public String getCorrelationId() {
+		return correlationId;
+	}
+
+	/**
+	 * Sets the correlation id of the request.
+	 * @param correlationId The correlation id
+	 */
+	public void setCorrelationId(final String correlationId) {
+		this.correlationId = correlationId;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "index: " + index + '\n'
+				+ "address: " + address + '\n'
+				+ "status: " + status + '\n'
+				+ "cause: " + cause + '\n'
+				+ "ticket: " + ticket + '\n'
+				+ "correlation id: " + correlationId;
+	}
+}
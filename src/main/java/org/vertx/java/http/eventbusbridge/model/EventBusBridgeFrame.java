@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.model;
+
+/**
+ * Class encapsulates a single frame exchanged over a WebSocket connection to the HTTP Event Bus Bridge.
+ *
+ * @author j2ro
+ *
+ */
+public final class EventBusBridgeFrame {
+
+	private final EventBusBridgeFrameType type;
+	private final int id;
+	private final String address;
+	private final EventBusMessageType eventBusMessageType;
+	private final byte[] message;
+
+	/**
+	 * Creates a frame.
+	 * @param type The type of the frame
+	 * @param id Identifier chosen by the client, echoed in the reply or error frame answering it (0 if no
+	 * answer is wanted)
+	 * @param address The address
+	 * @param eventBusMessageType The type of the message, may be null if the frame has no message
+	 * @param message The message, may be empty
+	 */
+	public EventBusBridgeFrame(final EventBusBridgeFrameType type, final int id, final String address,
+			                   final EventBusMessageType eventBusMessageType, final byte[] message) {
+		this.type = type;
+		this.id = id;
+		this.address = address;
+		this.eventBusMessageType = eventBusMessageType;
+		this.message = message;
+	}
+
+	/**
+	 * Get the type of the frame.
+	 * @return the type
+	 */
+	public EventBusBridgeFrameType getType() {
+		return type;
+	}
+
+	/**
+	 * Get the identifier chosen by the client.
+	 * @return the id, or 0 if no answer is wanted
+	 */
+	public int getId() {
+		return id;
+	}
+
+	/**
+	 * Get the address.
+	 * @return the address
+	 */
+	public String getAddress() {
+		return address;
+	}
+
+	/**
+	 * Get the type of the message.
+	 * @return the message type, or null if the frame has no message
+	 */
+	public EventBusMessageType getEventBusMessageType() {
+		return eventBusMessageType;
+	}
+
+	/**
+	 * Get the message.
+	 * @return the message
+	 */
+	public byte[] getMessage() {
+		return message;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "type: " + type + '\n'
+				+ "id: " + id + '\n'
+				+ "address: " + address + '\n'
+				+ "eventBusMessageType: " + eventBusMessageType + '\n'
+				+ "message length: " + (message != null ? message.length : 0);
+	}
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.model;
+
+/**
+ * Enumeration of the types of frame exchanged over a WebSocket connection to the HTTP Event Bus Bridge.
+ *
+ * @author j2ro
+ *
+ */
+public enum EventBusBridgeFrameType {
+	/** Send a message to an address (client to bridge). */
+	send(1),
+	/** Publish a message to an address (client to bridge). */
+	publish(2),
+	/** Subscribe to the messages sent to an address (client to bridge). */
+	subscribe(3),
+	/** Unsubscribe from an address (client to bridge). */
+	unsubscribe(4),
+	/** A message received on a subscribed address (bridge to client). */
+	message(5),
+	/** The reply to a send, or the acknowledgement of a subscribe or unsubscribe (bridge to client). */
+	reply(6),
+	/** The failure of a frame sent by the client (bridge to client). */
+	error(7);
+
+	private static final EventBusBridgeFrameType[] LOOKUP_BY_CODE = new EventBusBridgeFrameType[8];
+	static {
+		for (EventBusBridgeFrameType type : EventBusBridgeFrameType.values()) {
+			LOOKUP_BY_CODE[type.code] = type;
+		}
+	}
+
+	private final byte code;
+
+	private EventBusBridgeFrameType(final int code) {
+		this.code = (byte) code;
+	}
+
+	/**
+	 * Gets the code identifying the frame type on the wire.
+	 * @return the code
+	 */
+	public byte getCode() {
+		return code;
+	}
+
+	/**
+	 * Look up the frame type identified by a code.
+	 * @param code The code
+	 * @return The frame type, or null if none is identified by the code
+	 */
+	public static EventBusBridgeFrameType lookupByCode(final byte code) {
+		return code >= 0 && code < LOOKUP_BY_CODE.length ? LOOKUP_BY_CODE[code] : null;
+	}
+}
@@ -18,8 +18,12 @@ package org.vertx.java.http.eventbusbridge.model;
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
 
+import org.vertx.java.http.eventbusbridge.util.JerseyMessageDeserializer;
+import org.vertx.java.http.eventbusbridge.util.MessageDeserializer;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonRootName;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 /**
  * Class encapsulates requests sent to the HTTP Event Bus Bridge.
@@ -36,6 +40,9 @@ public final class EventBusBridgeRequest {
 	private byte[] message;
 	private EventBusMessageType eventBusMessageType;
 	private String responseMediaType;
+	private EventBusInstruction instruction;
+	private String idempotencyKey;
+	private String correlationId;
 
 	/**
 	 * Get the event bus address.
@@ -74,7 +81,8 @@ public final class EventBusBridgeRequest {
 	}
 
 	/**
-	 * Get the message.
+	 * Get the message. In JSON, the message is either Base64 encoded or, for JsonObject and JsonArray
+	 * messages, an inline JSON object or array.
 	 * @return the message
 	 */
 	@XmlElement(name = "message", required = true)
@@ -87,6 +95,8 @@ public final class EventBusBridgeRequest {
 	 * Set the message.
 	 * @param message the message
 	 */
+	@JsonDeserialize(using = MessageDeserializer.class)
+	@org.codehaus.jackson.map.annotate.JsonDeserialize(using = JerseyMessageDeserializer.class)
 	public void setMessage(final byte[] message) {
 		this.message = message;
 	}
@@ -127,6 +137,60 @@ public final class EventBusBridgeRequest {
 		this.responseMediaType = responseMediaType;
 	}
 
+	/**
+	 * Get the instruction. Only used by batch requests, where each request carries its own instruction.
+	 * @return the instruction (i.e. send or publish)
+	 */
+	@XmlElement(name = "instruction", required = false)
+	@JsonProperty(value = "instruction", required = false)
+	public EventBusInstruction getInstruction() {
+		return instruction;
+	}
+
+	/**
+	 * Set the instruction. Only used by batch requests, where each request carries its own instruction.
+	 * @param instruction the instruction (i.e. send or publish)
+	 */
+	public void setInstruction(final EventBusInstruction instruction) {
+		this.instruction = instruction;
+	}
+
+	/**
+	 * Get the idempotency key, which identifies retries of the same request.
+	 * @return The idempotency key
+	 */
+	@XmlElement(name = "idempotencyKey", required = false)
+	@JsonProperty(value = "idempotencyKey", required = false)
+	public String getIdempotencyKey() {
+		return idempotencyKey;
+	}
+
+	/**
+	 * Set the idempotency key.
+	 * @param idempotencyKey The idempotency key
+	 */
+	public void setIdempotencyKey(final String idempotencyKey) {
+		this.idempotencyKey = idempotencyKey;
+	}
+
+	/**
+	 * Get the correlation id, which is echoed in the response to the request.
+	 * @return The correlation id
+	 */
+	@XmlElement(name = "correlationId", required = false)
+	@JsonProperty(value = "correlationId", required = false)
+	public String getCorrelationId() {
+		return correlationId;
+	}
+
+	/**
+	 * Set the correlation id.
+	 * @param correlationId The correlation id
+	 */
+	public void setCorrelationId(final String correlationId) {
+		this.correlationId = correlationId;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -136,6 +200,9 @@ public final class EventBusBridgeRequest {
 				+ "message: " + message + '\n'
 				+ "message_type: " + eventBusMessageType + '\n'
 				+ "response_url: " + responseUrl + "\n"
-				+ "response_media_type: " + responseMediaType;
+				+ "response_media_type: " + responseMediaType + '\n'
+				+ "instruction: " + instruction + '\n'
+				+ "idempotency_key: " + idempotencyKey + '\n'
+				+ "correlation_id: " + correlationId;
 	}
 }
@@ -17,7 +17,9 @@ package org.vertx.java.http.eventbusbridge.model;
 
 import javax.xml.bind.annotation.XmlElement;
 import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonRootName;
 
@@ -32,10 +34,12 @@ import com.fasterxml.jackson.annotation.JsonRootName;
 public final class EventBusBridgeResponse {
 
 	private String address;
+	private String correlationId;
 	private byte[] responseMessage;
 	private EventBusMessageType eventBusMessageType;
 	private boolean successful;
 	private String cause;
+	private boolean inlineJson;
 
 	/**
 	 * Get the address.
@@ -123,6 +127,43 @@ public final class EventBusBridgeResponse {
 		this.cause = cause;
 	}
 
+	/**
+	 * Gets the correlation id of the request the reply is to (if it had one).
+	 * @return The correlation id
+	 */
+	@XmlElement(name = "correlationId", required = false)
+	@JsonProperty(value = "correlationId", required = false)
+	public String getCorrelationId() {
+		return correlationId;
+	}
+
+	/**
+	 * Sets the correlation id of the request the reply is to.
+	 * @param correlationId The correlation id
+	 */
+	public void setCorrelationId(final String correlationId) {
+		this.correlationId = correlationId;
+	}
+
+	/**
+	 * Gets whether JsonObject and JsonArray messages are written inline when serialized to JSON, rather
+	 * than Base64 encoded.
+	 * @return Whether JSON messages are written inline
+	 */
+	@XmlTransient
+	@JsonIgnore
+	public boolean isInlineJson() {
+		return inlineJson;
+	}
+
+	/**
+	 * Sets whether JsonObject and JsonArray messages are written inline when serialized to JSON.
+	 * @param inlineJson Whether JSON messages are written inline
+	 */
+	public void setInlineJson(final boolean inlineJson) {
+		this.inlineJson = inlineJson;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -132,7 +173,8 @@ public final class EventBusBridgeResponse {
 				+ "response message: " + responseMessage + '\n'
 				+ "event bus message type: " + eventBusMessageType + '\n'
 				+ "successful: " + successful + '\n'
-				+ "cause: " + cause;
+				+ "cause: " + cause + '\n'
+				+ "correlation id: " + correlationId;
 	}
 
 }
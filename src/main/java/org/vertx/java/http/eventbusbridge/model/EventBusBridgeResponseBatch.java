@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.model;
+
+import java.util.List;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+
+/**
+ * Class encapsulates several replies posted to the same response url in a single request.
+ *
+ * @author j2ro
+ *
+ */
+@XmlRootElement(name = "eventBusBridgeResponseBatch")
+@JsonRootName(value = "eventBusBridgeResponseBatch")
+public final class EventBusBridgeResponseBatch {
+
+	private List<EventBusBridgeResponse> responses;
+
+	/**
+	 * Creates an empty response batch.
+	 */
+	public EventBusBridgeResponseBatch() {
+	}
+
+	/**
+	 * Creates a response batch.
+	 * @param responses The replies, in the order they were received
+	 */
+	public EventBusBridgeResponseBatch(final List<EventBusBridgeResponse> responses) {
+		this.responses = responses;
+	}
+
+	/**
+	 * Get the replies, in the order they were received.
+	 * @return The replies
+	 */
+	@XmlElement(name = "responses", required = true)
+	@JsonProperty(value = "responses", required = true)
+	public List<EventBusBridgeResponse> getResponses() {
+		return responses;
+	}
+
+	/**
+	 * Set the replies.
+	 * @param responses The replies
+	 */
+	public void setResponses(final List<EventBusBridgeResponse> responses) {
+		this.responses = responses;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "responses: " + responses;
+	}
+}
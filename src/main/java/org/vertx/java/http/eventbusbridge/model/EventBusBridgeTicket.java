@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.model;
+
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRootName;
+
+/**
+ * Class encapsulates the ticket handed to a client for the reply to its send, which the client retrieves
+ * from /eventbus/reply/{ticket}.
+ *
+ * @author j2ro
+ *
+ */
+@XmlRootElement(name = "eventBusBridgeTicket")
+@JsonRootName(value = "eventBusBridgeTicket")
+public final class EventBusBridgeTicket {
+
+	private String ticket;
+
+	/**
+	 * Creates an empty ticket.
+	 */
+	public EventBusBridgeTicket() {
+	}
+
+	/**
+	 * Creates a ticket.
+	 * @param ticket The ticket
+	 */
+	public EventBusBridgeTicket(final String ticket) {
+		this.ticket = ticket;
+	}
+
+	/**
+	 * Get the ticket.
+	 * @return The ticket
+	 */
+	@XmlElement(name = "ticket", required = true)
+	@JsonProperty(value = "ticket", required = true)
+	public String getTicket() {
+		return ticket;
+	}
+
+	/**
+	 * Set the ticket.
+	 * @param ticket The ticket
+	 */
+	public void setTicket(final String ticket) {
+		this.ticket = ticket;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "ticket: " + ticket;
+	}
+}
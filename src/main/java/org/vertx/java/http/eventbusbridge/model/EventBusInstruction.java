@@ -25,5 +25,7 @@ public enum EventBusInstruction {
 	/** Send a message to an address. */
 	send,
 	/** Publish a message to an address. */
-	publish
+	publish,
+	/** Send a message to an address and return the reply in the HTTP response. */
+	request
 }
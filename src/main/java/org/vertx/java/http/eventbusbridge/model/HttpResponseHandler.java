@@ -17,21 +17,11 @@ package org.vertx.java.http.eventbusbridge.model;
 
 import java.net.URL;
 
-import javax.ws.rs.core.Response.Status;
-import javax.xml.bind.JAXBException;
-
-import org.apache.log4j.Logger;
 import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.eventbus.Message;
-import org.vertx.java.core.eventbus.ReplyException;
-import org.vertx.java.core.http.HttpClient;
-import org.vertx.java.core.http.HttpClientRequest;
-import org.vertx.java.core.http.HttpClientResponse;
-import org.vertx.java.http.eventbusbridge.util.EventBusMessageTypeConverter;
-import org.vertx.java.http.eventbusbridge.util.SerializationHelper;
-
-import com.fasterxml.jackson.core.JsonProcessingException;
+import org.vertx.java.http.eventbusbridge.callback.CallbackDelivery;
+import org.vertx.java.http.eventbusbridge.util.EventBusBridgeResponseFactory;
 
 /**
  * Handler class for managing replies to sent messages.
@@ -41,27 +31,58 @@ import com.fasterxml.jackson.core.JsonProcessingException;
  */
 public final class HttpResponseHandler implements Handler<AsyncResult<Message<Object>>> {
 
-	private static final Logger LOGGER = Logger.getLogger(HttpResponseHandler.class);
-
 	private URL url;
 	private String mediaType;
-	private HttpClient httpClient;
-	private HttpReplyResponseHandler responseHandler;
+	private CallbackDelivery delivery;
 	private String address;
+	private boolean inlineJson;
+	private boolean compact;
+	private String correlationId;
+
+	/*
+	 * Creates new instance of HttpResponseHandler.
+	 * @param url URL to post the reply to
+	 * @param mediaType MediaType of the reply
+	 * @param delivery Delivery posting the reply to the url
+	 * @param address The address
+	 */
+	public HttpResponseHandler(final URL url, final String mediaType, final CallbackDelivery delivery, final String address) {
+		this(url, mediaType, delivery, address, false, false);
+	}
+
+	/*
+	 * Creates new instance of HttpResponseHandler.
+	 * @param url URL to post the reply to
+	 * @param mediaType MediaType of the reply
+	 * @param delivery Delivery posting the reply to the url
+	 * @param address The address
+	 * @param inlineJson Whether JsonObject and JsonArray replies are written inline rather than Base64 encoded
+	 * @param compact Whether replies are serialized without formatting
+	 */
+	public HttpResponseHandler(final URL url, final String mediaType, final CallbackDelivery delivery,
+			                   final String address, final boolean inlineJson, final boolean compact) {
+		this(url, mediaType, delivery, address, inlineJson, compact, null);
+	}
 
 	/*
 	 * Creates new instance of HttpResponseHandler.
 	 * @param url URL to post the reply to
 	 * @param mediaType MediaType of the reply
-	 * @param httpClient The HTTP client
+	 * @param delivery Delivery posting the reply to the url
 	 * @param address The address
+	 * @param inlineJson Whether JsonObject and JsonArray replies are written inline rather than Base64 encoded
+	 * @param compact Whether replies are serialized without formatting
+	 * @param correlationId The correlation id of the request, echoed in the reply (may be null)
 	 */
-	public HttpResponseHandler(final URL url, final String mediaType, final HttpClient httpClient, final String address) {
+	public HttpResponseHandler(final URL url, final String mediaType, final CallbackDelivery delivery, final String address,
+			                   final boolean inlineJson, final boolean compact, final String correlationId) {
 		this.url = url;
 		this.mediaType = mediaType;
-		this.httpClient = httpClient;
-		this.responseHandler = new HttpReplyResponseHandler();
+		this.delivery = delivery;
 		this.address = address;
+		this.inlineJson = inlineJson;
+		this.compact = compact;
+		this.correlationId = correlationId;
 	}
 
 	/**
@@ -81,11 +102,11 @@ public final class HttpResponseHandler implements Handler<AsyncResult<Message<Ob
 	}
 
 	/**
-	 * Gets the Http client.
-	 * @return the Http client
+	 * Gets the delivery the reply is handed to.
+	 * @return the callback delivery
 	 */
-	public HttpClient getHttpClient() {
-		return httpClient;
+	public CallbackDelivery getDelivery() {
+		return delivery;
 	}
 
 	/**
@@ -96,6 +117,14 @@ public final class HttpResponseHandler implements Handler<AsyncResult<Message<Ob
 		return address;
 	}
 
+	/**
+	 * Gets the correlation id of the request.
+	 * @return the correlation id
+	 */
+	public String getCorrelationId() {
+		return correlationId;
+	}
+
 	/**
 	 * Handle the event bus reply.
 	 *
@@ -103,56 +132,8 @@ public final class HttpResponseHandler implements Handler<AsyncResult<Message<Ob
 	 */
 	@Override
 	public void handle(final AsyncResult<Message<Object>> event) {
-		EventBusBridgeResponse response = new EventBusBridgeResponse();
-		response.setSuccessful(event.succeeded());
-		response.setAddress(address);
-		if (event.succeeded()) {
-			Message<Object> result = event.result();
-
-			Object responseMessage = result.body();
-			response.setResponseMessage(EventBusMessageTypeConverter.convertOutgoingMessage(result.body()));
-			response.setEventBusMessageType(EventBusMessageType.lookupByClass(responseMessage.getClass()));
-		} else {
-			Throwable cause = event.cause();
-			if (cause != null) {
-				if (cause instanceof ReplyException) {
-					ReplyException replyException = (ReplyException) cause;
-					response.setCause(replyException.failureType().name());
-				} else {
-					response.setCause(cause.getMessage());
-				}
-			}
-		}
-		postResponse(response);
-	}
-
-	private void postResponse(final EventBusBridgeResponse response) {
-		httpClient.setHost(url.getHost());
-		httpClient.setPort(url.getPort());
-		HttpClientRequest request = httpClient.post(url.toExternalForm(), responseHandler);
-		request.setChunked(true);
-		request.headers().add("Content-Type", mediaType);
-		try {
-			String responseBody = SerializationHelper.serialize(response, mediaType);
-			request.write(responseBody);
-			request.end();
-		} catch (JsonProcessingException | JAXBException e) {
-			LOGGER.error("Unable to serialize response\n" + response + "\n to: " + mediaType);
-		}
-	}
-
-	private class HttpReplyResponseHandler implements Handler<HttpClientResponse> {
-
-		private Logger logger = Logger.getLogger(HttpReplyResponseHandler.class);
-
-		@Override
-		public void handle(final HttpClientResponse response) {
-			if (response.statusCode() == Status.ACCEPTED.getStatusCode()) {
-				logger.debug("Reply sent successfully");
-			} else {
-				logger.warn("Error sending the reply to client. status code:" + response.statusCode()
-						    + "  message: " + response.statusMessage());
-			}
-		}
+		EventBusBridgeResponse response = EventBusBridgeResponseFactory.createResponse(address, event, inlineJson);
+		response.setCorrelationId(correlationId);
+		delivery.deliver(url, mediaType, compact, response);
 	}
 }
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.model;
+
+import java.io.IOException;
+
+import javax.ws.rs.core.Response.Status;
+import javax.xml.bind.JAXBException;
+
+import org.apache.log4j.Logger;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.http.eventbusbridge.reply.ReplyStore;
+import org.vertx.java.http.eventbusbridge.util.EventBusBridgeResponseFactory;
+import org.vertx.java.http.eventbusbridge.util.SerializationHelper;
+
+/**
+ * Handler class that parks the reply to a sent message in the reply store, under the ticket handed to
+ * the client, until the client retrieves it.
+ *
+ * @author j2ro
+ *
+ */
+public final class ReplyStoreResponseHandler implements Handler<AsyncResult<Message<Object>>> {
+
+	private static final Logger LOGGER = Logger.getLogger(ReplyStoreResponseHandler.class);
+
+	private ReplyStore store;
+	private String ticket;
+	private String mediaType;
+	private String address;
+	private boolean inlineJson;
+	private boolean compact;
+	private String correlationId;
+
+	/**
+	 * Creates new instance of ReplyStoreResponseHandler.
+	 * @param store The store the reply is parked in
+	 * @param ticket The ticket the reply is parked under
+	 * @param mediaType MediaType of the reply
+	 * @param address The address
+	 * @param inlineJson Whether JsonObject and JsonArray replies are written inline rather than Base64 encoded
+	 * @param compact Whether replies are serialized without formatting
+	 * @param correlationId The correlation id of the request, echoed in the reply (may be null)
+	 */
+	public ReplyStoreResponseHandler(final ReplyStore store, final String ticket, final String mediaType, final String address,
+			                         final boolean inlineJson, final boolean compact, final String correlationId) {
+		this.store = store;
+		this.ticket = ticket;
+		this.mediaType = mediaType;
+		this.address = address;
+		this.inlineJson = inlineJson;
+		this.compact = compact;
+		this.correlationId = correlationId;
+	}
+
+	/**
+	 * Gets the ticket the reply is parked under.
+	 * @return the ticket
+	 */
+	public String getTicket() {
+		return ticket;
+	}
+
+	/**
+	 * Gets the media type of the response.
+	 * @return the response media type
+	 */
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	/**
+	 * Gets the address the request was sent to.
+	 * @return the address
+	 */
+	public String getAddress() {
+		return address;
+	}
+
+	/**
+	 * Handle the event bus reply.
+	 *
+	 * @param event The event
+	 */
+	@Override
+	public void handle(final AsyncResult<Message<Object>> event) {
+		EventBusBridgeResponse response = EventBusBridgeResponseFactory.createResponse(address, event, inlineJson);
+		response.setCorrelationId(correlationId);
+		try {
+			byte[] body = SerializationHelper.serializeToBuffer(response, mediaType, compact).getBytes();
+			store.complete(ticket, SyncResponseHandler.statusOf(event).getStatusCode(), mediaType, body);
+		} catch (IOException | JAXBException e) {
+			LOGGER.error("Unable to serialize response\n" + response + "\n to: " + mediaType);
+			store.complete(ticket, Status.INTERNAL_SERVER_ERROR.getStatusCode(), mediaType, null);
+		}
+	}
+}
@@ -0,0 +1,143 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.model;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.xml.bind.JAXBException;
+
+import org.apache.log4j.Logger;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.eventbus.ReplyException;
+import org.vertx.java.core.eventbus.ReplyFailure;
+import org.vertx.java.http.eventbusbridge.util.EventBusBridgeResponseFactory;
+import org.vertx.java.http.eventbusbridge.util.SerializationHelper;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+/**
+ * Handler class that writes the reply to a sent message as the body of a suspended HTTP response.
+ *
+ * @author j2ro
+ *
+ */
+public final class SyncResponseHandler implements Handler<AsyncResult<Message<Object>>> {
+
+	private static final Logger LOGGER = Logger.getLogger(SyncResponseHandler.class);
+
+	private AsyncResponse asyncResponse;
+	private String mediaType;
+	private String address;
+	private boolean inlineJson;
+	private boolean compact;
+	private String correlationId;
+
+	/**
+	 * Creates new instance of SyncResponseHandler.
+	 * @param asyncResponse The suspended HTTP response
+	 * @param mediaType MediaType of the reply
+	 * @param address The address
+	 */
+	public SyncResponseHandler(final AsyncResponse asyncResponse, final String mediaType, final String address) {
+		this(asyncResponse, mediaType, address, false, false);
+	}
+
+	/**
+	 * Creates new instance of SyncResponseHandler.
+	 * @param asyncResponse The suspended HTTP response
+	 * @param mediaType MediaType of the reply
+	 * @param address The address
+	 * @param inlineJson Whether JsonObject and JsonArray replies are written inline rather than Base64 encoded
+	 * @param compact Whether replies are serialized without formatting
+	 */
+	public SyncResponseHandler(final AsyncResponse asyncResponse, final String mediaType, final String address,
+			                   final boolean inlineJson, final boolean compact) {
+		this(asyncResponse, mediaType, address, inlineJson, compact, null);
+	}
+
+	/**
+	 * Creates new instance of SyncResponseHandler.
+	 * @param asyncResponse The suspended HTTP response
+	 * @param mediaType MediaType of the reply
+	 * @param address The address
+	 * @param inlineJson Whether JsonObject and JsonArray replies are written inline rather than Base64 encoded
+	 * @param compact Whether replies are serialized without formatting
+	 * @param correlationId The correlation id of the request, echoed in the reply (may be null)
+	 */
+	public SyncResponseHandler(final AsyncResponse asyncResponse, final String mediaType, final String address,
+			                   final boolean inlineJson, final boolean compact, final String correlationId) {
+		this.asyncResponse = asyncResponse;
+		this.mediaType = mediaType;
+		this.address = address;
+		this.inlineJson = inlineJson;
+		this.compact = compact;
+		this.correlationId = correlationId;
+	}
+
+	/**
+	 * Gets the media type of the response.
+	 * @return the response media type
+	 */
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	/**
+	 * Gets the address the request was sent to.
+	 * @return the address
+	 */
+	public String getAddress() {
+		return address;
+	}
+
+	/**
+	 * Handle the event bus reply.
+	 *
+	 * @param event The event
+	 */
+	@Override
+	public void handle(final AsyncResult<Message<Object>> event) {
+		EventBusBridgeResponse response = EventBusBridgeResponseFactory.createResponse(address, event, inlineJson);
+		response.setCorrelationId(correlationId);
+		try {
+			String responseBody = SerializationHelper.serialize(response, mediaType, compact);
+			asyncResponse.resume(Response.status(statusOf(event)).type(mediaType).entity(responseBody).build());
+		} catch (JsonProcessingException | JAXBException e) {
+			LOGGER.error("Unable to serialize response\n" + response + "\n to: " + mediaType);
+			asyncResponse.resume(Response.status(Status.INTERNAL_SERVER_ERROR).build());
+		}
+	}
+
+	/**
+	 * Gets the HTTP status matching the outcome of an event bus reply: 200 for a reply, 504 if the reply
+	 * timed out, and 502 for any other failure.
+	 * @param event The event bus reply
+	 * @return The status
+	 */
+	public static Status statusOf(final AsyncResult<Message<Object>> event) {
+		if (event.succeeded()) {
+			return Status.OK;
+		}
+		Throwable cause = event.cause();
+		if (cause instanceof ReplyException && ((ReplyException) cause).failureType() == ReplyFailure.TIMEOUT) {
+			return Status.GATEWAY_TIMEOUT;
+		}
+		return Status.BAD_GATEWAY;
+	}
+}
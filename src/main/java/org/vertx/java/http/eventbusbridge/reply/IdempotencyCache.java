@@ -0,0 +1,238 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.reply;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.model.EventBusInstruction;
+
+/**
+ * Bounded cache of the idempotency keys of recent sends and publishes, so a request retried by its client
+ * within the deduplication window is acknowledged without being dispatched again.
+ *
+ * Keys are scoped by instruction and address. A key is claimed before its request is dispatched, and the
+ * ticket of a send's reply (if any) is recorded against it afterwards, so a retried send is answered with
+ * the same ticket. Keys are forgotten once the window has passed since they were first seen, and the oldest
+ * are evicted first once the cache is full. Like the reply store, the cache is split into segments, each an
+ * insertion ordered map guarded by its own lock, and is created when the module starts and discarded when
+ * it stops.
+ *
+ * @author j2ro
+ *
+ */
+public final class IdempotencyCache {
+
+	/** Returned by {@link #claim(EventBusInstruction, String, String)} for a retried request without a ticket. */
+	public static final String NO_TICKET = new String();
+
+	private static final String IDEMPOTENCY_CONFIG = "idempotency";
+	private static final String MAX_KEYS = "max_keys";
+	private static final String WINDOW = "window";
+
+	private static final int DEFAULT_MAX_KEYS = 10000;
+	private static final long DEFAULT_WINDOW = 60000;
+
+	private static final int MAX_SEGMENTS = 16;
+	private static final int MIN_SEGMENT_SIZE = 16;
+
+	private static final AtomicReference<IdempotencyCache> CACHE = new AtomicReference<IdempotencyCache>();
+
+	private final int maxKeys;
+	private final Segment[] segments;
+	private final int segmentMask;
+	private final AtomicLong deduplicated = new AtomicLong();
+
+	private IdempotencyCache(final JsonObject config) {
+		JsonObject idempotencyConfig = config.getObject(IDEMPOTENCY_CONFIG, new JsonObject());
+		this.maxKeys = idempotencyConfig.getInteger(MAX_KEYS, DEFAULT_MAX_KEYS);
+		long window = idempotencyConfig.getLong(WINDOW, DEFAULT_WINDOW);
+		int segmentCount = 1;
+		while (segmentCount < MAX_SEGMENTS && segmentCount * 2 * MIN_SEGMENT_SIZE <= maxKeys) {
+			segmentCount *= 2;
+		}
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment((maxKeys + segmentCount - 1) / segmentCount, window);
+		}
+		segmentMask = segmentCount - 1;
+	}
+
+	/**
+	 * Gets the cache, creating it from the configuration on first use. A cache in use is never replaced, so
+	 * no claimed key is forgotten early because a caller holds a different copy of the configuration.
+	 * @param config Configuration
+	 * @return the idempotency cache
+	 */
+	public static IdempotencyCache get(final JsonObject config) {
+		IdempotencyCache cache = CACHE.get();
+		if (cache == null) {
+			CACHE.compareAndSet(null, new IdempotencyCache(config));
+			cache = CACHE.get();
+		}
+		return cache;
+	}
+
+	/**
+	 * Discards the cache created by {@link #get(JsonObject)}, so the next call creates a new one.
+	 */
+	public static void closeInstance() {
+		CACHE.set(null);
+	}
+
+	/**
+	 * Gets whether retried requests are deduplicated, i.e. whether 'idempotency.max_keys' is not 0.
+	 * @return true if the cache is enabled
+	 */
+	public boolean isEnabled() {
+		return maxKeys > 0;
+	}
+
+	/**
+	 * Claims the idempotency key of a request about to be dispatched.
+	 * @param instruction Instruction (i.e. send or publish)
+	 * @param address The address
+	 * @param key The idempotency key
+	 * @return null if the key is new and the request should be dispatched, otherwise the ticket of the
+	 * original request, or {@link #NO_TICKET} if it has none
+	 */
+	public String claim(final EventBusInstruction instruction, final String address, final String key) {
+		String scopedKey = scope(instruction, address, key);
+		String ticket = segmentFor(scopedKey).claim(scopedKey, System.currentTimeMillis());
+		if (ticket != null) {
+			deduplicated.incrementAndGet();
+		}
+		return ticket;
+	}
+
+	/**
+	 * Records the ticket of the reply to a request whose key has been claimed.
+	 * @param instruction Instruction (i.e. send or publish)
+	 * @param address The address
+	 * @param key The idempotency key
+	 * @param ticket The ticket, may be null
+	 */
+	public void record(final EventBusInstruction instruction, final String address, final String key, final String ticket) {
+		if (ticket != null) {
+			String scopedKey = scope(instruction, address, key);
+			segmentFor(scopedKey).record(scopedKey, ticket);
+		}
+	}
+
+	/**
+	 * Releases a claimed key, because its request could not be dispatched and may be retried.
+	 * @param instruction Instruction (i.e. send or publish)
+	 * @param address The address
+	 * @param key The idempotency key
+	 */
+	public void release(final EventBusInstruction instruction, final String address, final String key) {
+		String scopedKey = scope(instruction, address, key);
+		segmentFor(scopedKey).release(scopedKey);
+	}
+
+	/**
+	 * Gets the number of keys held by the cache.
+	 * @return number of keys
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Gets the number of retried requests acknowledged without being dispatched.
+	 * @return number of deduplicated requests
+	 */
+	public long getDeduplicated() {
+		return deduplicated.get();
+	}
+
+	private Segment segmentFor(final String scopedKey) {
+		int hash = scopedKey.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & segmentMask];
+	}
+
+	private static String scope(final EventBusInstruction instruction, final String address, final String key) {
+		return new StringBuilder(instruction.name().length() + address.length() + key.length() + 2)
+				.append(instruction.name()).append(' ').append(address).append(' ').append(key).toString();
+	}
+
+	private static final class Entry {
+
+		private final long seenAt;
+		private String ticket = NO_TICKET;
+
+		private Entry(final long seenAt) {
+			this.seenAt = seenAt;
+		}
+	}
+
+	private static final class Segment {
+
+		private final int maxKeys;
+		private final long window;
+		private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>();
+
+		private Segment(final int maxKeys, final long window) {
+			this.maxKeys = maxKeys;
+			this.window = window;
+		}
+
+		private synchronized String claim(final String scopedKey, final long now) {
+			expire(now);
+			Entry entry = entries.get(scopedKey);
+			if (entry != null) {
+				return entry.ticket;
+			}
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+			while (entries.size() >= maxKeys && iterator.hasNext()) {
+				iterator.next();
+				iterator.remove();
+			}
+			entries.put(scopedKey, new Entry(now));
+			return null;
+		}
+
+		private synchronized void record(final String scopedKey, final String ticket) {
+			Entry entry = entries.get(scopedKey);
+			if (entry != null) {
+				entry.ticket = ticket;
+			}
+		}
+
+		private synchronized void release(final String scopedKey) {
+			entries.remove(scopedKey);
+		}
+
+		private synchronized int size() {
+			return entries.size();
+		}
+
+		private void expire(final long now) {
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+			while (iterator.hasNext() && now - iterator.next().getValue().seenAt >= window) {
+				iterator.remove();
+			}
+		}
+	}
+}
@@ -0,0 +1,97 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.reply;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The serialized reply to a send, parked in the {@link ReplyStore} until its client retrieves it.
+ *
+ * Large bodies can be held off-heap, in a direct buffer, so parked replies add little to garbage
+ * collection work.
+ *
+ * @author j2ro
+ *
+ */
+public final class ParkedReply {
+
+	private final int status;
+	private final String mediaType;
+	private final byte[] heapBody;
+	private final ByteBuffer offHeapBody;
+
+	ParkedReply(final int status, final String mediaType, final byte[] body, final boolean offHeap) {
+		this.status = status;
+		this.mediaType = mediaType;
+		if (offHeap && body != null) {
+			this.heapBody = null;
+			this.offHeapBody = ByteBuffer.allocateDirect(body.length);
+			this.offHeapBody.put(body).flip();
+		} else {
+			this.heapBody = body;
+			this.offHeapBody = null;
+		}
+	}
+
+	/**
+	 * Gets the HTTP status of the reply: 200 for a reply, 504 if the send timed out, 502 for any other
+	 * failure.
+	 * @return the status
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Gets the media type the reply was serialized to.
+	 * @return the media type
+	 */
+	public String getMediaType() {
+		return mediaType;
+	}
+
+	/**
+	 * Gets the serialized reply.
+	 * @return the body, copied onto the heap if it was held off-heap
+	 */
+	public byte[] getBody() {
+		if (offHeapBody == null) {
+			return heapBody;
+		}
+		byte[] body = new byte[offHeapBody.remaining()];
+		offHeapBody.duplicate().get(body);
+		return body;
+	}
+
+	/**
+	 * Gets the size of the serialized reply.
+	 * @return the size in bytes
+	 */
+	public int getSize() {
+		if (offHeapBody != null) {
+			return offHeapBody.remaining();
+		}
+		return heapBody != null ? heapBody.length : 0;
+	}
+
+	/**
+	 * Gets whether the body is held off-heap.
+	 * @return true if the body is in a direct buffer
+	 */
+	public boolean isOffHeap() {
+		return offHeapBody != null;
+	}
+}
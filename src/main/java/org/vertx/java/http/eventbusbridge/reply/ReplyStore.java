@@ -0,0 +1,402 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.reply;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Bounded store of the replies to sends made by clients that retrieve their replies with a ticket rather
+ * than receiving them at a response url.
+ *
+ * A ticket is opened when the send is dispatched and its reply is parked under it when it arrives, until
+ * the client retrieves it, once. Tickets expire a fixed period after they were opened, and the oldest are
+ * evicted first once the store holds too many tickets or too many bytes of replies. Like the decision cache,
+ * the store is split into segments, each an insertion ordered map guarded by its own lock. One store is
+ * shared by every event loop, created when the module starts and discarded when it stops.
+ *
+ * @author j2ro
+ *
+ */
+public final class ReplyStore {
+
+	/** Passed to the handler of {@link #get(String, long, Vertx, Handler)} when the reply has not arrived yet. */
+	public static final ParkedReply PENDING = new ParkedReply(0, null, null, false);
+
+	private static final String REPLY_STORE_CONFIG = "reply_store";
+	private static final String MAX_ENTRIES = "max_entries";
+	private static final String MAX_BYTES = "max_bytes";
+	private static final String TTL = "ttl";
+	private static final String OFF_HEAP_THRESHOLD = "off_heap_threshold";
+	private static final String MAX_WAIT = "max_wait";
+
+	private static final int DEFAULT_MAX_ENTRIES = 0;
+	private static final long DEFAULT_MAX_BYTES = 64 * 1024 * 1024;
+	private static final long DEFAULT_TTL = 60000;
+	private static final int DEFAULT_OFF_HEAP_THRESHOLD = 0;
+	private static final long DEFAULT_MAX_WAIT = 30000;
+
+	private static final int MAX_SEGMENTS = 16;
+	private static final int MIN_SEGMENT_SIZE = 16;
+	private static final int TICKET_BYTES = 16;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static final AtomicReference<ReplyStore> STORE = new AtomicReference<ReplyStore>();
+
+	private static final ThreadLocal<SecureRandom> RANDOMS = new ThreadLocal<SecureRandom>() {
+		@Override
+		protected SecureRandom initialValue() {
+			return new SecureRandom();
+		}
+	};
+
+	private final int maxEntries;
+	private final int offHeapThreshold;
+	private final long maxWait;
+	private final Segment[] segments;
+	private final int segmentMask;
+
+	private ReplyStore(final JsonObject config) {
+		JsonObject storeConfig = config.getObject(REPLY_STORE_CONFIG, new JsonObject());
+		this.maxEntries = storeConfig.getInteger(MAX_ENTRIES, DEFAULT_MAX_ENTRIES);
+		this.offHeapThreshold = storeConfig.getInteger(OFF_HEAP_THRESHOLD, DEFAULT_OFF_HEAP_THRESHOLD);
+		this.maxWait = storeConfig.getLong(MAX_WAIT, DEFAULT_MAX_WAIT);
+		long maxBytes = storeConfig.getLong(MAX_BYTES, DEFAULT_MAX_BYTES);
+		long ttl = storeConfig.getLong(TTL, DEFAULT_TTL);
+		int segmentCount = 1;
+		while (segmentCount < MAX_SEGMENTS && segmentCount * 2 * MIN_SEGMENT_SIZE <= maxEntries) {
+			segmentCount *= 2;
+		}
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment((maxEntries + segmentCount - 1) / segmentCount, (maxBytes + segmentCount - 1) / segmentCount, ttl);
+		}
+		segmentMask = segmentCount - 1;
+	}
+
+	/**
+	 * Gets the store, creating it from the configuration on first use. A store in use is never replaced, so
+	 * no parked reply is lost to a caller holding a different copy of the configuration.
+	 * @param config Configuration
+	 * @return the reply store
+	 */
+	public static ReplyStore get(final JsonObject config) {
+		ReplyStore store = STORE.get();
+		if (store == null) {
+			STORE.compareAndSet(null, new ReplyStore(config));
+			store = STORE.get();
+		}
+		return store;
+	}
+
+	/**
+	 * Discards the store created by {@link #get(JsonObject)}, and the replies parked in it, so the next call
+	 * creates a new one.
+	 */
+	public static void closeInstance() {
+		STORE.set(null);
+	}
+
+	/**
+	 * Gets whether replies are parked in the store, i.e. whether 'reply_store.max_entries' is set.
+	 * @return true if the store is enabled
+	 */
+	public boolean isEnabled() {
+		return maxEntries > 0;
+	}
+
+	/**
+	 * Opens a ticket for the reply to a send, evicting the oldest ticket if the store is full.
+	 * @return the ticket, 32 random hexadecimal characters
+	 */
+	public String open() {
+		String ticket = newTicket();
+		segmentFor(ticket).open(ticket, System.currentTimeMillis());
+		return ticket;
+	}
+
+	/**
+	 * Parks the reply to a send under its ticket, or hands it straight to the clients waiting for it. The
+	 * reply is discarded if its ticket has expired or been evicted.
+	 * @param ticket The ticket
+	 * @param status The HTTP status of the reply
+	 * @param mediaType The media type the reply was serialized to
+	 * @param body The serialized reply
+	 */
+	public void complete(final String ticket, final int status, final String mediaType, final byte[] body) {
+		boolean offHeap = offHeapThreshold > 0 && body != null && body.length >= offHeapThreshold;
+		ParkedReply reply = new ParkedReply(status, mediaType, body, offHeap);
+		for (Waiter waiter : segmentFor(ticket).complete(ticket, reply, System.currentTimeMillis())) {
+			waiter.fire(reply);
+		}
+	}
+
+	/**
+	 * Discards a ticket, e.g. because its send could not be dispatched.
+	 * @param ticket The ticket
+	 */
+	public void discard(final String ticket) {
+		segmentFor(ticket).discard(ticket);
+	}
+
+	/**
+	 * Retrieves the reply parked under a ticket, removing it from the store. If the reply has not arrived
+	 * yet, waits up to the given period for it ('reply_store.max_wait' at most). The handler is called once,
+	 * on the caller's context, with the reply, with {@link #PENDING} if the reply has still not arrived, or
+	 * with null if the ticket is unknown, has expired, or its reply has already been retrieved.
+	 * @param ticket The ticket
+	 * @param wait Period in milliseconds to wait for the reply, or 0 not to wait
+	 * @param vertx Vertx instance
+	 * @param handler Handler of the reply
+	 */
+	public void get(final String ticket, final long wait, final Vertx vertx, final Handler<ParkedReply> handler) {
+		final Segment segment = segmentFor(ticket);
+		long period = Math.min(wait, maxWait);
+		if (period <= 0) {
+			handler.handle(segment.take(ticket, System.currentTimeMillis(), null));
+			return;
+		}
+		final Waiter waiter = new Waiter(vertx, handler);
+		ParkedReply reply = segment.take(ticket, System.currentTimeMillis(), waiter);
+		if (reply != PENDING) {
+			handler.handle(reply);
+			return;
+		}
+		waiter.timerId = vertx.setTimer(period, new Handler<Long>() {
+			@Override
+			public void handle(final Long timerId) {
+				if (!waiter.done && segment.cancel(ticket, waiter)) {
+					waiter.done = true;
+					handler.handle(segment.contains(ticket) ? PENDING : null);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Gets the number of tickets held by the store, whether or not their reply has arrived.
+	 * @return number of tickets
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Gets the total size of the replies parked in the store.
+	 * @return size in bytes
+	 */
+	public long getBytes() {
+		long bytes = 0;
+		for (Segment segment : segments) {
+			bytes += segment.bytes();
+		}
+		return bytes;
+	}
+
+	private Segment segmentFor(final String ticket) {
+		int hash = ticket.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & segmentMask];
+	}
+
+	private static String newTicket() {
+		byte[] bytes = new byte[TICKET_BYTES];
+		RANDOMS.get().nextBytes(bytes);
+		char[] ticket = new char[TICKET_BYTES * 2];
+		for (int i = 0; i < TICKET_BYTES; i++) {
+			ticket[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			ticket[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(ticket);
+	}
+
+	/**
+	 * A client waiting for the reply to a ticket. It is called back on its own context, as the reply may
+	 * arrive on another event loop.
+	 */
+	private static final class Waiter {
+
+		private final Vertx vertx;
+		private final Context context;
+		private final Handler<ParkedReply> handler;
+		private boolean claimed;
+		private boolean done;
+		private long timerId;
+
+		private Waiter(final Vertx vertx, final Handler<ParkedReply> handler) {
+			this.vertx = vertx;
+			this.context = vertx.currentContext();
+			this.handler = handler;
+		}
+
+		private void fire(final ParkedReply reply) {
+			context.runOnContext(new Handler<Void>() {
+				@Override
+				public void handle(final Void event) {
+					if (!done) {
+						done = true;
+						vertx.cancelTimer(timerId);
+						handler.handle(reply);
+					}
+				}
+			});
+		}
+	}
+
+	private static final class Entry {
+
+		private final long openedAt;
+		private ParkedReply reply;
+		private List<Waiter> waiters;
+
+		private Entry(final long openedAt) {
+			this.openedAt = openedAt;
+		}
+	}
+
+	private static final class Segment {
+
+		private final int maxEntries;
+		private final long maxBytes;
+		private final long ttl;
+		private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>();
+		private long bytes;
+
+		private Segment(final int maxEntries, final long maxBytes, final long ttl) {
+			this.maxEntries = maxEntries;
+			this.maxBytes = maxBytes;
+			this.ttl = ttl;
+		}
+
+		private synchronized void open(final String ticket, final long now) {
+			expire(now);
+			while (entries.size() >= maxEntries && !entries.isEmpty()) {
+				removeEldest();
+			}
+			entries.put(ticket, new Entry(now));
+		}
+
+		private synchronized List<Waiter> complete(final String ticket, final ParkedReply reply, final long now) {
+			expire(now);
+			Entry entry = entries.get(ticket);
+			if (entry == null || entry.reply != null) {
+				return Collections.emptyList();
+			}
+			if (entry.waiters != null) {
+				entries.remove(ticket);
+				for (Waiter waiter : entry.waiters) {
+					waiter.claimed = true;
+				}
+				return entry.waiters;
+			}
+			entry.reply = reply;
+			bytes += reply.getSize();
+			while (bytes > maxBytes && !entries.isEmpty()) {
+				removeEldest();
+			}
+			return Collections.emptyList();
+		}
+
+		private synchronized ParkedReply take(final String ticket, final long now, final Waiter waiter) {
+			expire(now);
+			Entry entry = entries.get(ticket);
+			if (entry == null) {
+				return null;
+			} else if (entry.reply != null) {
+				entries.remove(ticket);
+				bytes -= entry.reply.getSize();
+				return entry.reply;
+			} else if (waiter != null) {
+				if (entry.waiters == null) {
+					entry.waiters = new ArrayList<Waiter>(1);
+				}
+				entry.waiters.add(waiter);
+			}
+			return PENDING;
+		}
+
+		/**
+		 * Stops a waiter from waiting.
+		 * @return false if the reply has already been handed to the waiter
+		 */
+		private synchronized boolean cancel(final String ticket, final Waiter waiter) {
+			if (waiter.claimed) {
+				return false;
+			}
+			Entry entry = entries.get(ticket);
+			if (entry != null && entry.waiters != null && entry.waiters.remove(waiter) && entry.waiters.isEmpty()) {
+				entry.waiters = null;
+			}
+			return true;
+		}
+
+		private synchronized void discard(final String ticket) {
+			Entry entry = entries.remove(ticket);
+			if (entry != null && entry.reply != null) {
+				bytes -= entry.reply.getSize();
+			}
+		}
+
+		private synchronized boolean contains(final String ticket) {
+			return entries.containsKey(ticket);
+		}
+
+		private synchronized int size() {
+			return entries.size();
+		}
+
+		private synchronized long bytes() {
+			return bytes;
+		}
+
+		private void expire(final long now) {
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+			while (iterator.hasNext()) {
+				Entry entry = iterator.next().getValue();
+				if (now - entry.openedAt < ttl) {
+					return;
+				}
+				iterator.remove();
+				if (entry.reply != null) {
+					bytes -= entry.reply.getSize();
+				}
+			}
+		}
+
+		private void removeEldest() {
+			Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+			Entry entry = iterator.next().getValue();
+			iterator.remove();
+			if (entry.reply != null) {
+				bytes -= entry.reply.getSize();
+			}
+		}
+	}
+}
@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.security;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of whitelist decisions (allowed or denied) per address.
+ *
+ * The cache is split into segments, each an access ordered map guarded by its own lock, so the least
+ * recently used address of a segment is evicted once the segment is full. Hits and misses are counted.
+ *
+ * @author j2ro
+ *
+ */
+public final class DecisionCache {
+
+	private static final int MAX_SEGMENTS = 16;
+	private static final int MIN_SEGMENT_SIZE = 16;
+
+	private final Segment[] segments;
+	private final int segmentMask;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a decision cache.
+	 * @param maxSize Maximum number of addresses held by the cache
+	 */
+	public DecisionCache(final int maxSize) {
+		if (maxSize <= 0) {
+			throw new IllegalArgumentException("Decision cache size must be positive: " + maxSize);
+		}
+		int segmentCount = 1;
+		while (segmentCount < MAX_SEGMENTS && segmentCount * 2 * MIN_SEGMENT_SIZE <= maxSize) {
+			segmentCount *= 2;
+		}
+		int segmentSize = (maxSize + segmentCount - 1) / segmentCount;
+		segments = new Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment(segmentSize);
+		}
+		segmentMask = segmentCount - 1;
+	}
+
+	/**
+	 * Gets the cached decision for an address.
+	 * @param address The address
+	 * @return the cached decision, or null if the address is not cached
+	 */
+	public Boolean get(final String address) {
+		Boolean decision = segmentFor(address).get(address);
+		if (decision != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return decision;
+	}
+
+	/**
+	 * Caches the decision for an address.
+	 * @param address The address
+	 * @param allowed Whether the address is allowed
+	 */
+	public void put(final String address, final boolean allowed) {
+		segmentFor(address).put(address, allowed);
+	}
+
+	/**
+	 * Gets the number of lookups that found a cached decision.
+	 * @return number of hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the number of lookups that did not find a cached decision.
+	 * @return number of misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the number of addresses currently cached.
+	 * @return number of cached addresses
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	private Segment segmentFor(final String address) {
+		int hash = address.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & segmentMask];
+	}
+
+	private static final class Segment {
+
+		private final Map<String, Boolean> decisions;
+
+		private Segment(final int maxSize) {
+			this.decisions = new LinkedHashMap<String, Boolean>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(final Map.Entry<String, Boolean> eldest) {
+					return size() > maxSize;
+				}
+			};
+		}
+
+		private synchronized Boolean get(final String address) {
+			return decisions.get(address);
+		}
+
+		private synchronized void put(final String address, final Boolean allowed) {
+			decisions.put(address, allowed);
+		}
+
+		private synchronized int size() {
+			return decisions.size();
+		}
+	}
+}
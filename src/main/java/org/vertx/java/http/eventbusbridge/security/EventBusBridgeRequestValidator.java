@@ -15,14 +15,20 @@
  */
 package org.vertx.java.http.eventbusbridge.security;
 
+import java.util.concurrent.atomic.AtomicReference;
+
 import javax.ws.rs.core.MediaType;
 
-import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 
 /**
  * Class provides utility methods for validating requests.
  *
+ * The inbound and outbound whitelists are compiled once, when the module starts, and shared by every
+ * verticle instance until it stops, so address validation neither re-reads the configuration nor
+ * recompiles its regexes on every request. A compiled whitelist in use is never replaced, so its decision
+ * cache is kept however many copies of the configuration the instances hold.
+ *
  * @author j2ro
  *
  */
@@ -30,8 +36,12 @@ public final class EventBusBridgeRequestValidator {
 
 	private static final String WHITELIST_CONFIG = "whitelist";
 	private static final String INBOUND_CONFIG = "inbound";
-	private static final String ADDRESS = "address";
-	private static final String ADDRESS_REGEX = "address_re";
+	private static final String OUTBOUND_CONFIG = "outbound";
+	private static final String DECISION_CACHE_SIZE = "decision_cache_size";
+	private static final int DEFAULT_DECISION_CACHE_SIZE = 0;
+
+	private static final AtomicReference<Whitelist> INBOUND_WHITELIST = new AtomicReference<Whitelist>();
+	private static final AtomicReference<Whitelist> OUTBOUND_WHITELIST = new AtomicReference<Whitelist>();
 
 	private EventBusBridgeRequestValidator() {
 	}
@@ -43,17 +53,18 @@ public final class EventBusBridgeRequestValidator {
 	 * @return true if address was found on the whitelist, otherwise false
 	 */
 	public static boolean validateIncomingAddress(final String address, final JsonObject config) {
-		JsonObject whitelist = config.getObject(WHITELIST_CONFIG);
-		JsonObject inboundWhitelist = whitelist.getObject(INBOUND_CONFIG);
-
-		if (checkAddresses(address, inboundWhitelist)) {
-			return true;
-		}
+		return getInboundWhitelist(config).allows(address);
+	}
 
-		if (checkAddressRegexes(address, inboundWhitelist)) {
-			return true;
-		}
-		return false;
+	/**
+	 * Method checks if messages sent to an address may be delivered to HTTP clients, i.e. if the address is
+	 * on the outbound whitelist.
+	 * @param address Address to check
+	 * @param config Configuration
+	 * @return true if address was found on the outbound whitelist, otherwise false
+	 */
+	public static boolean validateOutgoingAddress(final String address, final JsonObject config) {
+		return getOutboundWhitelist(config).allows(address);
 	}
 
 	/**
@@ -65,28 +76,48 @@ public final class EventBusBridgeRequestValidator {
 		return responseMediaType == null || MediaType.APPLICATION_JSON.equals(responseMediaType) || MediaType.APPLICATION_XML.equals(responseMediaType);
 	}
 
-	private static boolean checkAddresses(final String address, final JsonObject inboundWhitelist) {
-		JsonArray addresses = inboundWhitelist.getArray(ADDRESS);
-		if (addresses != null) {
-			for (Object object : addresses) {
-				if (address.equals(object)) {
-					return true;
-				}
-			}
-		}
-		return false;
+	/**
+	 * Gets the compiled inbound whitelist, compiling it from the configuration on first use.
+	 * @param config Configuration
+	 * @return the compiled inbound whitelist
+	 */
+	public static Whitelist getInboundWhitelist(final JsonObject config) {
+		return getWhitelist(INBOUND_WHITELIST, config, INBOUND_CONFIG);
 	}
 
-	private static boolean checkAddressRegexes(final String address, final JsonObject inboundWhitelist) {
-		JsonArray addressRegexes = inboundWhitelist.getArray(ADDRESS_REGEX);
-		if (addressRegexes != null) {
-			for (Object object : addressRegexes) {
-				String regex = (String) object;
-				if (address.matches(regex)) {
-					return true;
-				}
-			}
+	/**
+	 * Gets the compiled outbound whitelist, compiling it from the configuration on first use.
+	 * @param config Configuration
+	 * @return the compiled outbound whitelist
+	 */
+	public static Whitelist getOutboundWhitelist(final JsonObject config) {
+		return getWhitelist(OUTBOUND_WHITELIST, config, OUTBOUND_CONFIG);
+	}
+
+	/**
+	 * Discards the compiled whitelists, so the next calls compile them again.
+	 */
+	public static void clearWhitelists() {
+		INBOUND_WHITELIST.set(null);
+		OUTBOUND_WHITELIST.set(null);
+	}
+
+	private static Whitelist getWhitelist(final AtomicReference<Whitelist> current, final JsonObject config, final String direction) {
+		Whitelist whitelist = current.get();
+		if (whitelist == null) {
+			current.compareAndSet(null, Whitelist.compile(getWhitelistConfig(config, direction), getDecisionCacheSize(config)));
+			whitelist = current.get();
 		}
-		return false;
+		return whitelist;
+	}
+
+	private static int getDecisionCacheSize(final JsonObject config) {
+		JsonObject whitelist = config.getObject(WHITELIST_CONFIG);
+		return whitelist != null ? whitelist.getInteger(DECISION_CACHE_SIZE, DEFAULT_DECISION_CACHE_SIZE) : DEFAULT_DECISION_CACHE_SIZE;
+	}
+
+	private static JsonObject getWhitelistConfig(final JsonObject config, final String direction) {
+		JsonObject whitelist = config.getObject(WHITELIST_CONFIG);
+		return whitelist != null ? whitelist.getObject(direction) : null;
 	}
 }
@@ -0,0 +1,150 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.security;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+
+/**
+ * Compiled, immutable form of a whitelist configuration entry (e.g. 'whitelist.inbound').
+ *
+ * Exact addresses are held in a hash set and address regexes are compiled once, so checking an address
+ * never reads the configuration or compiles a regex. Decisions for addresses that are not exact matches
+ * can optionally be cached, which is discarded along with the whitelist when the whitelist changes.
+ *
+ * @author j2ro
+ *
+ */
+public final class Whitelist {
+
+	private static final String ADDRESS = "address";
+	private static final String ADDRESS_REGEX = "address_re";
+
+	private final Set<String> addresses;
+	private final Pattern[] addressPatterns;
+	private final DecisionCache decisionCache;
+
+	private Whitelist(final Set<String> addresses, final Pattern[] addressPatterns, final DecisionCache decisionCache) {
+		this.addresses = addresses;
+		this.addressPatterns = addressPatterns;
+		this.decisionCache = decisionCache;
+	}
+
+	/**
+	 * Compiles a whitelist from its configuration, without a decision cache.
+	 * @param whitelistConfig Whitelist configuration containing 'address' and 'address_re' arrays, may be null
+	 * @return compiled whitelist
+	 */
+	public static Whitelist compile(final JsonObject whitelistConfig) {
+		return compile(whitelistConfig, 0);
+	}
+
+	/**
+	 * Compiles a whitelist from its configuration.
+	 * @param whitelistConfig Whitelist configuration containing 'address' and 'address_re' arrays, may be null
+	 * @param decisionCacheSize Maximum number of address decisions to cache, or 0 to disable caching
+	 * @return compiled whitelist
+	 */
+	public static Whitelist compile(final JsonObject whitelistConfig, final int decisionCacheSize) {
+		return compile(whitelistConfig, ADDRESS, ADDRESS_REGEX, decisionCacheSize);
+	}
+
+	/**
+	 * Compiles a whitelist of values other than addresses (e.g. urls) from its configuration.
+	 * @param whitelistConfig Whitelist configuration, may be null
+	 * @param valueField Name of the array of exact values
+	 * @param regexField Name of the array of regexes
+	 * @param decisionCacheSize Maximum number of decisions to cache, or 0 to disable caching
+	 * @return compiled whitelist
+	 */
+	public static Whitelist compile(final JsonObject whitelistConfig, final String valueField, final String regexField,
+			                        final int decisionCacheSize) {
+		Set<String> addresses = new HashSet<String>();
+		List<Pattern> addressPatterns = new ArrayList<Pattern>();
+		if (whitelistConfig != null) {
+			JsonArray addressArray = whitelistConfig.getArray(valueField);
+			if (addressArray != null) {
+				for (Object address : addressArray) {
+					addresses.add((String) address);
+				}
+			}
+			JsonArray addressRegexArray = whitelistConfig.getArray(regexField);
+			if (addressRegexArray != null) {
+				for (Object addressRegex : addressRegexArray) {
+					addressPatterns.add(Pattern.compile((String) addressRegex));
+				}
+			}
+		}
+		DecisionCache decisionCache = decisionCacheSize > 0 && !addressPatterns.isEmpty() ? new DecisionCache(decisionCacheSize) : null;
+		return new Whitelist(Collections.unmodifiableSet(addresses), addressPatterns.toArray(new Pattern[addressPatterns.size()]),
+				             decisionCache);
+	}
+
+	/**
+	 * Checks whether an address is on the whitelist, either as an exact address or by matching one of the
+	 * address regexes in full.
+	 * @param address Address to check
+	 * @return true if address was found on the whitelist, otherwise false
+	 */
+	public boolean allows(final String address) {
+		if (address == null) {
+			return false;
+		} else if (addresses.contains(address)) {
+			return true;
+		} else if (decisionCache == null) {
+			return matchesAddressPattern(address);
+		}
+		Boolean decision = decisionCache.get(address);
+		if (decision == null) {
+			decision = matchesAddressPattern(address);
+			decisionCache.put(address, decision);
+		}
+		return decision;
+	}
+
+	/**
+	 * Gets the decision cache.
+	 * @return the decision cache, or null if decisions are not cached
+	 */
+	public DecisionCache getDecisionCache() {
+		return decisionCache;
+	}
+
+	private boolean matchesAddressPattern(final String address) {
+		for (Pattern addressPattern : addressPatterns) {
+			if (addressPattern.matcher(address).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "addresses: " + addresses + '\n'
+				+ "address_res: " + addressPatterns.length;
+	}
+}
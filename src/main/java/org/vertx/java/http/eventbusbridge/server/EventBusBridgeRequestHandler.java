@@ -0,0 +1,326 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.server;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.xml.bind.JAXBException;
+
+import org.apache.log4j.Logger;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.metrics.PrometheusWriter;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeRequest;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeTicket;
+import org.vertx.java.http.eventbusbridge.model.EventBusInstruction;
+import org.vertx.java.http.eventbusbridge.reply.ParkedReply;
+import org.vertx.java.http.eventbusbridge.reply.ReplyStore;
+import org.vertx.java.http.eventbusbridge.service.EventBusBridgeDispatcher;
+import org.vertx.java.http.eventbusbridge.subscription.SubscriptionRegistry;
+import org.vertx.java.http.eventbusbridge.util.SerializationHelper;
+
+/**
+ * Handles HTTP requests made directly to a Vert.x HttpServer, serving the same send and publish contract as
+ * the Jersey service without going through Jersey.
+ *
+ * Requests are routed on the path alone: 'POST {base_path}eventbus/send' and 'POST {base_path}eventbus/publish',
+ * plus the streaming ingest endpoint 'POST {base_path}eventbus/stream', the server-sent events endpoint
+ * 'GET {base_path}eventbus/subscribe/{address}', the reply ticket endpoint 'GET {base_path}eventbus/reply/{ticket}'
+ * and the metrics endpoints 'GET {base_path}eventbus/metrics' and 'GET {base_path}eventbus/metrics/prometheus'.
+ * The body is read in full, up to 'max_body_size' bytes, deserialised according to its Content-Type, then
+ * validated and dispatched exactly as the Jersey service would. A larger body is refused with 413 (Request
+ * Entity Too Large) and its connection closed. Errors are reported using the status and headers of the
+ * WebApplicationException raised.
+ *
+ * @author j2ro
+ *
+ */
+public final class EventBusBridgeRequestHandler implements Handler<HttpServerRequest> {
+
+	private static final Logger LOGGER = Logger.getLogger(EventBusBridgeRequestHandler.class);
+
+	private static final String BASE_PATH = "base_path";
+	private static final String DEFAULT_BASE_PATH = "/";
+	private static final String EVENT_BUS_PATH = "eventbus/";
+	private static final String STREAM_PATH = "stream";
+	private static final String METRICS_PATH = "metrics";
+	private static final String PROMETHEUS_METRICS_PATH = "metrics/prometheus";
+	private static final String SUBSCRIBE_PATH = "subscribe/";
+	private static final String REPLY_PATH = "reply/";
+	private static final String WAIT_PARAM = "wait";
+	private static final String MAX_BODY_SIZE = "max_body_size";
+	private static final int DEFAULT_MAX_BODY_SIZE = 1024 * 1000;
+	private static final String POST = "POST";
+	private static final String GET = "GET";
+
+	private final Vertx vertx;
+	private final JsonObject config;
+	private final String eventBusPath;
+	private final int maxBodySize;
+
+	/**
+	 * Creates new instance of EventBusBridgeRequestHandler.
+	 * @param vertx Vertx instance
+	 * @param config Configuration
+	 */
+	public EventBusBridgeRequestHandler(final Vertx vertx, final JsonObject config) {
+		this.vertx = vertx;
+		this.config = config;
+		String basePath = config.getString(BASE_PATH, DEFAULT_BASE_PATH);
+		this.eventBusPath = (basePath.endsWith("/") ? basePath : basePath + '/') + EVENT_BUS_PATH;
+		this.maxBodySize = config.getInteger(MAX_BODY_SIZE, DEFAULT_MAX_BODY_SIZE);
+	}
+
+	/**
+	 * Handle the HTTP request.
+	 *
+	 * @param request The request
+	 */
+	@Override
+	public void handle(final HttpServerRequest request) {
+		if ((eventBusPath + STREAM_PATH).equals(request.path())) {
+			stream(request);
+			return;
+		} else if ((eventBusPath + METRICS_PATH).equals(request.path())) {
+			metrics(request);
+			return;
+		} else if ((eventBusPath + PROMETHEUS_METRICS_PATH).equals(request.path())) {
+			prometheusMetrics(request);
+			return;
+		} else if (request.path() != null && request.path().startsWith(eventBusPath + SUBSCRIBE_PATH)) {
+			subscribe(request, request.path().substring(eventBusPath.length() + SUBSCRIBE_PATH.length()));
+			return;
+		} else if (request.path() != null && request.path().startsWith(eventBusPath + REPLY_PATH)) {
+			reply(request, request.path().substring(eventBusPath.length() + REPLY_PATH.length()));
+			return;
+		}
+		final EventBusInstruction instruction = route(request.path());
+		if (instruction == null) {
+			end(request, Response.Status.NOT_FOUND.getStatusCode());
+		} else if (!POST.equals(request.method())) {
+			end(request, Response.Status.METHOD_NOT_ALLOWED.getStatusCode());
+		} else {
+			final BodyReader bodyReader = new BodyReader(request, maxBodySize);
+			request.dataHandler(bodyReader);
+			request.endHandler(new Handler<Void>() {
+				@Override
+				public void handle(final Void event) {
+					if (!bodyReader.isTooLarge()) {
+						forward(request, instruction, bodyReader.getBody());
+					}
+				}
+			});
+		}
+	}
+
+	private void stream(final HttpServerRequest request) {
+		String mediaType = mediaTypeOf(request.headers().get(HttpHeaders.CONTENT_TYPE));
+		if (!POST.equals(request.method())) {
+			end(request, Response.Status.METHOD_NOT_ALLOWED.getStatusCode());
+		} else if (!EventBusBridgeStreamHandler.NDJSON.equals(mediaType) && !MediaType.APPLICATION_JSON.equals(mediaType)) {
+			end(request, Response.Status.UNSUPPORTED_MEDIA_TYPE.getStatusCode());
+		} else {
+			new EventBusBridgeStreamHandler(request, vertx, config).start();
+		}
+	}
+
+	private void subscribe(final HttpServerRequest request, final String encodedAddress) {
+		if (!GET.equals(request.method())) {
+			end(request, Response.Status.METHOD_NOT_ALLOWED.getStatusCode());
+			return;
+		}
+		String address;
+		try {
+			address = URLDecoder.decode(encodedAddress.replace("+", "%2B"), StandardCharsets.UTF_8.name());
+		} catch (UnsupportedEncodingException | IllegalArgumentException e) {
+			end(request, Response.Status.BAD_REQUEST.getStatusCode());
+			return;
+		}
+		if (address.isEmpty()) {
+			end(request, Response.Status.NOT_FOUND.getStatusCode());
+			return;
+		}
+		try {
+			EventBusBridgeDispatcher.validateSubscription(address, config);
+		} catch (WebApplicationException e) {
+			end(request, e.getResponse().getStatus());
+			return;
+		}
+		new EventBusBridgeSubscriptionHandler(request.response(), address, SubscriptionRegistry.get(vertx, config), config).start();
+	}
+
+	private void reply(final HttpServerRequest request, final String ticket) {
+		if (!GET.equals(request.method())) {
+			end(request, Response.Status.METHOD_NOT_ALLOWED.getStatusCode());
+			return;
+		}
+		long wait;
+		try {
+			String waitParam = request.params().get(WAIT_PARAM);
+			wait = waitParam != null ? Long.parseLong(waitParam) : 0;
+		} catch (NumberFormatException e) {
+			end(request, Response.Status.BAD_REQUEST.getStatusCode());
+			return;
+		}
+		ReplyStore.get(config).get(ticket, wait, vertx, new Handler<ParkedReply>() {
+			@Override
+			public void handle(final ParkedReply reply) {
+				if (reply == null) {
+					end(request, Response.Status.NOT_FOUND.getStatusCode());
+				} else if (reply == ReplyStore.PENDING) {
+					end(request, Response.Status.ACCEPTED.getStatusCode());
+				} else if (reply.getSize() == 0) {
+					end(request, reply.getStatus());
+				} else {
+					request.response().setStatusCode(reply.getStatus());
+					request.response().putHeader(HttpHeaders.CONTENT_TYPE, reply.getMediaType());
+					request.response().end(new Buffer(reply.getBody()));
+				}
+			}
+		});
+	}
+
+	private void metrics(final HttpServerRequest request) {
+		if (!GET.equals(request.method())) {
+			end(request, Response.Status.METHOD_NOT_ALLOWED.getStatusCode());
+			return;
+		}
+		request.response().putHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON);
+		request.response().end(EventBusBridgeDispatcher.metrics(config).encode());
+	}
+
+	private void prometheusMetrics(final HttpServerRequest request) {
+		if (!GET.equals(request.method())) {
+			end(request, Response.Status.METHOD_NOT_ALLOWED.getStatusCode());
+			return;
+		}
+		request.response().putHeader(HttpHeaders.CONTENT_TYPE, PrometheusWriter.CONTENT_TYPE);
+		request.response().end(EventBusBridgeDispatcher.prometheusMetrics(config));
+	}
+
+	private EventBusInstruction route(final String path) {
+		if (path == null || !path.startsWith(eventBusPath)) {
+			return null;
+		}
+		String instruction = path.substring(eventBusPath.length());
+		if (EventBusInstruction.send.name().equals(instruction)) {
+			return EventBusInstruction.send;
+		} else if (EventBusInstruction.publish.name().equals(instruction)) {
+			return EventBusInstruction.publish;
+		}
+		return null;
+	}
+
+	private void forward(final HttpServerRequest request, final EventBusInstruction instruction, final Buffer body) {
+		String mediaType = mediaTypeOf(request.headers().get(HttpHeaders.CONTENT_TYPE));
+		if (!MediaType.APPLICATION_JSON.equals(mediaType) && !MediaType.APPLICATION_XML.equals(mediaType)) {
+			end(request, Response.Status.UNSUPPORTED_MEDIA_TYPE.getStatusCode());
+			return;
+		}
+		try {
+			EventBusBridgeRequest bridgeRequest = SerializationHelper.deserialize(body.getBytes(), mediaType, EventBusBridgeRequest.class);
+			EventBusBridgeDispatcher.readHeaders(bridgeRequest, request);
+			EventBusBridgeDispatcher.validateRequest(bridgeRequest, config);
+			EventBusBridgeDispatcher.throttle(bridgeRequest, EventBusBridgeDispatcher.identifyClient(request, config), config);
+			String ticket = EventBusBridgeDispatcher.dispatch(bridgeRequest, instruction, vertx, config);
+			if (ticket == null) {
+				end(request, Response.Status.ACCEPTED.getStatusCode());
+				return;
+			}
+			String responseMediaType = EventBusBridgeDispatcher.getResponseMediaType(bridgeRequest);
+			Buffer ticketBody = SerializationHelper.serializeToBuffer(new EventBusBridgeTicket(ticket), responseMediaType,
+					                                                  EventBusBridgeDispatcher.isCompactResponses(config));
+			request.response().setStatusCode(Response.Status.ACCEPTED.getStatusCode());
+			request.response().putHeader(HttpHeaders.CONTENT_TYPE, responseMediaType);
+			request.response().putHeader(HttpHeaders.LOCATION, eventBusPath + REPLY_PATH + ticket);
+			request.response().end(ticketBody);
+		} catch (WebApplicationException e) {
+			for (Map.Entry<String, List<String>> header : e.getResponse().getStringHeaders().entrySet()) {
+				request.response().headers().add(header.getKey(), header.getValue());
+			}
+			end(request, e.getResponse().getStatus());
+		} catch (IOException | JAXBException e) {
+			LOGGER.debug("Unable to read request body", e);
+			end(request, Response.Status.BAD_REQUEST.getStatusCode());
+		} catch (RuntimeException e) {
+			LOGGER.error("Unable to forward request", e);
+			end(request, Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
+		}
+	}
+
+	private static String mediaTypeOf(final String contentType) {
+		if (contentType == null) {
+			return null;
+		}
+		int parameters = contentType.indexOf(';');
+		return (parameters != -1 ? contentType.substring(0, parameters) : contentType).trim().toLowerCase();
+	}
+
+	private static void end(final HttpServerRequest request, final int status) {
+		request.response().setStatusCode(status);
+		request.response().end();
+	}
+
+	/**
+	 * Accumulates the body of a request, refusing the request with 413 (Request Entity Too Large) and closing
+	 * its connection as soon as the body exceeds the maximum size.
+	 */
+	private static final class BodyReader implements Handler<Buffer> {
+
+		private final HttpServerRequest request;
+		private final int maxBodySize;
+		private final Buffer body = new Buffer();
+		private boolean tooLarge;
+
+		private BodyReader(final HttpServerRequest request, final int maxBodySize) {
+			this.request = request;
+			this.maxBodySize = maxBodySize;
+		}
+
+		@Override
+		public void handle(final Buffer data) {
+			if (tooLarge) {
+				return;
+			} else if (body.length() + data.length() > maxBodySize) {
+				tooLarge = true;
+				end(request, Response.Status.REQUEST_ENTITY_TOO_LARGE.getStatusCode());
+				request.response().close();
+				return;
+			}
+			body.appendBuffer(data);
+		}
+
+		private boolean isTooLarge() {
+			return tooLarge;
+		}
+
+		private Buffer getBody() {
+			return body;
+		}
+	}
+}
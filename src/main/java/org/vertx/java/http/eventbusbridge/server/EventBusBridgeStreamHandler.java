@@ -0,0 +1,206 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.server;
+
+import java.io.IOException;
+
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.xml.bind.JAXBException;
+
+import org.apache.log4j.Logger;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.parsetools.RecordParser;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeBatchStatus;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeRequest;
+import org.vertx.java.http.eventbusbridge.service.EventBusBridgeDispatcher;
+import org.vertx.java.http.eventbusbridge.util.SerializationHelper;
+
+/**
+ * Handles a single streaming ingest request, whose body is newline delimited JSON requests.
+ *
+ * Each line is dispatched as soon as it has been read, and its status is streamed back straight away as a
+ * line of the chunked response, so a producer can keep one connection open for any number of requests.
+ * Reading is paused while the connection is not keeping up with the acknowledgements. A line longer than
+ * 'stream.max_line_length' bytes fails the stream: its status is written as the last line of the response,
+ * and the connection is closed.
+ *
+ * @author j2ro
+ *
+ */
+final class EventBusBridgeStreamHandler implements Handler<Buffer> {
+
+	/** Media type of newline delimited JSON. */
+	static final String NDJSON = "application/x-ndjson";
+
+	private static final Logger LOGGER = Logger.getLogger(EventBusBridgeStreamHandler.class);
+
+	private static final String LINE_DELIMITER = "\n";
+	private static final String STREAM_CONFIG = "stream";
+	private static final String MAX_LINE_LENGTH = "max_line_length";
+	private static final int DEFAULT_MAX_LINE_LENGTH = 1024 * 1000;
+
+	private final HttpServerRequest request;
+	private final HttpServerResponse response;
+	private final Vertx vertx;
+	private final JsonObject config;
+	private final String client;
+	private final int maxLineLength;
+	private int index;
+	private boolean closed;
+
+	/**
+	 * Creates new instance of EventBusBridgeStreamHandler.
+	 * @param request The streaming request
+	 * @param vertx Vertx instance
+	 * @param config Configuration
+	 */
+	EventBusBridgeStreamHandler(final HttpServerRequest request, final Vertx vertx, final JsonObject config) {
+		this.request = request;
+		this.response = request.response();
+		this.vertx = vertx;
+		this.config = config;
+		this.client = EventBusBridgeDispatcher.identifyClient(request, config);
+		JsonObject streamConfig = config.getObject(STREAM_CONFIG, new JsonObject());
+		this.maxLineLength = streamConfig.getInteger(MAX_LINE_LENGTH, DEFAULT_MAX_LINE_LENGTH);
+	}
+
+	/**
+	 * Starts reading the request body and streaming the acknowledgements back.
+	 */
+	void start() {
+		response.setChunked(true);
+		response.putHeader(HttpHeaders.CONTENT_TYPE, NDJSON);
+		request.dataHandler(new LineLengthLimiter(RecordParser.newDelimited(LINE_DELIMITER, this)));
+		request.exceptionHandler(new Handler<Throwable>() {
+			@Override
+			public void handle(final Throwable cause) {
+				LOGGER.warn("Streaming ingest connection failed after " + index + " requests", cause);
+				if (!closed) {
+					closed = true;
+					response.close();
+				}
+			}
+		});
+		request.endHandler(new Handler<Void>() {
+			@Override
+			public void handle(final Void event) {
+				if (!closed) {
+					closed = true;
+					response.end();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Handle a single line of the request body.
+	 *
+	 * @param line The line, without its delimiter
+	 */
+	@Override
+	public void handle(final Buffer line) {
+		byte[] bytes = line.getBytes();
+		if (closed || isBlank(bytes)) {
+			return;
+		}
+		EventBusBridgeBatchStatus status;
+		try {
+			EventBusBridgeRequest bridgeRequest = SerializationHelper.deserialize(bytes, MediaType.APPLICATION_JSON, EventBusBridgeRequest.class);
+			status = EventBusBridgeDispatcher.forwardItem(index, bridgeRequest, client, vertx, config);
+		} catch (IOException | JAXBException e) {
+			status = new EventBusBridgeBatchStatus(index, null, Response.Status.BAD_REQUEST.getStatusCode(), e.getMessage());
+		}
+		index++;
+		acknowledge(status);
+	}
+
+	private void acknowledge(final EventBusBridgeBatchStatus status) {
+		try {
+			response.write(SerializationHelper.serializeToBuffer(status, MediaType.APPLICATION_JSON, true).appendString(LINE_DELIMITER));
+		} catch (IOException | JAXBException e) {
+			LOGGER.error("Unable to serialize acknowledgement " + status.getIndex(), e);
+			return;
+		}
+		if (response.writeQueueFull()) {
+			request.pause();
+			response.drainHandler(new Handler<Void>() {
+				@Override
+				public void handle(final Void event) {
+					request.resume();
+				}
+			});
+		}
+	}
+
+	private void failLineTooLong() {
+		closed = true;
+		acknowledge(new EventBusBridgeBatchStatus(index, null, Response.Status.REQUEST_ENTITY_TOO_LARGE.getStatusCode(),
+				                                  "Line longer than " + maxLineLength + " bytes"));
+		response.end();
+		response.close();
+	}
+
+	private static boolean isBlank(final byte[] bytes) {
+		for (byte b : bytes) {
+			if (!Character.isWhitespace(b)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Passes the request body on to the line parser, counting the bytes read since the last delimiter so a
+	 * line that never ends cannot grow the parser's buffer without bound.
+	 */
+	private final class LineLengthLimiter implements Handler<Buffer> {
+
+		private final Handler<Buffer> parser;
+		private int lineLength;
+
+		private LineLengthLimiter(final Handler<Buffer> parser) {
+			this.parser = parser;
+		}
+
+		@Override
+		public void handle(final Buffer data) {
+			if (closed) {
+				return;
+			}
+			int lastDelimiter = -1;
+			for (int i = 0; i < data.length(); i++) {
+				if (data.getByte(i) == '\n') {
+					lineLength = 0;
+					lastDelimiter = i;
+				} else if (++lineLength > maxLineLength) {
+					if (lastDelimiter >= 0) {
+						parser.handle(data.getBuffer(0, lastDelimiter + 1));
+					}
+					failLineTooLong();
+					return;
+				}
+			}
+			parser.handle(data);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.core.HttpHeaders;
+
+import org.apache.log4j.Logger;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.http.HttpServerResponse;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.subscription.OutboundMessage;
+import org.vertx.java.http.eventbusbridge.subscription.Subscriber;
+import org.vertx.java.http.eventbusbridge.subscription.SubscriptionRegistry;
+
+/**
+ * Streams the messages received on an address to a single HTTP client as server-sent events.
+ *
+ * Events are written through an {@link OutboundBuffer}, so a client that is not keeping up has its oldest
+ * events dropped or, if so configured, is disconnected.
+ *
+ * @author j2ro
+ *
+ */
+final class EventBusBridgeSubscriptionHandler implements Subscriber {
+
+	/** Media type of server-sent events. */
+	static final String EVENT_STREAM = "text/event-stream";
+
+	private static final Logger LOGGER = Logger.getLogger(EventBusBridgeSubscriptionHandler.class);
+
+	private static final String CACHE_CONTROL = "Cache-Control";
+	private static final String NO_CACHE = "no-cache";
+	private static final byte[] SUBSCRIBED = ": subscribed\n\n".getBytes(StandardCharsets.UTF_8);
+
+	private final HttpServerResponse response;
+	private final String address;
+	private final SubscriptionRegistry registry;
+	private final OutboundBuffer buffer;
+	private boolean closed;
+
+	/**
+	 * Creates new instance of EventBusBridgeSubscriptionHandler.
+	 * @param response Response the events are streamed to
+	 * @param address The address, already checked against the outbound whitelist
+	 * @param registry The subscription registry of the connection's event loop
+	 * @param config Configuration
+	 */
+	EventBusBridgeSubscriptionHandler(final HttpServerResponse response, final String address, final SubscriptionRegistry registry,
+			                          final JsonObject config) {
+		this.response = response;
+		this.address = address;
+		this.registry = registry;
+		this.buffer = new OutboundBuffer(response, config);
+	}
+
+	/**
+	 * Sends the response headers and subscribes to the address.
+	 */
+	void start() {
+		response.setChunked(true);
+		response.putHeader(HttpHeaders.CONTENT_TYPE, EVENT_STREAM);
+		response.putHeader(CACHE_CONTROL, NO_CACHE);
+		response.closeHandler(new Handler<Void>() {
+			@Override
+			public void handle(final Void event) {
+				close();
+			}
+		});
+		response.drainHandler(new Handler<Void>() {
+			@Override
+			public void handle(final Void event) {
+				if (!closed) {
+					buffer.drain();
+				}
+			}
+		});
+		registry.subscribe(address, this);
+		response.write(new Buffer(SUBSCRIBED));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void deliver(final OutboundMessage message) {
+		if (closed) {
+			return;
+		}
+		try {
+			if (!buffer.write(message.getSseEvent())) {
+				LOGGER.info("Disconnecting slow subscriber of " + address);
+				close();
+				response.close();
+			}
+		} catch (IOException e) {
+			LOGGER.error("Unable to serialize message received on " + address, e);
+		}
+	}
+
+	private void close() {
+		if (!closed) {
+			closed = true;
+			buffer.clear();
+			registry.unsubscribe(address, this);
+			if (buffer.getDropped() > 0) {
+				LOGGER.debug("Subscriber of " + address + " dropped " + buffer.getDropped() + " messages");
+			}
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+
+import org.apache.log4j.Logger;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.http.ServerWebSocket;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeFrame;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeFrameType;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeRequest;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeResponse;
+import org.vertx.java.http.eventbusbridge.model.EventBusInstruction;
+import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
+import org.vertx.java.http.eventbusbridge.model.NoOpResponseHandler;
+import org.vertx.java.http.eventbusbridge.model.SyncResponseHandler;
+import org.vertx.java.http.eventbusbridge.service.EventBusBridgeDispatcher;
+import org.vertx.java.http.eventbusbridge.subscription.OutboundMessage;
+import org.vertx.java.http.eventbusbridge.subscription.Subscriber;
+import org.vertx.java.http.eventbusbridge.subscription.SubscriptionRegistry;
+import org.vertx.java.http.eventbusbridge.util.EventBusBridgeFrameCodec;
+import org.vertx.java.http.eventbusbridge.util.EventBusBridgeResponseFactory;
+
+/**
+ * Handles a single WebSocket connection, over which the client sends, publishes and subscribes using the
+ * binary frames described by {@link EventBusBridgeFrameCodec}.
+ *
+ * Sends and publishes go through the same validation, rate limits and admission control as HTTP requests.
+ * The reply to a send whose frame has a non-zero id is returned as a reply frame with the same id, and any
+ * failure as an error frame whose message is the HTTP status the request would have received, followed by
+ * its cause. Messages received on subscribed addresses share the event loop's single registration of each
+ * address, and are written through an {@link OutboundBuffer}; reading from the client is paused while that
+ * buffer is holding data.
+ *
+ * @author j2ro
+ *
+ */
+final class EventBusBridgeWebSocketConnection implements Handler<Buffer>, Subscriber {
+
+	private static final Logger LOGGER = Logger.getLogger(EventBusBridgeWebSocketConnection.class);
+
+	private static final NoOpResponseHandler NOOP_RESPONSE_HANDLER = new NoOpResponseHandler();
+
+	private final ServerWebSocket socket;
+	private final Vertx vertx;
+	private final JsonObject config;
+	private final SubscriptionRegistry registry;
+	private final OutboundBuffer buffer;
+	private final String client;
+	private final Set<String> subscriptions = new HashSet<String>();
+	private boolean closed;
+
+	/**
+	 * Creates new instance of EventBusBridgeWebSocketConnection.
+	 * @param socket The WebSocket
+	 * @param vertx Vertx instance
+	 * @param config Configuration
+	 * @param registry The subscription registry of the connection's event loop
+	 */
+	EventBusBridgeWebSocketConnection(final ServerWebSocket socket, final Vertx vertx, final JsonObject config,
+			                          final SubscriptionRegistry registry) {
+		this.socket = socket;
+		this.vertx = vertx;
+		this.config = config;
+		this.registry = registry;
+		this.buffer = new OutboundBuffer(socket, config);
+		this.client = EventBusBridgeDispatcher.identifyClient(socket, config);
+	}
+
+	/**
+	 * Starts reading frames from the client.
+	 */
+	void start() {
+		socket.dataHandler(this);
+		socket.drainHandler(new Handler<Void>() {
+			@Override
+			public void handle(final Void event) {
+				if (!closed) {
+					buffer.drain();
+					if (!buffer.isBuffering()) {
+						socket.resume();
+					}
+				}
+			}
+		});
+		socket.closeHandler(new Handler<Void>() {
+			@Override
+			public void handle(final Void event) {
+				close();
+			}
+		});
+		socket.exceptionHandler(new Handler<Throwable>() {
+			@Override
+			public void handle(final Throwable cause) {
+				LOGGER.warn("WebSocket connection failed", cause);
+			}
+		});
+	}
+
+	/**
+	 * Handle a frame sent by the client.
+	 *
+	 * @param data The binary data of the frame
+	 */
+	@Override
+	public void handle(final Buffer data) {
+		EventBusBridgeFrame frame;
+		try {
+			frame = EventBusBridgeFrameCodec.decode(data);
+		} catch (IllegalArgumentException e) {
+			error(0, null, Response.Status.BAD_REQUEST.getStatusCode(), e.getMessage());
+			return;
+		}
+		switch (frame.getType()) {
+			case send:
+				forward(frame, EventBusInstruction.send);
+				break;
+			case publish:
+				forward(frame, EventBusInstruction.publish);
+				break;
+			case subscribe:
+				subscribe(frame);
+				break;
+			case unsubscribe:
+				unsubscribe(frame);
+				break;
+			default:
+				error(frame.getId(), frame.getAddress(), Response.Status.BAD_REQUEST.getStatusCode(),
+					  "Illegal frame type sent by client: " + frame.getType());
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void deliver(final OutboundMessage message) {
+		write(message.getWebSocketFrame());
+	}
+
+	private void forward(final EventBusBridgeFrame frame, final EventBusInstruction instruction) {
+		String address = frame.getAddress();
+		if (address == null || frame.getEventBusMessageType() == null) {
+			error(frame.getId(), address, Response.Status.BAD_REQUEST.getStatusCode(), "Frame must contain an address, message and messageType");
+			return;
+		}
+		EventBusBridgeRequest request = new EventBusBridgeRequest();
+		request.setAddress(address);
+		request.setMessage(frame.getMessage());
+		request.setEventBusMessageType(frame.getEventBusMessageType());
+		try {
+			EventBusBridgeDispatcher.validateRequest(request, config);
+			EventBusBridgeDispatcher.throttle(request, client, config);
+			Handler<AsyncResult<Message<Object>>> responseHandler = frame.getId() != 0 ? new ReplyHandler(frame.getId(), address)
+					                                                                   : NOOP_RESPONSE_HANDLER;
+			EventBusBridgeDispatcher.dispatch(request, instruction, responseHandler, vertx, config);
+			if (instruction == EventBusInstruction.publish && frame.getId() != 0) {
+				acknowledge(frame);
+			}
+		} catch (WebApplicationException e) {
+			error(frame.getId(), address, e.getResponse().getStatus(), causeOf(e));
+		} catch (RuntimeException e) {
+			LOGGER.debug("Unable to forward frame", e);
+			error(frame.getId(), address, Response.Status.BAD_REQUEST.getStatusCode(), e.getMessage());
+		}
+	}
+
+	private void subscribe(final EventBusBridgeFrame frame) {
+		String address = frame.getAddress();
+		try {
+			EventBusBridgeDispatcher.validateSubscription(address, config);
+		} catch (WebApplicationException e) {
+			error(frame.getId(), address, e.getResponse().getStatus(), causeOf(e));
+			return;
+		}
+		if (subscriptions.add(address)) {
+			registry.subscribe(address, this);
+		}
+		acknowledge(frame);
+	}
+
+	private void unsubscribe(final EventBusBridgeFrame frame) {
+		if (subscriptions.remove(frame.getAddress())) {
+			registry.unsubscribe(frame.getAddress(), this);
+		}
+		acknowledge(frame);
+	}
+
+	private void acknowledge(final EventBusBridgeFrame frame) {
+		if (frame.getId() != 0) {
+			write(EventBusBridgeFrameCodec.encode(EventBusBridgeFrameType.reply, frame.getId(), frame.getAddress(), null, null));
+		}
+	}
+
+	private void error(final int id, final String address, final int status, final String cause) {
+		String message = cause != null ? status + " " + cause : String.valueOf(status);
+		write(EventBusBridgeFrameCodec.encode(EventBusBridgeFrameType.error, id, address, EventBusMessageType.String,
+				                              message.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private void write(final byte[] frame) {
+		if (closed) {
+			return;
+		}
+		if (!buffer.write(frame)) {
+			LOGGER.info("Disconnecting slow WebSocket client " + client);
+			close();
+			socket.close();
+		} else if (buffer.isBuffering()) {
+			socket.pause();
+		}
+	}
+
+	private void close() {
+		if (!closed) {
+			closed = true;
+			buffer.clear();
+			for (String address : subscriptions) {
+				registry.unsubscribe(address, this);
+			}
+			subscriptions.clear();
+		}
+	}
+
+	private static String causeOf(final WebApplicationException exception) {
+		Object entity = exception.getResponse().getEntity();
+		return entity instanceof String ? (String) entity : exception.getMessage();
+	}
+
+	/**
+	 * Returns the reply to a send to the client, as a reply frame or, if the send failed, an error frame.
+	 */
+	private final class ReplyHandler implements Handler<AsyncResult<Message<Object>>> {
+
+		private final int id;
+		private final String address;
+
+		private ReplyHandler(final int id, final String address) {
+			this.id = id;
+			this.address = address;
+		}
+
+		@Override
+		public void handle(final AsyncResult<Message<Object>> event) {
+			EventBusBridgeResponse response = EventBusBridgeResponseFactory.createResponse(address, event);
+			if (response.isSuccessful()) {
+				write(EventBusBridgeFrameCodec.encode(EventBusBridgeFrameType.reply, id, address, response.getEventBusMessageType(),
+						                              response.getResponseMessage()));
+			} else {
+				error(id, address, SyncResponseHandler.statusOf(event).getStatusCode(), response.getCause());
+			}
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.server;
+
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.ServerWebSocket;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.subscription.SubscriptionRegistry;
+
+/**
+ * Accepts WebSocket connections made to '{base_path}eventbus/websocket', over which a client can send,
+ * publish and subscribe to any number of addresses. Connections to any other path are rejected.
+ *
+ * @author j2ro
+ *
+ */
+public final class EventBusBridgeWebSocketHandler implements Handler<ServerWebSocket> {
+
+	private static final String BASE_PATH = "base_path";
+	private static final String DEFAULT_BASE_PATH = "/";
+	private static final String WEBSOCKET_PATH = "eventbus/websocket";
+
+	private final Vertx vertx;
+	private final JsonObject config;
+	private final String webSocketPath;
+
+	/**
+	 * Creates new instance of EventBusBridgeWebSocketHandler.
+	 * @param vertx Vertx instance
+	 * @param config Configuration
+	 */
+	public EventBusBridgeWebSocketHandler(final Vertx vertx, final JsonObject config) {
+		this.vertx = vertx;
+		this.config = config;
+		String basePath = config.getString(BASE_PATH, DEFAULT_BASE_PATH);
+		this.webSocketPath = (basePath.endsWith("/") ? basePath : basePath + '/') + WEBSOCKET_PATH;
+	}
+
+	/**
+	 * Handle the WebSocket connection.
+	 *
+	 * @param socket The WebSocket
+	 */
+	@Override
+	public void handle(final ServerWebSocket socket) {
+		if (!webSocketPath.equals(socket.path())) {
+			socket.reject();
+			return;
+		}
+		new EventBusBridgeWebSocketConnection(socket, vertx, config, SubscriptionRegistry.get(vertx, config)).start();
+	}
+}
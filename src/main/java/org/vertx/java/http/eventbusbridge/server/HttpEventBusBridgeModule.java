@@ -0,0 +1,107 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.server;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.callback.CallbackDelivery;
+import org.vertx.java.http.eventbusbridge.callback.CallbackOutbox;
+import org.vertx.java.http.eventbusbridge.limit.AdmissionController;
+import org.vertx.java.http.eventbusbridge.limit.RateLimiter;
+import org.vertx.java.http.eventbusbridge.reply.IdempotencyCache;
+import org.vertx.java.http.eventbusbridge.reply.ReplyStore;
+import org.vertx.java.http.eventbusbridge.security.EventBusBridgeRequestValidator;
+import org.vertx.java.platform.Verticle;
+
+/**
+ * Main verticle of the module. Deploys the Jersey module by default, or the native HttpServer when the
+ * 'ingress' setting is 'native'. Callbacks left undelivered in the callback outbox by a previous run are
+ * posted again once the ingress has started, and the outbox is flushed to disk and closed when the module is
+ * undeployed. The compiled whitelists, admission controller, rate limiter, reply store and idempotency cache
+ * shared by every event loop are created before the ingress is deployed and discarded when the module is
+ * undeployed.
+ *
+ * @author j2ro
+ *
+ */
+public final class HttpEventBusBridgeModule extends Verticle {
+
+	private static final String INGRESS = "ingress";
+	private static final String NATIVE_INGRESS = "native";
+	private static final String JERSEY_INGRESS = "jersey";
+	private static final String INSTANCES = "instances";
+	private static final int DEFAULT_INSTANCES = 1;
+	private static final String JERSEY_MODULE = "com.englishtown.vertx.jersey.JerseyModule";
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void start(final Future<Void> startedResult) {
+		final JsonObject config = container.config();
+		String ingress = config.getString(INGRESS, JERSEY_INGRESS);
+		try {
+			EventBusBridgeRequestValidator.getInboundWhitelist(config);
+			EventBusBridgeRequestValidator.getOutboundWhitelist(config);
+			AdmissionController.get(config);
+			RateLimiter.get(config);
+			ReplyStore.get(config);
+			IdempotencyCache.get(config);
+		} catch (IllegalArgumentException e) {
+			startedResult.setFailure(e);
+			return;
+		}
+		Handler<AsyncResult<String>> doneHandler = new Handler<AsyncResult<String>>() {
+			@Override
+			public void handle(final AsyncResult<String> event) {
+				if (!event.succeeded()) {
+					startedResult.setFailure(event.cause());
+					return;
+				}
+				try {
+					CallbackDelivery.get(vertx, config).replay();
+					startedResult.setResult(null);
+				} catch (IllegalStateException e) {
+					startedResult.setFailure(e);
+				}
+			}
+		};
+
+		if (NATIVE_INGRESS.equals(ingress)) {
+			container.deployVerticle(HttpEventBusBridgeServer.class.getName(), config,
+					                 config.getInteger(INSTANCES, DEFAULT_INSTANCES), doneHandler);
+		} else if (JERSEY_INGRESS.equals(ingress)) {
+			container.deployVerticle(JERSEY_MODULE, config, doneHandler);
+		} else {
+			startedResult.setFailure(new IllegalArgumentException("Unsupported ingress: " + ingress));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void stop() {
+		CallbackOutbox.closeInstance();
+		AdmissionController.closeInstance();
+		RateLimiter.closeInstance();
+		ReplyStore.closeInstance();
+		IdempotencyCache.closeInstance();
+		EventBusBridgeRequestValidator.clearWhitelists();
+	}
+}
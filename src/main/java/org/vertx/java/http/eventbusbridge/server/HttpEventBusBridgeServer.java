@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.server;
+
+import org.apache.log4j.Logger;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Future;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.http.HttpServer;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.platform.Verticle;
+
+/**
+ * Verticle serving the HTTP Event Bus Bridge directly on a Vert.x HttpServer, bypassing Jersey. The server
+ * also accepts WebSocket connections to the bridge.
+ *
+ * @author j2ro
+ *
+ */
+public final class HttpEventBusBridgeServer extends Verticle {
+
+	private static final Logger LOGGER = Logger.getLogger(HttpEventBusBridgeServer.class);
+
+	private static final String HOST = "host";
+	private static final String DEFAULT_HOST = "0.0.0.0";
+	private static final String PORT = "port";
+	private static final int DEFAULT_PORT = 80;
+	private static final String WEBSOCKET_CONFIG = "websocket";
+	private static final String MAX_FRAME_SIZE = "max_frame_size";
+	private static final int DEFAULT_MAX_FRAME_SIZE = 65536;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void start(final Future<Void> startedResult) {
+		JsonObject config = container.config();
+		final String host = config.getString(HOST, DEFAULT_HOST);
+		final int port = config.getInteger(PORT, DEFAULT_PORT);
+
+		HttpServer server = vertx.createHttpServer();
+		server.requestHandler(new EventBusBridgeRequestHandler(vertx, config));
+		server.websocketHandler(new EventBusBridgeWebSocketHandler(vertx, config));
+		JsonObject webSocketConfig = config.getObject(WEBSOCKET_CONFIG, new JsonObject());
+		server.setMaxWebSocketFrameSize(webSocketConfig.getInteger(MAX_FRAME_SIZE, DEFAULT_MAX_FRAME_SIZE));
+		server.listen(port, host, new Handler<AsyncResult<HttpServer>>() {
+			@Override
+			public void handle(final AsyncResult<HttpServer> event) {
+				if (event.succeeded()) {
+					LOGGER.info("Http Event Bus Bridge listening on " + host + ':' + port);
+					startedResult.setResult(null);
+				} else {
+					startedResult.setFailure(event.cause());
+				}
+			}
+		});
+	}
+}
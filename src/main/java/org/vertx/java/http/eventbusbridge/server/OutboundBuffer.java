@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.server;
+
+import java.util.ArrayDeque;
+
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.core.streams.WriteStream;
+
+/**
+ * Bounded buffer in front of the connection of a subscribed client.
+ *
+ * Data is written straight to the connection while its write queue has room. Once the write queue is full,
+ * data is held in the buffer until {@link #drain()} is called from the connection's drain handler; when the
+ * buffer is full too, the oldest buffered data is dropped or, if so configured, the client is reported as
+ * too slow so that it can be disconnected.
+ *
+ * @author j2ro
+ *
+ */
+final class OutboundBuffer {
+
+	private static final String SUBSCRIBE_CONFIG = "subscribe";
+	private static final String BUFFER_SIZE = "buffer_size";
+	private static final String SLOW_CONSUMER = "slow_consumer";
+	private static final String DISCONNECT = "disconnect";
+	private static final int DEFAULT_BUFFER_SIZE = 1000;
+
+	private final WriteStream<?> stream;
+	private final int bufferSize;
+	private final boolean disconnectSlowConsumer;
+	private final ArrayDeque<byte[]> buffered = new ArrayDeque<byte[]>();
+	private long dropped;
+
+	/**
+	 * Creates new instance of OutboundBuffer.
+	 * @param stream The connection
+	 * @param config Configuration
+	 */
+	OutboundBuffer(final WriteStream<?> stream, final JsonObject config) {
+		JsonObject subscribeConfig = config.getObject(SUBSCRIBE_CONFIG, new JsonObject());
+		this.stream = stream;
+		this.bufferSize = subscribeConfig.getInteger(BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+		this.disconnectSlowConsumer = DISCONNECT.equals(subscribeConfig.getString(SLOW_CONSUMER));
+	}
+
+	/**
+	 * Writes data to the connection, or buffers it if the connection's write queue is full.
+	 * @param data The data
+	 * @return false if the buffer is full and the client should be disconnected, otherwise true
+	 */
+	boolean write(final byte[] data) {
+		if (buffered.isEmpty() && !stream.writeQueueFull()) {
+			stream.write(new Buffer(data));
+			return true;
+		}
+		if (buffered.size() >= bufferSize) {
+			if (disconnectSlowConsumer) {
+				return false;
+			}
+			dropped++;
+			if (buffered.poll() == null) {
+				return true;
+			}
+		}
+		buffered.add(data);
+		return true;
+	}
+
+	/**
+	 * Writes buffered data to the connection until its write queue is full again.
+	 */
+	void drain() {
+		while (!buffered.isEmpty() && !stream.writeQueueFull()) {
+			stream.write(new Buffer(buffered.poll()));
+		}
+	}
+
+	/**
+	 * Gets whether data is being held because the connection is not keeping up.
+	 * @return true if data is buffered
+	 */
+	boolean isBuffering() {
+		return !buffered.isEmpty();
+	}
+
+	/**
+	 * Discards the buffered data.
+	 */
+	void clear() {
+		buffered.clear();
+	}
+
+	/**
+	 * Gets the amount of data dropped because the client was not keeping up.
+	 * @return number of dropped messages
+	 */
+	long getDropped() {
+		return dropped;
+	}
+}
@@ -0,0 +1,475 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.service;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.ServerWebSocket;
+import org.vertx.java.core.json.DecodeException;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.callback.CallbackDelivery;
+import org.vertx.java.http.eventbusbridge.callback.CallbackMetrics;
+import org.vertx.java.http.eventbusbridge.limit.AdmissionController;
+import org.vertx.java.http.eventbusbridge.limit.RateLimiter;
+import org.vertx.java.http.eventbusbridge.metrics.BridgeMetrics;
+import org.vertx.java.http.eventbusbridge.metrics.PrometheusWriter;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeBatchStatus;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeRequest;
+import org.vertx.java.http.eventbusbridge.model.EventBusInstruction;
+import org.vertx.java.http.eventbusbridge.model.HttpResponseHandler;
+import org.vertx.java.http.eventbusbridge.model.NoOpResponseHandler;
+import org.vertx.java.http.eventbusbridge.model.ReplyStoreResponseHandler;
+import org.vertx.java.http.eventbusbridge.reply.IdempotencyCache;
+import org.vertx.java.http.eventbusbridge.reply.ReplyStore;
+import org.vertx.java.http.eventbusbridge.security.EventBusBridgeRequestValidator;
+import org.vertx.java.http.eventbusbridge.util.EventBusMessageTypeConverter;
+
+/**
+ * Validates requests and forwards them onto the event bus. Shared by the Jersey service and the native
+ * HTTP server, so both ingress paths apply the same rules.
+ *
+ * @author j2ro
+ *
+ */
+public final class EventBusBridgeDispatcher {
+
+	private static final String TIMEOUT = "timeout";
+	private static final long DEFAULT_TIMEOUT = 0;
+	private static final String INLINE_JSON_RESPONSES = "inline_json_responses";
+	private static final boolean DEFAULT_INLINE_JSON_RESPONSES = false;
+	private static final String PRETTY_PRINT_RESPONSES = "pretty_print_responses";
+	private static final boolean DEFAULT_PRETTY_PRINT_RESPONSES = false;
+	private static final String DEFAULT_RESPONSE_MEDIA_TYPE = MediaType.APPLICATION_JSON;
+	private static final NoOpResponseHandler NOOP_RESPONSE_HANDLER = new NoOpResponseHandler();
+	private static final String RETRY_AFTER_HEADER = "Retry-After";
+	private static final int TOO_MANY_REQUESTS = 429;
+	private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+	private static final String CORRELATION_ID_HEADER = "X-Correlation-Id";
+	private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 256;
+
+	private EventBusBridgeDispatcher() {
+	}
+
+	/**
+	 * Validates the address, response media type and idempotency key of a request.
+	 * @param request The request
+	 * @param config Configuration
+	 * @throws WebApplicationException with status 403 if the address is not whitelisted, 415 if the
+	 * response media type is not supported, or 400 if the idempotency key is too long
+	 */
+	public static void validateRequest(final EventBusBridgeRequest request, final JsonObject config) {
+		String address = request.getAddress();
+		String responseMediaType = request.getResponseMediaType();
+		if (!EventBusBridgeRequestValidator.validateIncomingAddress(address, config)) {
+			/* counted under '_other', so requests to arbitrary addresses cannot fill the metrics */
+			throw reject(null, new WebApplicationException("Not authorized to forward messages to address: " + address,
+					                                          Response.Status.FORBIDDEN));
+		} else if (!EventBusBridgeRequestValidator.validateResponseMediaType(responseMediaType)) {
+			throw reject(address, new WebApplicationException("Unsupported response media type requested: " + responseMediaType,
+					                                          Response.Status.UNSUPPORTED_MEDIA_TYPE));
+		} else if (request.getIdempotencyKey() != null && request.getIdempotencyKey().length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+			throw reject(address, new WebApplicationException("Idempotency key longer than " + MAX_IDEMPOTENCY_KEY_LENGTH + " characters",
+					                                          Response.Status.BAD_REQUEST));
+		}
+	}
+
+	/**
+	 * Takes the idempotency key and correlation id of a request from the Idempotency-Key and X-Correlation-Id
+	 * headers of the HTTP request, unless the request carries its own.
+	 * @param request The request
+	 * @param httpRequest The HTTP request, may be null
+	 */
+	public static void readHeaders(final EventBusBridgeRequest request, final HttpServerRequest httpRequest) {
+		if (httpRequest == null) {
+			return;
+		}
+		if (request.getIdempotencyKey() == null) {
+			request.setIdempotencyKey(httpRequest.headers().get(IDEMPOTENCY_KEY_HEADER));
+		}
+		if (request.getCorrelationId() == null) {
+			request.setCorrelationId(httpRequest.headers().get(CORRELATION_ID_HEADER));
+		}
+	}
+
+	/**
+	 * Method validates a subscription to an address, i.e. that the address is on the outbound whitelist.
+	 * @param address The address
+	 * @param config Configuration
+	 */
+	public static void validateSubscription(final String address, final JsonObject config) {
+		if (!EventBusBridgeRequestValidator.validateOutgoingAddress(address, config)) {
+			throw reject(null, new WebApplicationException("Not authorized to subscribe to address: " + address,
+					                                          Response.Status.FORBIDDEN));
+		}
+	}
+
+	/**
+	 * Takes a token for the request from the rate limits of its client and address.
+	 * @param request The request
+	 * @param client Identity of the client making the request, may be null
+	 * @param config Configuration
+	 * @throws WebApplicationException with status 429 and a Retry-After header if a rate limit is exceeded
+	 */
+	public static void throttle(final EventBusBridgeRequest request, final String client, final JsonObject config) {
+		long wait = RateLimiter.get(config).acquire(request.getAddress(), client);
+		if (wait > 0) {
+			throw reject(request.getAddress(), new WebApplicationException(
+					Response.status(TOO_MANY_REQUESTS)
+					        .header(RETRY_AFTER_HEADER, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + 999999999)))
+					        .entity("Rate limit exceeded for address: " + request.getAddress())
+					        .build()));
+		}
+	}
+
+	/**
+	 * Identifies the client making a request, for its rate limit.
+	 * @param httpRequest The HTTP request, may be null
+	 * @param config Configuration
+	 * @return The identity of the client, or null if it cannot be identified
+	 */
+	public static String identifyClient(final HttpServerRequest httpRequest, final JsonObject config) {
+		return RateLimiter.get(config).identify(httpRequest);
+	}
+
+	/**
+	 * Identifies the client connected over a WebSocket, for its rate limit.
+	 * @param socket The WebSocket
+	 * @param config Configuration
+	 * @return The identity of the client, or null if it cannot be identified
+	 */
+	public static String identifyClient(final ServerWebSocket socket, final JsonObject config) {
+		return RateLimiter.get(config).identify(socket.headers(), socket.remoteAddress());
+	}
+
+	/**
+	 * Admits a send, so it counts towards the caps on sends waiting for their reply until its reply handler
+	 * fires.
+	 * @param request The request
+	 * @param config Configuration
+	 * @return The permit of the send, to be released when the reply handler fires
+	 * @throws WebApplicationException with status 503 and a Retry-After header if admitting the send would
+	 * exceed a cap
+	 */
+	public static AdmissionController.Permit admit(final EventBusBridgeRequest request, final JsonObject config) {
+		AdmissionController admissionController = AdmissionController.get(config);
+		AdmissionController.Permit permit = admissionController.acquire(request.getAddress(), sizeOf(request));
+		if (permit == null) {
+			throw reject(request.getAddress(), new WebApplicationException(
+					Response.status(Response.Status.SERVICE_UNAVAILABLE)
+					        .header(RETRY_AFTER_HEADER, admissionController.getRetryAfter())
+					        .entity("Too many sends waiting for a reply to address: " + request.getAddress())
+					        .build()));
+		}
+		return permit;
+	}
+
+	/**
+	 * Converts the message of a request into the object sent onto the event bus.
+	 * @param request The request
+	 * @return The message object
+	 * @throws WebApplicationException with status 400 if the message cannot be decoded as its message type
+	 */
+	public static Object convertMessage(final EventBusBridgeRequest request) {
+		try {
+			return EventBusMessageTypeConverter.convertIncomingMessage(request.getMessage(), request.getEventBusMessageType());
+		} catch (DecodeException | IllegalArgumentException | IndexOutOfBoundsException e) {
+			throw reject(request.getAddress(), new WebApplicationException("Unable to decode message as " + request.getEventBusMessageType()
+					                                                       + ": " + e.getMessage(), Response.Status.BAD_REQUEST));
+		}
+	}
+
+	/**
+	 * Sends or publishes a validated request onto the event bus. The reply to a send is posted to the
+	 * response url of the request, if it has one, or else parked in the reply store, if it is enabled. A
+	 * request whose idempotency key was already dispatched within the deduplication window is not dispatched
+	 * again.
+	 * @param request The request
+	 * @param instruction Instruction (i.e. send or publish)
+	 * @param vertx Vertx instance
+	 * @param config Configuration
+	 * @return The ticket the reply can be retrieved with, or null if the reply is not parked
+	 * @throws MalformedURLException If the response url contained in the request is invalid
+	 * @throws WebApplicationException with status 503 if the send is not admitted
+	 */
+	public static String dispatch(final EventBusBridgeRequest request, final EventBusInstruction instruction, final Vertx vertx,
+			                      final JsonObject config) throws MalformedURLException {
+		String key = request.getIdempotencyKey();
+		IdempotencyCache idempotencyCache = IdempotencyCache.get(config);
+		if (key == null || !idempotencyCache.isEnabled()) {
+			return dispatchOnce(request, instruction, vertx, config);
+		}
+		String previousTicket = idempotencyCache.claim(instruction, request.getAddress(), key);
+		if (previousTicket != null) {
+			return previousTicket != IdempotencyCache.NO_TICKET ? previousTicket : null;
+		}
+		try {
+			String ticket = dispatchOnce(request, instruction, vertx, config);
+			idempotencyCache.record(instruction, request.getAddress(), key, ticket);
+			return ticket;
+		} catch (MalformedURLException | RuntimeException e) {
+			idempotencyCache.release(instruction, request.getAddress(), key);
+			throw e;
+		}
+	}
+
+	/**
+	 * Sends or publishes a validated request onto the event bus, handing the reply to a send to the given
+	 * handler rather than posting it to the response url of the request.
+	 * @param request The request
+	 * @param instruction Instruction (i.e. send or publish)
+	 * @param responseHandler Handler of the reply to a send
+	 * @param vertx Vertx instance
+	 * @param config Configuration
+	 * @throws WebApplicationException with status 503 if the send is not admitted
+	 */
+	public static void dispatch(final EventBusBridgeRequest request, final EventBusInstruction instruction,
+			                    final Handler<AsyncResult<Message<Object>>> responseHandler, final Vertx vertx, final JsonObject config) {
+		String address = request.getAddress();
+		Object messageObject = convertMessage(request);
+		switch (instruction) {
+			case send:
+				AdmissionController.Permit permit = admit(request, config);
+				BridgeMetrics.requested(address, instruction, sizeOf(request));
+				try {
+					vertx.eventBus().sendWithTimeout(address, messageObject, getTimeout(config),
+							                         permit.releaseOnReply(BridgeMetrics.timeReply(address, responseHandler)));
+				} catch (RuntimeException e) {
+					permit.release();
+					throw e;
+				}
+				break;
+			case publish:
+				BridgeMetrics.requested(address, instruction, sizeOf(request));
+				vertx.eventBus().publish(address, messageObject);
+				break;
+			default:
+				throw new IllegalArgumentException("Illegal event bus instruction provided: " + instruction);
+		}
+	}
+
+	/**
+	 * Validates and dispatches one of many requests made together (e.g. in a batch or stream), each of which
+	 * carries its own instruction. Failures are reported in the returned status rather than thrown.
+	 * @param index Position of the request
+	 * @param request The request
+	 * @param client Identity of the client making the request, may be null
+	 * @param vertx Vertx instance
+	 * @param config Configuration
+	 * @return Status of the request, carrying its correlation id
+	 */
+	public static EventBusBridgeBatchStatus forwardItem(final int index, final EventBusBridgeRequest request, final String client,
+			                                            final Vertx vertx, final JsonObject config) {
+		EventBusBridgeBatchStatus status = dispatchItem(index, request, client, vertx, config);
+		status.setCorrelationId(request.getCorrelationId());
+		return status;
+	}
+
+	/**
+	 * Gets the metrics of the bridge: those of every address and callback host, the callback delivery
+	 * counters, the sends waiting for their reply, the replies parked in the reply store, and the
+	 * idempotency keys held for deduplication.
+	 * @param config Configuration
+	 * @return JSON object of the metrics
+	 */
+	public static JsonObject metrics(final JsonObject config) {
+		AdmissionController admissionController = AdmissionController.get(config);
+		ReplyStore replyStore = ReplyStore.get(config);
+		IdempotencyCache idempotencyCache = IdempotencyCache.get(config);
+		return BridgeMetrics.toJson()
+				.putObject("callbacks", new JsonObject()
+						.putNumber("attempts", CallbackMetrics.getAttempts())
+						.putNumber("delivered", CallbackMetrics.getDelivered())
+						.putNumber("retries", CallbackMetrics.getRetries())
+						.putNumber("dropped", CallbackMetrics.getDropped())
+						.putNumber("dead_lettered", CallbackMetrics.getDeadLettered()))
+				.putObject("admission", new JsonObject()
+						.putNumber("in_flight", admissionController.getInFlight())
+						.putNumber("in_flight_bytes", admissionController.getInFlightBytes()))
+				.putObject("reply_store", new JsonObject()
+						.putNumber("tickets", replyStore.size())
+						.putNumber("bytes", replyStore.getBytes()))
+				.putObject("idempotency", new JsonObject()
+						.putNumber("keys", idempotencyCache.size())
+						.putNumber("deduplicated", idempotencyCache.getDeduplicated()));
+	}
+
+	/**
+	 * Gets the same metrics as {@link #metrics(JsonObject)} in the Prometheus text exposition format.
+	 * @param config Configuration
+	 * @return The exposition text
+	 */
+	public static String prometheusMetrics(final JsonObject config) {
+		AdmissionController admissionController = AdmissionController.get(config);
+		ReplyStore replyStore = ReplyStore.get(config);
+		IdempotencyCache idempotencyCache = IdempotencyCache.get(config);
+		PrometheusWriter writer = PrometheusWriter.get();
+		BridgeMetrics.writePrometheus(writer);
+		writer.header("eventbus_bridge_callbacks_total", "counter", "Callback deliveries, by outcome.")
+				.sample("eventbus_bridge_callbacks_total", "outcome=\"attempt\"", CallbackMetrics.getAttempts())
+				.sample("eventbus_bridge_callbacks_total", "outcome=\"delivered\"", CallbackMetrics.getDelivered())
+				.sample("eventbus_bridge_callbacks_total", "outcome=\"retry\"", CallbackMetrics.getRetries())
+				.sample("eventbus_bridge_callbacks_total", "outcome=\"dropped\"", CallbackMetrics.getDropped())
+				.sample("eventbus_bridge_callbacks_total", "outcome=\"dead_lettered\"", CallbackMetrics.getDeadLettered());
+		writer.header("eventbus_bridge_in_flight", "gauge", "Sends waiting for their reply.")
+				.sample("eventbus_bridge_in_flight", null, admissionController.getInFlight());
+		writer.header("eventbus_bridge_in_flight_bytes", "gauge", "Size of the sends waiting for their reply.")
+				.sample("eventbus_bridge_in_flight_bytes", null, admissionController.getInFlightBytes());
+		writer.header("eventbus_bridge_reply_tickets", "gauge", "Tickets held by the reply store.")
+				.sample("eventbus_bridge_reply_tickets", null, replyStore.size());
+		writer.header("eventbus_bridge_reply_store_bytes", "gauge", "Size of the replies parked in the reply store.")
+				.sample("eventbus_bridge_reply_store_bytes", null, replyStore.getBytes());
+		writer.header("eventbus_bridge_idempotency_keys", "gauge", "Idempotency keys held for deduplication.")
+				.sample("eventbus_bridge_idempotency_keys", null, idempotencyCache.size());
+		writer.header("eventbus_bridge_deduplicated_total", "counter", "Retried requests acknowledged without being dispatched.")
+				.sample("eventbus_bridge_deduplicated_total", null, idempotencyCache.getDeduplicated());
+		return writer.toString();
+	}
+
+	/**
+	 * Gets the media type replies to the request are serialized to.
+	 * @param request The request
+	 * @return The requested response media type, or JSON if none was requested
+	 */
+	public static String getResponseMediaType(final EventBusBridgeRequest request) {
+		return request.getResponseMediaType() != null ? request.getResponseMediaType() : DEFAULT_RESPONSE_MEDIA_TYPE;
+	}
+
+	/**
+	 * Gets the period to wait for the reply to a send.
+	 * @param config Configuration
+	 * @return The reply timeout in milliseconds
+	 */
+	public static long getTimeout(final JsonObject config) {
+		return config.getLong(TIMEOUT, DEFAULT_TIMEOUT);
+	}
+
+	/**
+	 * Gets whether JsonObject and JsonArray replies are written inline in JSON responses.
+	 * @param config Configuration
+	 * @return Whether JSON replies are written inline
+	 */
+	public static boolean isInlineJsonResponses(final JsonObject config) {
+		return config.getBoolean(INLINE_JSON_RESPONSES, DEFAULT_INLINE_JSON_RESPONSES);
+	}
+
+	/**
+	 * Gets whether replies are serialized without indentation and line breaks.
+	 * @param config Configuration
+	 * @return Whether replies are serialized compactly
+	 */
+	public static boolean isCompactResponses(final JsonObject config) {
+		return !config.getBoolean(PRETTY_PRINT_RESPONSES, DEFAULT_PRETTY_PRINT_RESPONSES);
+	}
+
+	/**
+	 * Gets the size of the message of a request.
+	 * @param request The request
+	 * @return The size of the message in bytes, or 0 if it has none
+	 */
+	public static int sizeOf(final EventBusBridgeRequest request) {
+		return request.getMessage() != null ? request.getMessage().length : 0;
+	}
+
+	private static EventBusBridgeBatchStatus dispatchItem(final int index, final EventBusBridgeRequest request, final String client,
+			                                              final Vertx vertx, final JsonObject config) {
+		String address = request.getAddress();
+		EventBusInstruction instruction = request.getInstruction();
+		if (instruction != EventBusInstruction.send && instruction != EventBusInstruction.publish) {
+			BridgeMetrics.rejected(null, Response.Status.BAD_REQUEST.getStatusCode());
+			return new EventBusBridgeBatchStatus(index, address, Response.Status.BAD_REQUEST.getStatusCode(),
+					                             "Illegal event bus instruction provided: " + instruction);
+		} else if (address == null || request.getMessage() == null || request.getEventBusMessageType() == null) {
+			BridgeMetrics.rejected(null, Response.Status.BAD_REQUEST.getStatusCode());
+			return new EventBusBridgeBatchStatus(index, address, Response.Status.BAD_REQUEST.getStatusCode(),
+					                             "Request must contain an address, message and messageType");
+		}
+		try {
+			validateRequest(request, config);
+			throttle(request, client, config);
+			EventBusBridgeBatchStatus status = new EventBusBridgeBatchStatus(index, address, Response.Status.ACCEPTED.getStatusCode(), null);
+			status.setTicket(dispatch(request, instruction, vertx, config));
+			return status;
+		} catch (WebApplicationException e) {
+			return new EventBusBridgeBatchStatus(index, address, e.getResponse().getStatus(), e.getMessage());
+		} catch (MalformedURLException | RuntimeException e) {
+			return new EventBusBridgeBatchStatus(index, address, Response.Status.BAD_REQUEST.getStatusCode(), e.getMessage());
+		}
+	}
+
+	private static String dispatchOnce(final EventBusBridgeRequest request, final EventBusInstruction instruction, final Vertx vertx,
+			                           final JsonObject config) throws MalformedURLException {
+		Handler<AsyncResult<Message<Object>>> responseHandler = NOOP_RESPONSE_HANDLER;
+		String ticket = null;
+		if (instruction == EventBusInstruction.send) {
+			String mediaType = getResponseMediaType(request);
+			ReplyStore store = ReplyStore.get(config);
+			if (request.getResponseUrl() != null) {
+				responseHandler = createHandler(new URL(request.getResponseUrl()), mediaType, vertx, config, request.getAddress(),
+						                        request.getCorrelationId());
+			} else if (store.isEnabled()) {
+				ticket = store.open();
+				responseHandler = new ReplyStoreResponseHandler(store, ticket, mediaType, request.getAddress(),
+						                                        isInlineJsonResponses(config), isCompactResponses(config),
+						                                        request.getCorrelationId());
+			}
+		}
+		try {
+			dispatch(request, instruction, responseHandler, vertx, config);
+		} catch (RuntimeException e) {
+			if (ticket != null) {
+				ReplyStore.get(config).discard(ticket);
+			}
+			throw e;
+		}
+		return ticket;
+	}
+
+	private static WebApplicationException reject(final String address, final WebApplicationException exception) {
+		BridgeMetrics.rejected(address, exception.getResponse().getStatus());
+		return exception;
+	}
+
+	/**
+	 * Creates new instance of HttpResponse if url is provided.
+	 * @param url URL to post the reply to
+	 * @param mediaType MediaType of the reply
+	 * @param vertx Vertx instance
+	 * @param config Configuration
+	 * @param address address
+	 * @param correlationId correlation id of the request
+	 * @return new HttpResponseHandler instance if url was specified, otherwise NoOpResponseHandler
+	 */
+	private static Handler<AsyncResult<Message<Object>>> createHandler(final URL url, final String mediaType, final Vertx vertx,
+			                                                           final JsonObject config, final String address,
+			                                                           final String correlationId) {
+		if (url == null) {
+			return NOOP_RESPONSE_HANDLER;
+		}
+		return new HttpResponseHandler(url, mediaType, CallbackDelivery.get(vertx, config), address,
+				                       isInlineJsonResponses(config), isCompactResponses(config), correlationId);
+	}
+}
@@ -16,31 +16,47 @@
 package org.vertx.java.http.eventbusbridge.service;
 
 import java.net.MalformedURLException;
-import java.net.URL;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.ExceptionMapper;
 import javax.ws.rs.ext.Provider;
 
 import org.codehaus.jackson.JsonParseException;
-import org.vertx.java.core.AsyncResult;
 import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
-import org.vertx.java.core.eventbus.Message;
-import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.http.HttpServerRequest;
 import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.limit.AdmissionController;
+import org.vertx.java.http.eventbusbridge.metrics.BridgeMetrics;
+import org.vertx.java.http.eventbusbridge.metrics.PrometheusWriter;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeBatchRequest;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeBatchResponse;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeBatchStatus;
 import org.vertx.java.http.eventbusbridge.model.EventBusBridgeRequest;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeTicket;
 import org.vertx.java.http.eventbusbridge.model.EventBusInstruction;
-import org.vertx.java.http.eventbusbridge.model.HttpResponseHandler;
-import org.vertx.java.http.eventbusbridge.model.NoOpResponseHandler;
-import org.vertx.java.http.eventbusbridge.security.EventBusBridgeRequestValidator;
+import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
+import org.vertx.java.http.eventbusbridge.model.SyncResponseHandler;
+import org.vertx.java.http.eventbusbridge.reply.ParkedReply;
+import org.vertx.java.http.eventbusbridge.reply.ReplyStore;
 import org.vertx.java.http.eventbusbridge.util.EventBusMessageTypeConverter;
 import org.vertx.java.platform.Container;
 import org.xml.sax.SAXParseException;
@@ -55,14 +71,21 @@ import org.xml.sax.SAXParseException;
 @Path("eventbus")
 public final class HttpEventBusBridgeService {
 
-	private static final long DEFAULT_TIMEOUT = 0;
-	private static final String DEFAULT_RESPONSE_MEDIA_TYPE = MediaType.APPLICATION_JSON;
-	private static final NoOpResponseHandler NOOP_RESPONSE_HANDLER = new NoOpResponseHandler();
+	private static final String MAX_BATCH_SIZE = "max_batch_size";
+	private static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+	private static final String MESSAGE_TYPE_HEADER = "X-Message-Type";
+	private static final String RESPONSE_URL_HEADER = "X-Response-Url";
+	private static final String RESPONSE_MEDIA_TYPE_HEADER = "X-Response-Media-Type";
+	private static final String REPLY_PATH = "eventbus/reply/";
 
 	/**
-	 * Service to forward HTTP request onto the vertx event bus.
+	 * Service to forward HTTP request onto the vertx event bus. When the reply store is enabled, a send
+	 * without a response url is answered with the ticket its reply can be retrieved with. A request retried
+	 * with the same idempotency key, given in the request or in the Idempotency-Key header, is acknowledged
+	 * without being forwarded again.
 	 * @param request EventBusBridgeRequest object
 	 * @param instruction Instruction (i.e. send or publish)
+	 * @param httpRequest The Vert.x HTTP request, identifying the client
 	 * @param vertx Vertx instance
 	 * @param container Container instance
 	 * @return Message
@@ -72,62 +95,212 @@ public final class HttpEventBusBridgeService {
 	@Path("/{instruction}")
 	@Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
 	public Response forward(final EventBusBridgeRequest request, @PathParam("instruction") final EventBusInstruction instruction,
-			                @Context final Vertx vertx, @Context final Container container) throws MalformedURLException {
-		String address = request.getAddress();
+			                @Context final HttpServerRequest httpRequest, @Context final Vertx vertx,
+			                @Context final Container container) throws MalformedURLException {
 		JsonObject config = container.config();
 
-		validateRequest(request, config);
-
-		Object messageObject = EventBusMessageTypeConverter.convertIncomingMessage(request.getMessage(), request.getEventBusMessageType());
-		switch (instruction) {
-			case send:
-				Long timeout = config.getLong("timeout", DEFAULT_TIMEOUT);
-				String mediaType = request.getResponseMediaType() != null ? request.getResponseMediaType() : DEFAULT_RESPONSE_MEDIA_TYPE;
-				URL responseUrl = request.getResponseUrl() != null ? new URL(request.getResponseUrl()) : null;
-				send(address, messageObject, responseUrl, mediaType, vertx, timeout);
-				break;
-			case publish:
-				publish(address, messageObject, vertx);
-				break;
-			default:
-				throw new IllegalArgumentException("Illegal event bus instruction provided: " + instruction);
-		}
-		return Response.accepted().build();
+		EventBusBridgeDispatcher.readHeaders(request, httpRequest);
+		EventBusBridgeDispatcher.validateRequest(request, config);
+		EventBusBridgeDispatcher.throttle(request, EventBusBridgeDispatcher.identifyClient(httpRequest, config), config);
+		String ticket = EventBusBridgeDispatcher.dispatch(request, instruction, vertx, config);
+		return accepted(ticket, EventBusBridgeDispatcher.getResponseMediaType(request));
 	}
 
-	private void send(final String address, final Object messageObject, final URL responseUrl,
-			          final String mediaType, final Vertx vertx, final Long timeout) throws MalformedURLException {
-		Handler<AsyncResult<Message<Object>>> responseHandler = createHandler(responseUrl, mediaType, vertx.createHttpClient(), address);
-		vertx.eventBus().sendWithTimeout(address, messageObject, timeout, responseHandler);
+	/**
+	 * Service to send HTTP request onto the vertx event bus and return the reply as the HTTP response. The
+	 * HTTP response is suspended until the reply arrives or the send times out, without holding a thread.
+	 * @param request EventBusBridgeRequest object
+	 * @param asyncResponse The suspended HTTP response the reply is written to
+	 * @param httpRequest The Vert.x HTTP request, identifying the client
+	 * @param vertx Vertx instance
+	 * @param container Container instance
+	 */
+	@POST
+	@Path("/request")
+	@Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+	public void request(final EventBusBridgeRequest request, @Suspended final AsyncResponse asyncResponse,
+			            @Context final HttpServerRequest httpRequest, @Context final Vertx vertx, @Context final Container container) {
+		JsonObject config = container.config();
+
+		EventBusBridgeDispatcher.readHeaders(request, httpRequest);
+		EventBusBridgeDispatcher.validateRequest(request, config);
+		EventBusBridgeDispatcher.throttle(request, EventBusBridgeDispatcher.identifyClient(httpRequest, config), config);
+		sendWithSyncReply(request, asyncResponse, vertx, config);
 	}
 
-	private void publish(final String address, final Object messageObject, final Vertx vertx) {
-		vertx.eventBus().publish(address, messageObject);
+	/**
+	 * Service to forward a raw HTTP request body onto the vertx event bus, without the request envelope. The
+	 * address is taken from the URL, and the message type from the X-Message-Type header or, if absent, from
+	 * the Content-Type of the body ('application/json', 'text/plain' or 'application/octet-stream'). A
+	 * response url and media type for the reply to a send can be given in the X-Response-Url and
+	 * X-Response-Media-Type headers, an idempotency key for a send or publish in the Idempotency-Key
+	 * header, and a correlation id to echo in the reply in the X-Correlation-Id header.
+	 * @param message The message
+	 * @param instruction Instruction (i.e. send, publish or request)
+	 * @param address The address
+	 * @param messageType The message type header
+	 * @param contentType The content type header
+	 * @param responseUrl The response url header
+	 * @param responseMediaType The response media type header
+	 * @param asyncResponse The HTTP response, suspended until the reply arrives for request instructions
+	 * @param httpRequest The Vert.x HTTP request, identifying the client
+	 * @param vertx Vertx instance
+	 * @param container Container instance
+	 * @throws MalformedURLException If the response url is invalid
+	 */
+	@POST
+	@Path("/{instruction}/{address}")
+	public void forwardRaw(final byte[] message, @PathParam("instruction") final EventBusInstruction instruction,
+			               @PathParam("address") final String address, @HeaderParam(MESSAGE_TYPE_HEADER) final String messageType,
+			               @HeaderParam(HttpHeaders.CONTENT_TYPE) final String contentType,
+			               @HeaderParam(RESPONSE_URL_HEADER) final String responseUrl,
+			               @HeaderParam(RESPONSE_MEDIA_TYPE_HEADER) final String responseMediaType,
+			               @Suspended final AsyncResponse asyncResponse, @Context final HttpServerRequest httpRequest,
+			               @Context final Vertx vertx, @Context final Container container) throws MalformedURLException {
+		JsonObject config = container.config();
+		EventBusBridgeRequest request = new EventBusBridgeRequest();
+		request.setAddress(address);
+		request.setMessage(message);
+		request.setEventBusMessageType(resolveMessageType(messageType, contentType, message));
+		request.setResponseUrl(responseUrl);
+		request.setResponseMediaType(responseMediaType);
+		EventBusBridgeDispatcher.readHeaders(request, httpRequest);
+
+		EventBusBridgeDispatcher.validateRequest(request, config);
+		EventBusBridgeDispatcher.throttle(request, EventBusBridgeDispatcher.identifyClient(httpRequest, config), config);
+		if (instruction == EventBusInstruction.request) {
+			sendWithSyncReply(request, asyncResponse, vertx, config);
+		} else {
+			String ticket = EventBusBridgeDispatcher.dispatch(request, instruction, vertx, config);
+			asyncResponse.resume(accepted(ticket, EventBusBridgeDispatcher.getResponseMediaType(request)));
+		}
 	}
 
-	private void validateRequest(final EventBusBridgeRequest request, final JsonObject config) {
-		String address = request.getAddress();
-		String responseMediaType = request.getResponseMediaType();
-		if (!EventBusBridgeRequestValidator.validateIncomingAddress(address, config)) {
-			throw new WebApplicationException("Not authorized to forward messages to address: " + address, Response.Status.FORBIDDEN);
-		} else if (!EventBusBridgeRequestValidator.validateResponseMediaType(responseMediaType)) {
-			throw new WebApplicationException("Unsupported response media type requested: " + responseMediaType,
-					                          Response.Status.UNSUPPORTED_MEDIA_TYPE);
+	/**
+	 * Service to forward a batch of HTTP requests onto the vertx event bus. Each request in the batch carries
+	 * its own instruction, is validated and dispatched independently, and has its outcome reported in the
+	 * returned batch response.
+	 * @param batchRequest EventBusBridgeBatchRequest object
+	 * @param httpRequest The Vert.x HTTP request, identifying the client
+	 * @param vertx Vertx instance
+	 * @param container Container instance
+	 * @return Status of each request in the batch
+	 */
+	@POST
+	@Path("/batch")
+	@Consumes({ MediaType.APPLICATION_XML, MediaType.APPLICATION_JSON })
+	@Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML })
+	public Response forwardBatch(final EventBusBridgeBatchRequest batchRequest, @Context final HttpServerRequest httpRequest,
+			                     @Context final Vertx vertx, @Context final Container container) {
+		JsonObject config = container.config();
+		List<EventBusBridgeRequest> requests = batchRequest.getRequests();
+		if (requests == null || requests.isEmpty()) {
+			throw new WebApplicationException("Batch request contains no requests", Response.Status.BAD_REQUEST);
+		} else if (requests.size() > config.getInteger(MAX_BATCH_SIZE, DEFAULT_MAX_BATCH_SIZE)) {
+			throw new WebApplicationException("Batch request contains too many requests: " + requests.size(),
+					                          Response.Status.REQUEST_ENTITY_TOO_LARGE);
+		}
+
+		String client = EventBusBridgeDispatcher.identifyClient(httpRequest, config);
+		List<EventBusBridgeBatchStatus> statuses = new ArrayList<EventBusBridgeBatchStatus>(requests.size());
+		for (int i = 0; i < requests.size(); i++) {
+			statuses.add(EventBusBridgeDispatcher.forwardItem(i, requests.get(i), client, vertx, config));
 		}
+		return Response.ok(new EventBusBridgeBatchResponse(statuses)).build();
+	}
+
+	/**
+	 * Service to retrieve the reply to a send by the ticket it was answered with. The reply is returned
+	 * with the status and media type it would have had as the response to a request, and can be retrieved
+	 * only once. If it has not arrived yet, the HTTP response is suspended for up to the given period
+	 * waiting for it, and is then 202 (Accepted). Unknown and expired tickets are 404 (Not Found).
+	 * @param ticket The ticket
+	 * @param wait Period in milliseconds to wait for the reply
+	 * @param asyncResponse The suspended HTTP response the reply is written to
+	 * @param vertx Vertx instance
+	 * @param container Container instance
+	 */
+	@GET
+	@Path("/reply/{ticket}")
+	public void reply(@PathParam("ticket") final String ticket, @QueryParam("wait") @DefaultValue("0") final long wait,
+			          @Suspended final AsyncResponse asyncResponse, @Context final Vertx vertx, @Context final Container container) {
+		ReplyStore.get(container.config()).get(ticket, wait, vertx, new Handler<ParkedReply>() {
+			@Override
+			public void handle(final ParkedReply reply) {
+				if (reply == null) {
+					asyncResponse.resume(Response.status(Response.Status.NOT_FOUND).build());
+				} else if (reply == ReplyStore.PENDING) {
+					asyncResponse.resume(Response.accepted().build());
+				} else {
+					asyncResponse.resume(Response.status(reply.getStatus()).type(reply.getMediaType()).entity(reply.getBody()).build());
+				}
+			}
+		});
+	}
+
+	/**
+	 * Service to get the metrics of the bridge.
+	 * @param container Container instance
+	 * @return The metrics, as JSON
+	 */
+	@GET
+	@Path("/metrics")
+	@Produces(MediaType.APPLICATION_JSON)
+	public String metrics(@Context final Container container) {
+		return EventBusBridgeDispatcher.metrics(container.config()).encode();
 	}
 
 	/**
-	 * Creates new instance of HttpResponse if url is provided.
-	 * @param url URL to post the reply to
-	 * @param mediaType MediaType of the reply
-	 * @param httpClient HttpClient
-	 * @param address address
-	 * @return new HttpResponseHandler instance if url was specified, otherwise NoOpResponseHandler
-	 * @throws MalformedURLException If response URL was in an invalid format
+	 * Service to get the metrics of the bridge in the Prometheus text exposition format.
+	 * @param container Container instance
+	 * @return The metrics, as Prometheus text
 	 */
-	private Handler<AsyncResult<Message<Object>>> createHandler(final URL url, final String mediaType,
-			                                  final HttpClient httpClient, final String address) throws MalformedURLException {
-		return url == null ? NOOP_RESPONSE_HANDLER : new HttpResponseHandler(url, mediaType, httpClient, address);
+	@GET
+	@Path("/metrics/prometheus")
+	@Produces(PrometheusWriter.CONTENT_TYPE)
+	public String prometheusMetrics(@Context final Container container) {
+		return EventBusBridgeDispatcher.prometheusMetrics(container.config());
+	}
+
+	private void sendWithSyncReply(final EventBusBridgeRequest request, final AsyncResponse asyncResponse, final Vertx vertx,
+			                       final JsonObject config) {
+		String address = request.getAddress();
+		Object messageObject = EventBusBridgeDispatcher.convertMessage(request);
+		SyncResponseHandler responseHandler = new SyncResponseHandler(asyncResponse, EventBusBridgeDispatcher.getResponseMediaType(request),
+				                                                      address, EventBusBridgeDispatcher.isInlineJsonResponses(config),
+				                                                      EventBusBridgeDispatcher.isCompactResponses(config),
+				                                                      request.getCorrelationId());
+		AdmissionController.Permit permit = EventBusBridgeDispatcher.admit(request, config);
+		BridgeMetrics.requested(address, EventBusInstruction.request, EventBusBridgeDispatcher.sizeOf(request));
+		try {
+			vertx.eventBus().sendWithTimeout(address, messageObject, EventBusBridgeDispatcher.getTimeout(config),
+					                         permit.releaseOnReply(BridgeMetrics.timeReply(address, responseHandler)));
+		} catch (RuntimeException e) {
+			permit.release();
+			throw e;
+		}
+	}
+
+	private static Response accepted(final String ticket, final String mediaType) {
+		if (ticket == null) {
+			return Response.accepted().build();
+		}
+		return Response.accepted(new EventBusBridgeTicket(ticket)).type(mediaType).location(URI.create(REPLY_PATH + ticket)).build();
+	}
+
+	private EventBusMessageType resolveMessageType(final String messageType, final String contentType, final byte[] message) {
+		if (messageType != null) {
+			try {
+				return EventBusMessageType.valueOf(messageType);
+			} catch (IllegalArgumentException e) {
+				throw new WebApplicationException("Unsupported message type: " + messageType, Response.Status.BAD_REQUEST);
+			}
+		}
+		EventBusMessageType mediaMessageType = EventBusMessageTypeConverter.convertMediaType(contentType, message);
+		if (mediaMessageType == null) {
+			throw new WebApplicationException("Unsupported message media type: " + contentType, Response.Status.UNSUPPORTED_MEDIA_TYPE);
+		}
+		return mediaMessageType;
 	}
 
 	@Provider
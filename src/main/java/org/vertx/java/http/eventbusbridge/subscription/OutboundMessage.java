@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.subscription;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.ws.rs.core.MediaType;
+import javax.xml.bind.JAXBException;
+
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeFrameType;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeResponse;
+import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
+import org.vertx.java.http.eventbusbridge.util.EventBusBridgeFrameCodec;
+import org.vertx.java.http.eventbusbridge.util.EventBusBridgeResponseFactory;
+import org.vertx.java.http.eventbusbridge.util.EventBusMessageTypeConverter;
+import org.vertx.java.http.eventbusbridge.util.SerializationHelper;
+
+/**
+ * A message received on a subscribed address, on its way to every subscriber of that address.
+ *
+ * Encodings of the message are made on first use and kept, so a message fanned out to many connections is
+ * serialized once rather than once per connection.
+ *
+ * @author j2ro
+ *
+ */
+public final class OutboundMessage {
+
+	private static final byte[] SSE_DATA = "data: ".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] SSE_END = "\n\n".getBytes(StandardCharsets.UTF_8);
+
+	private final String address;
+	private final Message<Object> message;
+	private final boolean inlineJson;
+	private byte[] json;
+	private byte[] sseEvent;
+	private byte[] webSocketFrame;
+
+	/**
+	 * Creates new instance of OutboundMessage.
+	 * @param address The address the message was received on
+	 * @param message The message
+	 * @param inlineJson Whether JsonObject and JsonArray messages are written inline rather than Base64 encoded
+	 */
+	OutboundMessage(final String address, final Message<Object> message, final boolean inlineJson) {
+		this.address = address;
+		this.message = message;
+		this.inlineJson = inlineJson;
+	}
+
+	/**
+	 * Gets the address the message was received on.
+	 * @return the address
+	 */
+	public String getAddress() {
+		return address;
+	}
+
+	/**
+	 * Gets the message.
+	 * @return the message
+	 */
+	public Message<Object> getMessage() {
+		return message;
+	}
+
+	/**
+	 * Gets the message as a compact JSON response, on a single line.
+	 * @return the UTF-8 encoded JSON
+	 * @throws IOException if there was a problem serializing to JSON
+	 */
+	public byte[] getJson() throws IOException {
+		if (json == null) {
+			EventBusBridgeResponse response = EventBusBridgeResponseFactory.createResponse(address, message, inlineJson);
+			try {
+				json = SerializationHelper.serializeToBuffer(response, MediaType.APPLICATION_JSON, true).getBytes();
+			} catch (JAXBException e) {
+				throw new IOException(e);
+			}
+		}
+		return json;
+	}
+
+	/**
+	 * Gets the message as a server-sent event whose data is the JSON response.
+	 * @return the UTF-8 encoded event, including the blank line ending it
+	 * @throws IOException if there was a problem serializing to JSON
+	 */
+	public byte[] getSseEvent() throws IOException {
+		if (sseEvent == null) {
+			byte[] data = getJson();
+			byte[] event = new byte[SSE_DATA.length + data.length + SSE_END.length];
+			System.arraycopy(SSE_DATA, 0, event, 0, SSE_DATA.length);
+			System.arraycopy(data, 0, event, SSE_DATA.length, data.length);
+			System.arraycopy(SSE_END, 0, event, SSE_DATA.length + data.length, SSE_END.length);
+			sseEvent = event;
+		}
+		return sseEvent;
+	}
+
+	/**
+	 * Gets the message as a WebSocket message frame.
+	 * @return the binary data of the frame
+	 */
+	public byte[] getWebSocketFrame() {
+		if (webSocketFrame == null) {
+			Object body = message.body();
+			EventBusMessageType messageType = body != null ? EventBusMessageType.lookupByClass(body.getClass()) : null;
+			byte[] messageBytes = body != null ? EventBusMessageTypeConverter.convertOutgoingMessage(body) : null;
+			webSocketFrame = EventBusBridgeFrameCodec.encode(EventBusBridgeFrameType.message, 0, address, messageType, messageBytes);
+		}
+		return webSocketFrame;
+	}
+}
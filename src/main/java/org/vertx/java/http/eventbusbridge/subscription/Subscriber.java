@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.subscription;
+
+/**
+ * A connection receiving the messages sent to the addresses it has subscribed to.
+ *
+ * @author j2ro
+ *
+ */
+public interface Subscriber {
+
+	/**
+	 * Delivers a message received on a subscribed address. Called on the event loop of the connection.
+	 * @param message The message
+	 */
+	void deliver(OutboundMessage message);
+}
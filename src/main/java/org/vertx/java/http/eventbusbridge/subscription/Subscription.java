@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.subscription;
+
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+
+/**
+ * The single event bus registration of an address, shared by every subscriber of that address on one event
+ * loop. Each message received is wrapped once and handed to every subscriber.
+ *
+ * The subscribers are held in an array that is replaced whenever a subscriber is added or removed, so a
+ * subscriber may unsubscribe while a message is being fanned out.
+ *
+ * @author j2ro
+ *
+ */
+final class Subscription implements Handler<Message<Object>> {
+
+	private static final Logger LOGGER = Logger.getLogger(Subscription.class);
+
+	private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+
+	private final String address;
+	private final boolean inlineJson;
+	private Subscriber[] subscribers = NO_SUBSCRIBERS;
+
+	Subscription(final String address, final boolean inlineJson) {
+		this.address = address;
+		this.inlineJson = inlineJson;
+	}
+
+	/**
+	 * Handle a message received on the address.
+	 *
+	 * @param message The message
+	 */
+	@Override
+	public void handle(final Message<Object> message) {
+		OutboundMessage outboundMessage = new OutboundMessage(address, message, inlineJson);
+		for (Subscriber subscriber : subscribers) {
+			try {
+				subscriber.deliver(outboundMessage);
+			} catch (RuntimeException e) {
+				LOGGER.error("Unable to deliver message received on " + address, e);
+			}
+		}
+	}
+
+	void add(final Subscriber subscriber) {
+		Subscriber[] added = Arrays.copyOf(subscribers, subscribers.length + 1);
+		added[subscribers.length] = subscriber;
+		subscribers = added;
+	}
+
+	boolean remove(final Subscriber subscriber) {
+		for (int i = 0; i < subscribers.length; i++) {
+			if (subscribers[i] == subscriber) {
+				Subscriber[] removed = new Subscriber[subscribers.length - 1];
+				System.arraycopy(subscribers, 0, removed, 0, i);
+				System.arraycopy(subscribers, i + 1, removed, i, subscribers.length - i - 1);
+				subscribers = removed;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int size() {
+		return subscribers.length;
+	}
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.subscription;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.service.EventBusBridgeDispatcher;
+
+/**
+ * Registry of the addresses HTTP clients have subscribed to.
+ *
+ * One registry exists per event loop thread, like the callback client registry, so the connections served by
+ * an event loop share a single event bus handler per address: the handler is registered when the first
+ * connection subscribes to the address and unregistered when the last one goes away. Messages are therefore
+ * received and encoded once per event loop, then written to each connection on the thread that owns it.
+ *
+ * @author j2ro
+ *
+ */
+public final class SubscriptionRegistry {
+
+	private static final Logger LOGGER = Logger.getLogger(SubscriptionRegistry.class);
+
+	private static final ThreadLocal<SubscriptionRegistry> REGISTRIES = new ThreadLocal<SubscriptionRegistry>();
+
+	private final Vertx vertx;
+	private final boolean inlineJson;
+	private final Map<String, Subscription> subscriptions = new HashMap<String, Subscription>();
+
+	private SubscriptionRegistry(final Vertx vertx, final JsonObject config) {
+		this.vertx = vertx;
+		this.inlineJson = EventBusBridgeDispatcher.isInlineJsonResponses(config);
+	}
+
+	/**
+	 * Gets the registry belonging to the calling event loop, creating it on first use.
+	 * @param vertx Vertx instance
+	 * @param config Configuration
+	 * @return The registry for the current event loop
+	 */
+	public static SubscriptionRegistry get(final Vertx vertx, final JsonObject config) {
+		SubscriptionRegistry registry = REGISTRIES.get();
+		if (registry == null || registry.vertx != vertx) {
+			if (registry != null) {
+				registry.close();
+			}
+			registry = new SubscriptionRegistry(vertx, config);
+			REGISTRIES.set(registry);
+		}
+		return registry;
+	}
+
+	/**
+	 * Subscribes to an address, registering a handler for it on the event bus if it is the first subscriber
+	 * on this event loop. The address must already have been checked against the outbound whitelist.
+	 * @param address The address
+	 * @param subscriber Subscriber the messages received on the address are delivered to
+	 */
+	public void subscribe(final String address, final Subscriber subscriber) {
+		Subscription subscription = subscriptions.get(address);
+		if (subscription == null) {
+			subscription = new Subscription(address, inlineJson);
+			subscriptions.put(address, subscription);
+			vertx.eventBus().registerHandler(address, subscription);
+			LOGGER.debug("Subscribed to " + address);
+		}
+		subscription.add(subscriber);
+	}
+
+	/**
+	 * Unsubscribes from an address, unregistering its event bus handler if it was the last subscriber on this
+	 * event loop. Does nothing if the subscriber was not subscribed to the address.
+	 * @param address The address
+	 * @param subscriber The subscriber
+	 */
+	public void unsubscribe(final String address, final Subscriber subscriber) {
+		Subscription subscription = subscriptions.get(address);
+		if (subscription != null && subscription.remove(subscriber) && subscription.size() == 0) {
+			subscriptions.remove(address);
+			vertx.eventBus().unregisterHandler(address, subscription);
+			LOGGER.debug("Unsubscribed from " + address);
+		}
+	}
+
+	/**
+	 * Gets the number of subscribers of an address on this event loop.
+	 * @param address The address
+	 * @return number of subscribers
+	 */
+	public int getSubscriberCount(final String address) {
+		Subscription subscription = subscriptions.get(address);
+		return subscription != null ? subscription.size() : 0;
+	}
+
+	/**
+	 * Gets the number of addresses subscribed to on this event loop.
+	 * @return number of addresses
+	 */
+	public int size() {
+		return subscriptions.size();
+	}
+
+	/**
+	 * Unregisters the handlers of every address.
+	 */
+	public void close() {
+		for (Map.Entry<String, Subscription> subscription : subscriptions.entrySet()) {
+			vertx.eventBus().unregisterHandler(subscription.getKey(), subscription.getValue());
+		}
+		subscriptions.clear();
+	}
+}
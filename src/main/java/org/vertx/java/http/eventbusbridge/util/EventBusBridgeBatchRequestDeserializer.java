@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.util;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeBatchRequest;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeRequest;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+/**
+ * Deserializes a batch request from JSON, which is either an object holding the requests in its 'requests'
+ * field or a bare array of requests.
+ *
+ * @author j2ro
+ *
+ */
+public final class EventBusBridgeBatchRequestDeserializer extends JsonDeserializer<EventBusBridgeBatchRequest> {
+
+	private static final String REQUESTS = "requests";
+	private static final TypeReference<List<EventBusBridgeRequest>> REQUEST_LIST = new TypeReference<List<EventBusBridgeRequest>>() { };
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public EventBusBridgeBatchRequest deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+		EventBusBridgeBatchRequest batchRequest = new EventBusBridgeBatchRequest();
+		JsonToken token = parser.getCurrentToken();
+		if (token == JsonToken.START_ARRAY) {
+			batchRequest.setRequests(parser.<List<EventBusBridgeRequest>>readValueAs(REQUEST_LIST));
+			return batchRequest;
+		} else if (token != JsonToken.START_OBJECT) {
+			throw context.mappingException(EventBusBridgeBatchRequest.class);
+		}
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			parser.nextToken();
+			if (REQUESTS.equals(name)) {
+				batchRequest.setRequests(parser.<List<EventBusBridgeRequest>>readValueAs(REQUEST_LIST));
+			} else if (context.isEnabled(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)) {
+				throw context.mappingException("Unrecognized field \"" + name + "\" in batch request");
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return batchRequest;
+	}
+}
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeFrame;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeFrameType;
+import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
+
+/**
+ * Utility class encoding and decoding the binary WebSocket frames of the HTTP Event Bus Bridge.
+ *
+ * Every frame has the same big-endian layout:
+ * <pre>
+ * byte    type          (see EventBusBridgeFrameType)
+ * int     id            (chosen by the client, echoed in the answering reply or error frame)
+ * ushort  address length
+ * byte[]  address       (UTF-8)
+ * byte    message type  (ordinal of EventBusMessageType, or -1 if there is no message)
+ * byte[]  message       (the remainder of the frame, in the same form as the message of an HTTP request)
+ * </pre>
+ *
+ * @author j2ro
+ *
+ */
+public final class EventBusBridgeFrameCodec {
+
+	private static final int HEADER_SIZE = 8;
+	private static final int MAX_ADDRESS_LENGTH = 0xFFFF;
+	private static final byte NO_MESSAGE_TYPE = -1;
+	private static final byte[] NO_MESSAGE = new byte[0];
+	private static final EventBusMessageType[] MESSAGE_TYPES = EventBusMessageType.values();
+
+	private EventBusBridgeFrameCodec() {
+	}
+
+	/**
+	 * Decodes a frame.
+	 * @param data The binary data of the WebSocket frame
+	 * @return The frame
+	 * @throws IllegalArgumentException if the data is not a well formed frame
+	 */
+	public static EventBusBridgeFrame decode(final Buffer data) {
+		if (data.length() < HEADER_SIZE) {
+			throw new IllegalArgumentException("Frame too short: " + data.length() + " bytes");
+		}
+		EventBusBridgeFrameType type = EventBusBridgeFrameType.lookupByCode(data.getByte(0));
+		if (type == null) {
+			throw new IllegalArgumentException("Unknown frame type: " + data.getByte(0));
+		}
+		int id = data.getInt(1);
+		int addressLength = data.getShort(5) & MAX_ADDRESS_LENGTH;
+		int messageTypeIndex = 7 + addressLength;
+		if (data.length() <= messageTypeIndex) {
+			throw new IllegalArgumentException("Frame too short for its address of " + addressLength + " bytes");
+		}
+		String address = addressLength > 0 ? data.getString(7, messageTypeIndex, StandardCharsets.UTF_8.name()) : null;
+		byte messageTypeOrdinal = data.getByte(messageTypeIndex);
+		EventBusMessageType messageType = null;
+		if (messageTypeOrdinal != NO_MESSAGE_TYPE) {
+			if (messageTypeOrdinal < 0 || messageTypeOrdinal >= MESSAGE_TYPES.length) {
+				throw new IllegalArgumentException("Unknown message type: " + messageTypeOrdinal);
+			}
+			messageType = MESSAGE_TYPES[messageTypeOrdinal];
+		}
+		byte[] message = data.getBytes(messageTypeIndex + 1, data.length());
+		return new EventBusBridgeFrame(type, id, address, messageType, message);
+	}
+
+	/**
+	 * Encodes a frame.
+	 * @param frame The frame
+	 * @return The binary data of the WebSocket frame
+	 */
+	public static byte[] encode(final EventBusBridgeFrame frame) {
+		return encode(frame.getType(), frame.getId(), frame.getAddress(), frame.getEventBusMessageType(), frame.getMessage());
+	}
+
+	/**
+	 * Encodes a frame without creating an EventBusBridgeFrame first.
+	 * @param type The type of the frame
+	 * @param id The identifier of the frame being answered, or 0
+	 * @param address The address, may be null
+	 * @param messageType The type of the message, may be null if the frame has no message
+	 * @param message The message, may be null
+	 * @return The binary data of the WebSocket frame
+	 * @throws IllegalArgumentException if the address is longer than 65535 bytes
+	 */
+	public static byte[] encode(final EventBusBridgeFrameType type, final int id, final String address,
+			                    final EventBusMessageType messageType, final byte[] message) {
+		byte[] addressBytes = address != null ? address.getBytes(StandardCharsets.UTF_8) : NO_MESSAGE;
+		if (addressBytes.length > MAX_ADDRESS_LENGTH) {
+			throw new IllegalArgumentException("Address too long: " + addressBytes.length + " bytes");
+		}
+		byte[] messageBytes = message != null ? message : NO_MESSAGE;
+		ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + addressBytes.length + messageBytes.length);
+		frame.put(type.getCode());
+		frame.putInt(id);
+		frame.putShort((short) addressBytes.length);
+		frame.put(addressBytes);
+		frame.put(messageType != null ? (byte) messageType.ordinal() : NO_MESSAGE_TYPE);
+		frame.put(messageBytes);
+		return frame.array();
+	}
+}
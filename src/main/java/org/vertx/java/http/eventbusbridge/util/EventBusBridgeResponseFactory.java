@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.util;
+
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.eventbus.ReplyException;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeResponse;
+import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
+
+/**
+ * Utility class providing methods for creating responses from event bus replies.
+ *
+ * @author j2ro
+ *
+ */
+public final class EventBusBridgeResponseFactory {
+
+	private EventBusBridgeResponseFactory() {
+	}
+
+	/**
+	 * Method creates the response for an event bus reply.
+	 * @param address The address the request was sent to
+	 * @param event The event bus reply
+	 * @return Response encapsulating the reply, or the cause of the failure
+	 */
+	public static EventBusBridgeResponse createResponse(final String address, final AsyncResult<Message<Object>> event) {
+		return createResponse(address, event, false);
+	}
+
+	/**
+	 * Method creates the response for an event bus reply.
+	 * @param address The address the request was sent to
+	 * @param event The event bus reply
+	 * @param inlineJson Whether JsonObject and JsonArray replies are written inline when serialized to JSON
+	 * @return Response encapsulating the reply, or the cause of the failure
+	 */
+	public static EventBusBridgeResponse createResponse(final String address, final AsyncResult<Message<Object>> event,
+			                                            final boolean inlineJson) {
+		EventBusBridgeResponse response = new EventBusBridgeResponse();
+		response.setInlineJson(inlineJson);
+		response.setSuccessful(event.succeeded());
+		response.setAddress(address);
+		if (event.succeeded()) {
+			setMessage(response, event.result());
+		} else {
+			Throwable cause = event.cause();
+			if (cause != null) {
+				if (cause instanceof ReplyException) {
+					ReplyException replyException = (ReplyException) cause;
+					response.setCause(replyException.failureType().name());
+				} else {
+					response.setCause(cause.getMessage());
+				}
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Method creates the response carrying a message received on an address the client has subscribed to.
+	 * @param address The address the message was received on
+	 * @param message The message
+	 * @param inlineJson Whether JsonObject and JsonArray messages are written inline when serialized to JSON
+	 * @return Response encapsulating the message
+	 */
+	public static EventBusBridgeResponse createResponse(final String address, final Message<Object> message,
+			                                            final boolean inlineJson) {
+		EventBusBridgeResponse response = new EventBusBridgeResponse();
+		response.setInlineJson(inlineJson);
+		response.setSuccessful(true);
+		response.setAddress(address);
+		setMessage(response, message);
+		return response;
+	}
+
+	private static void setMessage(final EventBusBridgeResponse response, final Message<Object> message) {
+		Object body = message.body();
+		if (body != null) {
+			response.setResponseMessage(EventBusMessageTypeConverter.convertOutgoingMessage(body));
+			response.setEventBusMessageType(EventBusMessageType.lookupByClass(body.getClass()));
+		}
+	}
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.util;
+
+import java.io.IOException;
+
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeResponse;
+import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+/**
+ * Serializes responses to JSON. The message is written Base64 encoded, unless the response asks for
+ * JsonObject and JsonArray messages to be written inline as a JSON object or array, in which case the
+ * UTF-8 encoded message is copied token by token into the response.
+ *
+ * @author j2ro
+ *
+ */
+public final class EventBusBridgeResponseSerializer extends JsonSerializer<EventBusBridgeResponse> {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void serialize(final EventBusBridgeResponse response, final JsonGenerator generator, final SerializerProvider provider)
+			throws IOException {
+		generator.writeStartObject();
+		writeStringField(generator, "address", response.getAddress());
+		generator.writeBooleanField("successful", response.isSuccessful());
+		writeStringField(generator, "cause", response.getCause());
+		byte[] message = response.getResponseMessage();
+		EventBusMessageType messageType = response.getEventBusMessageType();
+		if (message != null) {
+			generator.writeFieldName("message");
+			if (response.isInlineJson() && (messageType == EventBusMessageType.JsonObject || messageType == EventBusMessageType.JsonArray)) {
+				writeJson(generator, message);
+			} else {
+				generator.writeBinary(message);
+			}
+		}
+		if (messageType != null) {
+			generator.writeStringField("messageType", messageType.name());
+		}
+		writeStringField(generator, "correlationId", response.getCorrelationId());
+		generator.writeEndObject();
+	}
+
+	private static void writeJson(final JsonGenerator generator, final byte[] message) throws IOException {
+		try (JsonParser parser = JSON_FACTORY.createParser(message)) {
+			parser.nextToken();
+			generator.copyCurrentStructure(parser);
+		}
+	}
+
+	private static void writeStringField(final JsonGenerator generator, final String name, final String value) throws IOException {
+		if (value != null) {
+			generator.writeStringField(name, value);
+		}
+	}
+}
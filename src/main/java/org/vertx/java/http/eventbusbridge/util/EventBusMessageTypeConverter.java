@@ -15,10 +15,19 @@
  */
 package org.vertx.java.http.eventbusbridge.util;
 
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.core.MediaType;
+
+import org.vertx.java.core.json.DecodeException;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 /**
  * Utility class providing methods for use when dealing with incoming requests.
  *
@@ -27,17 +36,61 @@ import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
  */
 public final class EventBusMessageTypeConverter {
 
+	private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
 	private EventBusMessageTypeConverter() {
 	}
 
 	/**
-	 * Method attempts to convert event bus message from byte[] into the desired type.
+	 * Method attempts to convert event bus message from byte[] into the desired type. JSON messages are
+	 * parsed directly from the bytes, without first being copied into a String.
 	 * @param message Incoming message as array of bytes
 	 * @param messageType Desired type
 	 * @return Encapsulation of object in desired type
 	 */
+	@SuppressWarnings("unchecked")
 	public static Object convertIncomingMessage(final byte[] message, final EventBusMessageType messageType) {
-		String messageString = new String(message);
+		switch(messageType) {
+			case ByteArray:
+				return message;
+			case JsonArray:
+				return new JsonArray(parseJson(message, List.class));
+			case JsonObject:
+				return new JsonObject(parseJson(message, Map.class));
+			default:
+				return convertIncomingString(new String(message), messageType);
+		}
+	}
+
+	/**
+	 * Method determines the event bus message type of a raw message from its media type. JSON messages
+	 * are typed as JsonObject or JsonArray depending on their first non-whitespace character.
+	 * @param mediaType Media type of the message, may include parameters (e.g. charset)
+	 * @param message Message as array of bytes
+	 * @return The message type, or null if the media type has no equivalent message type
+	 */
+	public static EventBusMessageType convertMediaType(final String mediaType, final byte[] message) {
+		if (mediaType == null) {
+			return null;
+		}
+		int parametersStart = mediaType.indexOf(';');
+		String type = (parametersStart < 0 ? mediaType : mediaType.substring(0, parametersStart)).trim().toLowerCase();
+		if (MediaType.APPLICATION_JSON.equals(type)) {
+			for (byte b : message) {
+				if (!Character.isWhitespace(b)) {
+					return b == '[' ? EventBusMessageType.JsonArray : EventBusMessageType.JsonObject;
+				}
+			}
+			return EventBusMessageType.JsonObject;
+		} else if (MediaType.TEXT_PLAIN.equals(type)) {
+			return EventBusMessageType.String;
+		} else if (MediaType.APPLICATION_OCTET_STREAM.equals(type)) {
+			return EventBusMessageType.ByteArray;
+		}
+		return null;
+	}
+
+	private static Object convertIncomingString(final String messageString, final EventBusMessageType messageType) {
 		switch(messageType) {
 			case String:
 				return messageString;
@@ -57,18 +110,20 @@ public final class EventBusMessageTypeConverter {
 				return new Float(messageString);
 			case Double:
 				return new Double(messageString);
-			case JsonArray:
-				return new JsonArray(messageString);
-			case JsonObject:
-				return new JsonObject(messageString);
-			case ByteArray:
-				return message;
 			default:
 				throw new IllegalArgumentException("EventBusMessageType '" + messageType + "' not recognised. "
 						+ "This exception should never be thrown!");
 		}
 	}
 
+	private static <T> T parseJson(final byte[] message, final Class<T> clazz) {
+		try {
+			return JSON_MAPPER.readValue(message, clazz);
+		} catch (IOException e) {
+			throw new DecodeException("Failed to decode: " + e.getMessage());
+		}
+	}
+
 	/**
 	 * Method attempts to convert event bus message from Object into a byte[].
 	 * @param message Incoming message as an object
@@ -0,0 +1,57 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.codehaus.jackson.JsonEncoding;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.DeserializationContext;
+import org.codehaus.jackson.map.JsonDeserializer;
+
+/**
+ * Jackson 1 equivalent of {@link MessageDeserializer}, used by the JSON provider of Jersey.
+ *
+ * @author j2ro
+ *
+ */
+public final class JerseyMessageDeserializer extends JsonDeserializer<byte[]> {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+		JsonToken token = parser.getCurrentToken();
+		if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			JsonGenerator generator = JSON_FACTORY.createJsonGenerator(output, JsonEncoding.UTF8);
+			try {
+				generator.copyCurrentStructure(parser);
+			} finally {
+				generator.close();
+			}
+			return output.toByteArray();
+		}
+		return parser.getBinaryValue();
+	}
+}
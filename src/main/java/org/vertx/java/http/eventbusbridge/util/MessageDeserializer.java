@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+/**
+ * Deserializes the message of a request, which is either a Base64 encoded string or, for JsonObject and
+ * JsonArray messages, an inline JSON object or array. Inline JSON is copied token by token into UTF-8
+ * bytes, without being Base64 encoded or built into a tree.
+ *
+ * @author j2ro
+ *
+ */
+public final class MessageDeserializer extends JsonDeserializer<byte[]> {
+
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public byte[] deserialize(final JsonParser parser, final DeserializationContext context) throws IOException {
+		JsonToken token = parser.getCurrentToken();
+		if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+			ByteArrayOutputStream output = new ByteArrayOutputStream();
+			try (JsonGenerator generator = JSON_FACTORY.createGenerator(output, JsonEncoding.UTF8)) {
+				generator.copyCurrentStructure(parser);
+			}
+			return output.toByteArray();
+		}
+		return parser.getBinaryValue();
+	}
+}
@@ -15,35 +15,77 @@
  */
 package org.vertx.java.http.eventbusbridge.util;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
 
 import javax.ws.rs.core.MediaType;
 import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Marshaller;
+import javax.xml.bind.UnmarshalException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
+import io.netty.buffer.ByteBufOutputStream;
+
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeBatchStatus;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeRequest;
 import org.vertx.java.http.eventbusbridge.model.EventBusBridgeResponse;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeResponseBatch;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeTicket;
 
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.module.SimpleModule;
 
 /**
- * Class provides some utility methods for serialisation to JSON and XML.
+ * Class provides some utility methods for serialisation to and from JSON and XML.
  *
  * @author j2ro
  */
 public final class SerializationHelper {
 
+	private static final int INITIAL_BUFFER_SIZE = 256;
 	private static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+	private static final ObjectWriter COMPACT_JSON_WRITER;
+	private static final ObjectWriter FORMATTED_JSON_WRITER;
 	private static final JAXBContext JAXB_CONTEXT;
 
+	/* Request bodies are read without DTDs or external entities, so they cannot expand or fetch entities */
+	private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+	/* Marshallers and unmarshallers are not thread safe, so each thread keeps its own */
+	private static final ThreadLocal<Marshaller> COMPACT_MARSHALLER = new MarshallerThreadLocal(false);
+	private static final ThreadLocal<Marshaller> FORMATTED_MARSHALLER = new MarshallerThreadLocal(true);
+	private static final ThreadLocal<Unmarshaller> UNMARSHALLER = new ThreadLocal<Unmarshaller>() {
+		@Override
+		protected Unmarshaller initialValue() {
+			try {
+				return JAXB_CONTEXT.createUnmarshaller();
+			} catch (JAXBException e) {
+				throw new IllegalStateException("Unable to create JAXB unmarshaller", e);
+			}
+		}
+	};
+
 	static {
 		try {
-			JAXB_CONTEXT = JAXBContext.newInstance(EventBusBridgeResponse.class);
+			JAXB_CONTEXT = JAXBContext.newInstance(EventBusBridgeResponse.class, EventBusBridgeResponseBatch.class,
+					                                  EventBusBridgeRequest.class, EventBusBridgeBatchStatus.class,
+					                                  EventBusBridgeTicket.class);
 			JSON_MAPPER.setSerializationInclusion(Include.NON_NULL);
-			JSON_MAPPER.enable(SerializationFeature.INDENT_OUTPUT);
+			JSON_MAPPER.registerModule(new SimpleModule().addSerializer(EventBusBridgeResponse.class, new EventBusBridgeResponseSerializer()));
+			COMPACT_JSON_WRITER = JSON_MAPPER.writer();
+			FORMATTED_JSON_WRITER = JSON_MAPPER.writerWithDefaultPrettyPrinter();
+			XML_INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			XML_INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
 		} catch (JAXBException e) {
 			throw new RuntimeException("Class initialization failed due to JAXBException", e);
 		}
@@ -53,7 +95,7 @@ public final class SerializationHelper {
 	}
 
 	/**
-	 * Serialises object to JSON or XML depending on the media type provided.
+	 * Serialises object to formatted JSON or XML depending on the media type provided.
 	 * @param object Object to serialise
 	 * @param mediaType Media type to serialise to ('application/xml' or 'application/json')
 	 * @return Serialised object
@@ -61,24 +103,119 @@ public final class SerializationHelper {
 	 * @throws JAXBException if there was a problem serializing to XML
 	 */
 	public static String serialize(final Object object, final String mediaType) throws JsonProcessingException, JAXBException {
+		return serialize(object, mediaType, false);
+	}
+
+	/**
+	 * Serialises object to JSON or XML depending on the media type provided.
+	 * @param object Object to serialise
+	 * @param mediaType Media type to serialise to ('application/xml' or 'application/json')
+	 * @param compact Whether to omit the indentation and line breaks of formatted output
+	 * @return Serialised object
+	 * @throws JsonProcessingException if there was a problem serializing to Json
+	 * @throws JAXBException if there was a problem serializing to XML
+	 */
+	public static String serialize(final Object object, final String mediaType, final boolean compact)
+			throws JsonProcessingException, JAXBException {
+		if (MediaType.APPLICATION_JSON.equals(mediaType)) {
+			return jsonWriter(compact).writeValueAsString(object);
+		} else if (MediaType.APPLICATION_XML.equals(mediaType)) {
+			StringWriter writer = new StringWriter();
+			marshaller(compact).marshal(object, writer);
+			return writer.toString();
+		} else {
+			throw new IllegalArgumentException("Unsupported media type serialization requested for response: " + mediaType);
+		}
+	}
+
+	/**
+	 * Serialises object to JSON or XML depending on the media type provided, writing the UTF-8 encoded
+	 * output straight into a buffer rather than building a String.
+	 * @param object Object to serialise
+	 * @param mediaType Media type to serialise to ('application/xml' or 'application/json')
+	 * @param compact Whether to omit the indentation and line breaks of formatted output
+	 * @return Buffer containing the serialised object
+	 * @throws IOException if there was a problem serializing to Json
+	 * @throws JAXBException if there was a problem serializing to XML
+	 */
+	public static Buffer serializeToBuffer(final Object object, final String mediaType, final boolean compact)
+			throws IOException, JAXBException {
+		Buffer buffer = new Buffer(INITIAL_BUFFER_SIZE);
+		OutputStream output = new ByteBufOutputStream(buffer.getByteBuf());
 		if (MediaType.APPLICATION_JSON.equals(mediaType)) {
-			return toJson(object);
+			jsonWriter(compact).writeValue(output, object);
 		} else if (MediaType.APPLICATION_XML.equals(mediaType)) {
-			return toXml(object);
+			marshaller(compact).marshal(object, output);
 		} else {
 			throw new IllegalArgumentException("Unsupported media type serialization requested for response: " + mediaType);
 		}
+		return buffer;
 	}
 
-	private static String toJson(final Object jsonObject) throws JsonProcessingException {
-		return JSON_MAPPER.writeValueAsString(jsonObject);
+	/**
+	 * Deserialises JSON or XML to an object depending on the media type provided. XML containing a DTD or
+	 * entity references is rejected.
+	 * @param data Data to deserialise
+	 * @param mediaType Media type to deserialise from ('application/xml' or 'application/json')
+	 * @param type Type of the object
+	 * @param <T> Type of the object
+	 * @return Deserialised object
+	 * @throws IOException if there was a problem deserializing from Json
+	 * @throws JAXBException if there was a problem deserializing from XML
+	 */
+	public static <T> T deserialize(final byte[] data, final String mediaType, final Class<T> type) throws IOException, JAXBException {
+		if (MediaType.APPLICATION_JSON.equals(mediaType)) {
+			return JSON_MAPPER.readValue(data, type);
+		} else if (MediaType.APPLICATION_XML.equals(mediaType)) {
+			return unmarshal(data, type);
+		} else {
+			throw new IllegalArgumentException("Unsupported media type deserialization requested: " + mediaType);
+		}
 	}
 
-	private static String toXml(final Object xmlObject) throws JAXBException {
-		StringWriter writer = new StringWriter();
-		Marshaller jaxbMarshaller = JAXB_CONTEXT.createMarshaller();
-		jaxbMarshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, true);
-		jaxbMarshaller.marshal(xmlObject, writer);
-		return writer.toString();
+	private static <T> T unmarshal(final byte[] data, final Class<T> type) throws JAXBException {
+		XMLStreamReader reader = null;
+		try {
+			reader = XML_INPUT_FACTORY.createXMLStreamReader(new ByteArrayInputStream(data));
+			return UNMARSHALLER.get().unmarshal(reader, type).getValue();
+		} catch (XMLStreamException e) {
+			throw new UnmarshalException(e);
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (XMLStreamException e) {
+					// Nothing left to read from the byte array
+				}
+			}
+		}
+	}
+
+	private static ObjectWriter jsonWriter(final boolean compact) {
+		return compact ? COMPACT_JSON_WRITER : FORMATTED_JSON_WRITER;
+	}
+
+	private static Marshaller marshaller(final boolean compact) {
+		return compact ? COMPACT_MARSHALLER.get() : FORMATTED_MARSHALLER.get();
+	}
+
+	private static final class MarshallerThreadLocal extends ThreadLocal<Marshaller> {
+
+		private final boolean formatted;
+
+		private MarshallerThreadLocal(final boolean formatted) {
+			this.formatted = formatted;
+		}
+
+		@Override
+		protected Marshaller initialValue() {
+			try {
+				Marshaller marshaller = JAXB_CONTEXT.createMarshaller();
+				marshaller.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, formatted);
+				return marshaller;
+			} catch (JAXBException e) {
+				throw new IllegalStateException("Unable to create JAXB marshaller", e);
+			}
+		}
 	}
 }
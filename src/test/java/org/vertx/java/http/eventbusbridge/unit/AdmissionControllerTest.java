@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.limit.AdmissionController;
+
+/**
+ * Tests for AdmissionController.
+ *
+ * @author j2ro
+ *
+ */
+@SuppressWarnings("unchecked")
+public class AdmissionControllerTest {
+
+	@Before
+	public void setUp() {
+		AdmissionController.closeInstance();
+	}
+
+	@Test
+	public void testUnlimitedByDefault() {
+		AdmissionController controller = AdmissionController.get(new JsonObject());
+		for (int i = 0; i < 100; i++) {
+			assertNotNull(controller.acquire("address", 1000));
+		}
+		assertEquals(100, controller.getInFlight());
+	}
+
+	@Test
+	public void testMaxInFlight() {
+		AdmissionController controller = AdmissionController.get(createConfig("max_in_flight", 2));
+		AdmissionController.Permit first = controller.acquire("first", 10);
+		assertNotNull(controller.acquire("second", 10));
+		assertNull(controller.acquire("third", 10));
+
+		first.release();
+		first.release();
+		assertEquals(1, controller.getInFlight());
+		assertNotNull(controller.acquire("third", 10));
+	}
+
+	@Test
+	public void testMaxInFlightPerAddress() {
+		AdmissionController controller = AdmissionController.get(createConfig("max_in_flight_per_address", 1));
+		assertNotNull(controller.acquire("first", 10));
+		assertNull(controller.acquire("first", 10));
+		assertNotNull(controller.acquire("second", 10));
+		assertEquals(1, controller.getInFlight("first"));
+		assertEquals(2, controller.getInFlight());
+	}
+
+	@Test
+	public void testAddressCountersRemovedWhenReleased() {
+		AdmissionController controller = AdmissionController.get(createConfig("max_in_flight_per_address", 1));
+		for (int i = 0; i < 1000; i++) {
+			AdmissionController.Permit permit = controller.acquire("news." + i, 10);
+			assertNotNull(permit);
+			assertEquals(1, controller.getTrackedAddresses());
+			permit.release();
+		}
+		assertEquals(0, controller.getTrackedAddresses());
+
+		AdmissionController.Permit permit = controller.acquire("news.0", 10);
+		assertNull(controller.acquire("news.0", 10));
+		permit.release();
+		assertEquals(0, controller.getInFlight("news.0"));
+		assertNotNull(controller.acquire("news.0", 10));
+		assertEquals(1, controller.getInFlight("news.0"));
+	}
+
+	@Test
+	public void testMaxInFlightBytes() {
+		AdmissionController controller = AdmissionController.get(createConfig("max_in_flight_bytes", 100));
+		AdmissionController.Permit large = controller.acquire("address", 150);
+		assertNotNull(large);
+		assertNull(controller.acquire("address", 1));
+		assertEquals(1, controller.getInFlight());
+
+		large.release();
+		assertNotNull(controller.acquire("address", 60));
+		assertNull(controller.acquire("address", 60));
+		assertEquals(60, controller.getInFlightBytes());
+	}
+
+	@Test
+	public void testReleaseOnReply() {
+		AdmissionController controller = AdmissionController.get(createConfig("max_in_flight", 1));
+		Handler<AsyncResult<Message<Object>>> handler = Mockito.mock(Handler.class);
+		AsyncResult<Message<Object>> reply = Mockito.mock(AsyncResult.class);
+		controller.acquire("address", 10).releaseOnReply(handler).handle(reply);
+		verify(handler).handle(reply);
+		assertEquals(0, controller.getInFlight());
+	}
+
+	@Test
+	public void testNotReplaced() {
+		AdmissionController controller = AdmissionController.get(createConfig("max_in_flight", 1));
+		controller.acquire("address", 10);
+		assertSame(controller, AdmissionController.get(createConfig("max_in_flight", 1)));
+		assertEquals(1, AdmissionController.get(new JsonObject()).getInFlight());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCapWithoutTimeout() {
+		AdmissionController.get(new JsonObject().putObject("admission", new JsonObject().putNumber("max_in_flight", 1)));
+	}
+
+	private JsonObject createConfig(final String field, final int max) {
+		return new JsonObject().putNumber("timeout", 1000).putObject("admission", new JsonObject().putNumber(field, max));
+	}
+}
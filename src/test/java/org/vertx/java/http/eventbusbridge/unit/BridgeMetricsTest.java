@@ -0,0 +1,153 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.eventbus.ReplyException;
+import org.vertx.java.core.eventbus.ReplyFailure;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.metrics.AddressMetrics;
+import org.vertx.java.http.eventbusbridge.metrics.BridgeMetrics;
+import org.vertx.java.http.eventbusbridge.metrics.Histogram;
+import org.vertx.java.http.eventbusbridge.metrics.PrometheusWriter;
+import org.vertx.java.http.eventbusbridge.metrics.StripedCounter;
+import org.vertx.java.http.eventbusbridge.model.EventBusInstruction;
+
+/**
+ * Tests for BridgeMetrics, Histogram, StripedCounter and PrometheusWriter.
+ *
+ * @author j2ro
+ *
+ */
+@SuppressWarnings("unchecked")
+public class BridgeMetricsTest {
+
+	@Before
+	public void setUp() {
+		BridgeMetrics.reset();
+	}
+
+	@Test
+	public void testStripedCounter() throws InterruptedException {
+		final StripedCounter counter = new StripedCounter();
+		Thread[] threads = new Thread[4];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					for (int j = 0; j < 1000; j++) {
+						counter.increment();
+					}
+				}
+			});
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(4000, counter.sum());
+	}
+
+	@Test
+	public void testHistogramQuantiles() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.getValueAtQuantile(0.99));
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(500.5, histogram.getMean(), 0.001);
+		assertEquals(1000, histogram.getMax());
+		assertEquals(500, histogram.getValueAtQuantile(0.5), 500 / 16);
+		assertEquals(990, histogram.getValueAtQuantile(0.99), 990 / 16);
+		assertEquals(1000, histogram.getValueAtQuantile(1));
+	}
+
+	@Test
+	public void testRequestsAndRejections() {
+		BridgeMetrics.requested("testaddress", EventBusInstruction.send, 100);
+		BridgeMetrics.requested("testaddress", EventBusInstruction.publish, 50);
+		BridgeMetrics.rejected("testaddress", 429);
+		BridgeMetrics.rejected(null, 403);
+
+		AddressMetrics metrics = BridgeMetrics.getAddress("testaddress");
+		assertEquals(1, metrics.getRequests(EventBusInstruction.send));
+		assertEquals(1, metrics.getRequests(EventBusInstruction.publish));
+		assertEquals(0, metrics.getRequests(EventBusInstruction.request));
+		assertEquals(1, metrics.getRejections(429));
+		assertEquals(2, metrics.getPayloadBytes().getCount());
+		assertEquals(1, BridgeMetrics.getAddress(null).getRejections(403));
+
+		JsonObject json = BridgeMetrics.toJson().getObject("addresses").getObject("testaddress");
+		assertEquals(1, json.getObject("requests").getInteger("send").intValue());
+		assertEquals(1, json.getObject("rejected").getInteger("429").intValue());
+		assertEquals(100, json.getObject("payload_bytes").getInteger("max").intValue());
+	}
+
+	@Test
+	public void testTimeReply() {
+		Handler<AsyncResult<Message<Object>>> handler = Mockito.mock(Handler.class);
+		AsyncResult<Message<Object>> reply = Mockito.mock(AsyncResult.class);
+		when(reply.succeeded()).thenReturn(true);
+		BridgeMetrics.timeReply("testaddress", handler).handle(reply);
+		verify(handler).handle(reply);
+
+		AsyncResult<Message<Object>> timeout = Mockito.mock(AsyncResult.class);
+		when(timeout.cause()).thenReturn(new ReplyException(ReplyFailure.TIMEOUT, "Timed out"));
+		BridgeMetrics.timeReply("testaddress", handler).handle(timeout);
+
+		AddressMetrics metrics = BridgeMetrics.getAddress("testaddress");
+		assertEquals(2, metrics.getReplyLatency().getCount());
+		assertEquals(1, metrics.getReplyFailures(ReplyFailure.TIMEOUT));
+		assertEquals(0, metrics.getReplyFailures(ReplyFailure.NO_HANDLERS));
+	}
+
+	@Test
+	public void testCallbackLatency() {
+		BridgeMetrics.callbackCompleted("http://localhost:8080", 2000000);
+		assertEquals(2000, BridgeMetrics.getCallbackLatency("http://localhost:8080").getMax());
+		assertNotNull(BridgeMetrics.toJson().getObject("callback_latency_us").getObject("http://localhost:8080"));
+	}
+
+	@Test
+	public void testPrometheus() {
+		BridgeMetrics.requested("test\"address", EventBusInstruction.send, 100);
+		BridgeMetrics.rejected("test\"address", 429);
+		BridgeMetrics.callbackCompleted("http://localhost:8080", 2000000);
+		BridgeMetrics.getCallbackHost("http://localhost:8080").addQueued(3);
+		PrometheusWriter writer = PrometheusWriter.get();
+		BridgeMetrics.writePrometheus(writer);
+		String text = writer.toString();
+		assertTrue(text.contains("# TYPE eventbus_bridge_requests_total counter\n"));
+		assertTrue(text.contains("eventbus_bridge_requests_total{address=\"test\\\"address\",instruction=\"send\"} 1\n"));
+		assertTrue(text.contains("eventbus_bridge_rejected_total{address=\"test\\\"address\",status=\"429\"} 1\n"));
+		assertTrue(text.contains("eventbus_bridge_payload_bytes_count{address=\"test\\\"address\"} 1\n"));
+		assertTrue(text.contains("eventbus_bridge_payload_bytes_sum{address=\"test\\\"address\"} 100.0\n"));
+		assertTrue(text.contains("eventbus_bridge_callback_latency_seconds{host=\"http://localhost:8080\",quantile=\"0.99\"}"));
+		assertTrue(text.contains("# TYPE eventbus_bridge_callback_queued gauge\n"));
+		assertTrue(text.contains("eventbus_bridge_callback_queued{host=\"http://localhost:8080\"} 3\n"));
+
+		assertEquals("", PrometheusWriter.get().toString());
+	}
+}
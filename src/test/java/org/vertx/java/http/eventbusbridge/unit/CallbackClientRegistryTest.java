@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.callback.CallbackClientRegistry;
+
+/**
+ * Tests for CallbackClientRegistry.
+ *
+ * @author j2ro
+ *
+ */
+public class CallbackClientRegistryTest {
+
+	private Vertx vertx;
+	private CallbackClientRegistry registry;
+
+	@Before
+	public void setUp() {
+		vertx = Mockito.mock(Vertx.class);
+		when(vertx.createHttpClient()).thenReturn(Mockito.mock(HttpClient.class), Mockito.mock(HttpClient.class));
+		JsonObject callback = new JsonObject();
+		callback.putNumber("max_pool_size", 20);
+		callback.putBoolean("keep_alive", true);
+		JsonObject config = new JsonObject();
+		config.putObject("callback", callback);
+		registry = CallbackClientRegistry.get(vertx, config);
+	}
+
+	@Test
+	public void testClientSharedForSameHost() throws MalformedURLException {
+		HttpClient first = registry.acquire(new URL("http://localhost:8080/first"));
+		HttpClient second = registry.acquire(new URL("http://LOCALHOST:8080/second?query"));
+		assertSame(first, second);
+		assertEquals(1, registry.size());
+		verify(vertx, times(1)).createHttpClient();
+		verify(first).setHost("localhost");
+		verify(first).setPort(8080);
+		verify(first).setKeepAlive(true);
+		verify(first).setMaxPoolSize(20);
+	}
+
+	@Test
+	public void testClientPerHostAndPort() throws MalformedURLException {
+		HttpClient first = registry.acquire(new URL("http://localhost:8080/response"));
+		HttpClient second = registry.acquire(new URL("http://localhost:8081/response"));
+		assertNotSame(first, second);
+		assertEquals(2, registry.size());
+	}
+
+	@Test
+	public void testDefaultPortAndScheme() throws MalformedURLException {
+		HttpClient client = registry.acquire(new URL("https://www.test.com/response"));
+		verify(client).setPort(443);
+		verify(client).setSSL(true);
+	}
+
+	@Test
+	public void testRegistrySharedOnSameThread() {
+		assertSame(registry, CallbackClientRegistry.get(vertx, new JsonObject()));
+	}
+
+	@Test
+	public void testClose() throws MalformedURLException {
+		HttpClient client = registry.acquire(new URL("http://localhost:8080/response"));
+		registry.release(new URL("http://localhost:8080/response"));
+		registry.close();
+		verify(client).close();
+		assertEquals(0, registry.size());
+	}
+}
@@ -0,0 +1,310 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+
+import javax.ws.rs.core.MediaType;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.http.CaseInsensitiveMultiMap;
+import org.vertx.java.core.http.HttpClient;
+import org.vertx.java.core.http.HttpClientRequest;
+import org.vertx.java.core.http.HttpClientResponse;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.callback.CallbackDelivery;
+import org.vertx.java.http.eventbusbridge.callback.CallbackMetrics;
+import org.vertx.java.http.eventbusbridge.metrics.BridgeMetrics;
+import org.vertx.java.http.eventbusbridge.metrics.CallbackHostMetrics;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeResponse;
+
+/**
+ * Tests for CallbackDelivery.
+ *
+ * @author j2ro
+ *
+ */
+@SuppressWarnings({ "unchecked", "rawtypes" })
+public class CallbackDeliveryTest {
+
+	private static final long TIMER_ID = 7;
+
+	private Vertx vertx;
+	private HttpClient httpClient;
+	private HttpClientRequest request;
+	private EventBus eventBus;
+	private CallbackDelivery delivery;
+
+	@Before
+	public void setUp() {
+		vertx = Mockito.mock(Vertx.class);
+		CallbackMetrics.reset();
+		BridgeMetrics.reset();
+		httpClient = Mockito.mock(HttpClient.class);
+		request = Mockito.mock(HttpClientRequest.class);
+		eventBus = Mockito.mock(EventBus.class);
+		when(vertx.createHttpClient()).thenReturn(httpClient);
+		when(vertx.eventBus()).thenReturn(eventBus);
+		when(vertx.setTimer(anyLong(), any(Handler.class))).thenReturn(TIMER_ID);
+		when(httpClient.post(anyString(), any(Handler.class))).thenReturn(request);
+		when(request.headers()).thenReturn(new CaseInsensitiveMultiMap());
+		JsonObject config = new JsonObject()
+				.putObject("callback", new JsonObject()
+						.putString("correlation_header", "X-Correlation-Id")
+						.putNumber("idle_timeout", 1)
+						.putObject("batch", new JsonObject()
+								.putArray("url_re", new JsonArray().addString("http://localhost:8080/batched.*"))
+								.putNumber("max_size", 2)
+								.putNumber("window", 50))
+						.putObject("retry", new JsonObject()
+								.putNumber("max_retries", 1)
+								.putNumber("initial_backoff", 100)
+								.putNumber("jitter", 0)
+								.putNumber("queue_size", 1))
+						.putObject("bulkhead", new JsonObject()
+								.putNumber("max_in_flight", 2)
+								.putNumber("queue_size", 1))
+						.putObject("circuit_breaker", new JsonObject()
+								.putNumber("failure_threshold", 2)
+								.putNumber("reset_timeout", 60000)
+								.putString("dead_letter_address", "dead.letter")));
+		delivery = CallbackDelivery.get(vertx, config);
+	}
+
+	@Test
+	public void testUnbatchedUrlPostedImmediately() throws MalformedURLException {
+		delivery.deliver(new URL("http://localhost:8080/response"), MediaType.APPLICATION_JSON, true, createResponse("first"));
+		Buffer body = captureBody(1).get(0);
+		assertEquals("{\"address\":\"first\",\"successful\":true}", body.toString());
+		assertEquals(String.valueOf(body.length()), request.headers().get("Content-Length"));
+		assertEquals(0, delivery.pendingBatches());
+	}
+
+	@Test
+	public void testCorrelationIdHeader() throws MalformedURLException {
+		EventBusBridgeResponse response = createResponse("first");
+		response.setCorrelationId("order-42");
+		delivery.deliver(new URL("http://localhost:8080/response"), MediaType.APPLICATION_JSON, true, response);
+		assertTrue(captureBody(1).get(0).toString().contains("\"correlationId\":\"order-42\""));
+		assertEquals("order-42", request.headers().get("X-Correlation-Id"));
+	}
+
+	@Test
+	public void testNoCorrelationIdHeaderForBatch() throws MalformedURLException {
+		URL url = new URL("http://localhost:8080/batched");
+		EventBusBridgeResponse first = createResponse("first");
+		first.setCorrelationId("order-1");
+		EventBusBridgeResponse second = createResponse("second");
+		second.setCorrelationId("order-2");
+		delivery.deliver(url, MediaType.APPLICATION_JSON, true, first);
+		delivery.deliver(url, MediaType.APPLICATION_JSON, true, second);
+		String body = captureBody(1).get(0).toString();
+		assertTrue(body.contains("\"correlationId\":\"order-1\"") && body.contains("\"correlationId\":\"order-2\""));
+		assertNull(request.headers().get("X-Correlation-Id"));
+	}
+
+	@Test
+	public void testBatchPostedWhenFull() throws MalformedURLException {
+		URL url = new URL("http://localhost:8080/batched");
+		delivery.deliver(url, MediaType.APPLICATION_JSON, true, createResponse("first"));
+		verify(request, never()).end(any(Buffer.class));
+		assertEquals(1, delivery.pendingBatches());
+
+		delivery.deliver(url, MediaType.APPLICATION_JSON, true, createResponse("second"));
+		verify(vertx).cancelTimer(TIMER_ID);
+		assertEquals("{\"responses\":[{\"address\":\"first\",\"successful\":true},{\"address\":\"second\",\"successful\":true}]}",
+				     captureBody(1).get(0).toString());
+		assertEquals(0, delivery.pendingBatches());
+	}
+
+	@Test
+	public void testBatchPostedWhenWindowCloses() throws MalformedURLException {
+		delivery.deliver(new URL("http://localhost:8080/batched"), MediaType.APPLICATION_JSON, true, createResponse("first"));
+		ArgumentCaptor<Handler> timerHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(vertx).setTimer(eq(50L), timerHandler.capture());
+
+		timerHandler.getValue().handle(TIMER_ID);
+		assertEquals("{\"responses\":[{\"address\":\"first\",\"successful\":true}]}", captureBody(1).get(0).toString());
+		assertEquals(0, delivery.pendingBatches());
+	}
+
+	@Test
+	public void testRetryOnServerError() throws MalformedURLException {
+		URL url = new URL("http://localhost:8080/response");
+		delivery.deliver(url, MediaType.APPLICATION_JSON, true, createResponse("first"));
+		respond(0, 503);
+		ArgumentCaptor<Handler> timerHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(vertx).setTimer(eq(100L), timerHandler.capture());
+		assertEquals(1, delivery.retryQueueDepth(url));
+
+		timerHandler.getValue().handle(TIMER_ID);
+		assertEquals(0, delivery.retryQueueDepth(url));
+		List<Buffer> bodies = captureBody(2);
+		assertEquals(bodies.get(0).toString(), bodies.get(1).toString());
+
+		respond(1, 503);
+		assertEquals(2, CallbackMetrics.getAttempts());
+		assertEquals(1, CallbackMetrics.getRetries());
+		assertEquals(1, CallbackMetrics.getDropped());
+		assertEquals(0, CallbackMetrics.getDelivered());
+	}
+
+	@Test
+	public void testNoRetryOnClientError() throws MalformedURLException {
+		delivery.deliver(new URL("http://localhost:8080/response"), MediaType.APPLICATION_JSON, true, createResponse("first"));
+		respond(0, 400);
+		verify(vertx, never()).setTimer(anyLong(), any(Handler.class));
+		assertEquals(1, CallbackMetrics.getDropped());
+	}
+
+	@Test
+	public void testDelivered() throws MalformedURLException {
+		delivery.deliver(new URL("http://localhost:8080/response"), MediaType.APPLICATION_JSON, true, createResponse("first"));
+		respond(0, 202);
+		assertEquals(1, CallbackMetrics.getDelivered());
+		assertEquals(0, CallbackMetrics.getRetries());
+	}
+
+	@Test
+	public void testRetryQueueOverflow() throws MalformedURLException {
+		URL url = new URL("http://localhost:8080/response");
+		delivery.deliver(url, MediaType.APPLICATION_JSON, true, createResponse("first"));
+		delivery.deliver(url, MediaType.APPLICATION_JSON, true, createResponse("second"));
+		ArgumentCaptor<Handler> exceptionHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(request, times(2)).exceptionHandler(exceptionHandler.capture());
+		exceptionHandler.getAllValues().get(0).handle(new IOException("Connection refused"));
+		exceptionHandler.getAllValues().get(1).handle(new IOException("Connection refused"));
+		assertEquals(1, delivery.retryQueueDepth(url));
+		assertEquals(1, CallbackMetrics.getRetries());
+		assertEquals(1, CallbackMetrics.getDropped());
+	}
+
+	@Test
+	public void testInFlightLimit() throws MalformedURLException {
+		URL url = new URL("http://localhost:8080/response");
+		for (int i = 0; i < 4; i++) {
+			delivery.deliver(url, MediaType.APPLICATION_JSON, true, createResponse("address" + i));
+		}
+		captureBody(2);
+		assertEquals(2, delivery.inFlight(url));
+		assertEquals(1, delivery.queueDepth(url));
+		assertEquals(1, CallbackMetrics.getDropped());
+		assertEquals(0, delivery.inFlight(new URL("http://localhost:8081/response")));
+
+		respond(0, 202);
+		assertEquals("{\"address\":\"address2\",\"successful\":true}", captureBody(3).get(2).toString());
+		assertEquals(2, delivery.inFlight(url));
+		assertEquals(0, delivery.queueDepth(url));
+		JsonObject status = delivery.hostStatus().getObject("http://localhost:8080");
+		assertEquals(2, status.getInteger("in_flight").intValue());
+		assertEquals(0, status.getInteger("queued").intValue());
+	}
+
+	@Test
+	public void testHostMetrics() throws MalformedURLException {
+		URL url = new URL("http://localhost:8080/response");
+		for (int i = 0; i < 3; i++) {
+			delivery.deliver(url, MediaType.APPLICATION_JSON, true, createResponse("address" + i));
+		}
+		CallbackHostMetrics metrics = BridgeMetrics.getCallbackHost("http://localhost:8080");
+		assertEquals(2, metrics.getInFlight());
+		assertEquals(1, metrics.getQueued());
+
+		respond(0, 503);
+		assertEquals(2, metrics.getInFlight());
+		assertEquals(0, metrics.getQueued());
+		assertEquals(1, metrics.getRetrying());
+		JsonObject json = BridgeMetrics.toJson().getObject("callback_hosts").getObject("http://localhost:8080");
+		assertEquals(1, json.getLong("retrying").longValue());
+
+		delivery.close();
+		assertEquals(0, metrics.getQueued());
+		assertEquals(0, metrics.getRetrying());
+	}
+
+	@Test
+	public void testIdleHostEvicted() throws MalformedURLException, InterruptedException {
+		URL url = new URL("http://localhost:8080/response");
+		delivery.deliver(url, MediaType.APPLICATION_JSON, true, createResponse("first"));
+		ArgumentCaptor<Handler> evictionHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(vertx, atLeastOnce()).setPeriodic(eq(1L), evictionHandler.capture());
+		Thread.sleep(5);
+		evictionHandler.getAllValues().get(0).handle(0L);
+		assertEquals(1, delivery.hosts());
+
+		respond(0, 202);
+		Thread.sleep(5);
+		evictionHandler.getAllValues().get(0).handle(0L);
+		assertEquals(0, delivery.hosts());
+		assertEquals(0, BridgeMetrics.getCallbackHost("http://localhost:8080").getInFlight());
+	}
+
+	@Test
+	public void testOpenCircuitSendsToDeadLetterAddress() throws MalformedURLException {
+		URL url = new URL("http://localhost:8080/response");
+		delivery.deliver(url, MediaType.APPLICATION_JSON, true, createResponse("first"));
+		delivery.deliver(url, MediaType.APPLICATION_JSON, true, createResponse("second"));
+		ArgumentCaptor<Handler> exceptionHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(request, times(2)).exceptionHandler(exceptionHandler.capture());
+		exceptionHandler.getAllValues().get(0).handle(new IOException("Connection refused"));
+		exceptionHandler.getAllValues().get(1).handle(new IOException("Connection refused"));
+		assertEquals("open", delivery.hostStatus().getObject("http://localhost:8080").getString("circuit"));
+
+		delivery.deliver(url, MediaType.APPLICATION_JSON, true, createResponse("third"));
+		captureBody(2);
+		ArgumentCaptor<JsonObject> deadLetter = ArgumentCaptor.forClass(JsonObject.class);
+		verify(eventBus).send(eq("dead.letter"), deadLetter.capture());
+		assertEquals("http://localhost:8080/response", deadLetter.getValue().getString("response_url"));
+		assertEquals(MediaType.APPLICATION_JSON, deadLetter.getValue().getString("media_type"));
+		assertEquals("{\"address\":\"third\",\"successful\":true}", deadLetter.getValue().getString("body"));
+		assertEquals(1, CallbackMetrics.getDeadLettered());
+	}
+
+	private void respond(final int attempt, final int status) {
+		ArgumentCaptor<Handler> responseHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(httpClient, atLeast(attempt + 1)).post(anyString(), responseHandler.capture());
+		HttpClientResponse response = Mockito.mock(HttpClientResponse.class);
+		when(response.statusCode()).thenReturn(status);
+		responseHandler.getAllValues().get(attempt).handle(response);
+	}
+
+	private List<Buffer> captureBody(final int times) {
+		ArgumentCaptor<Buffer> body = ArgumentCaptor.forClass(Buffer.class);
+		verify(request, times(times)).end(body.capture());
+		return body.getAllValues();
+	}
+
+	private EventBusBridgeResponse createResponse(final String address) {
+		EventBusBridgeResponse response = new EventBusBridgeResponse();
+		response.setAddress(address);
+		response.setSuccessful(true);
+		return response;
+	}
+}
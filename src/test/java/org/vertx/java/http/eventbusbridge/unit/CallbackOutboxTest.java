@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.callback.CallbackOutbox;
+
+/**
+ * Tests for CallbackOutbox.
+ *
+ * @author j2ro
+ *
+ */
+public class CallbackOutboxTest {
+
+	private static final String JSON = "application/json";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private CallbackOutbox outbox;
+
+	@Before
+	public void setUp() throws IOException {
+		outbox = CallbackOutbox.open(folder.getRoot(), 1024, 10);
+	}
+
+	@After
+	public void tearDown() {
+		outbox.close();
+	}
+
+	@Test
+	public void testRecoverPending() throws IOException {
+		CallbackOutbox.Entry first = outbox.append("http://localhost:8080/first", JSON, "first".getBytes("UTF-8"));
+		outbox.append("http://localhost:8080/second", JSON, "second".getBytes("UTF-8"));
+		outbox.acknowledge(first);
+		outbox.close();
+
+		outbox = CallbackOutbox.open(folder.getRoot(), 1024, 10);
+		List<CallbackOutbox.Entry> recovered = outbox.takeRecovered();
+		assertEquals(1, recovered.size());
+		assertEquals("http://localhost:8080/second", recovered.get(0).getUrl());
+		assertEquals(JSON, recovered.get(0).getMediaType());
+		assertEquals("second", new String(recovered.get(0).getBody(), "UTF-8"));
+		assertTrue(outbox.takeRecovered().isEmpty());
+	}
+
+	@Test
+	public void testRecoverLongUrl() throws IOException {
+		String url = "http://localhost:8080/" + repeat('a', 40000);
+		outbox.append(url, JSON, "long".getBytes("UTF-8"));
+		outbox.close();
+
+		outbox = CallbackOutbox.open(folder.getRoot(), 1024, 10);
+		List<CallbackOutbox.Entry> recovered = outbox.takeRecovered();
+		assertEquals(1, recovered.size());
+		assertEquals(url, recovered.get(0).getUrl());
+		assertEquals("long", new String(recovered.get(0).getBody(), "UTF-8"));
+	}
+
+	@Test
+	public void testUrlTooLong() throws IOException {
+		try {
+			outbox.append("http://localhost:8080/" + repeat('a', 70000), JSON, "long".getBytes("UTF-8"));
+			fail("Expected a url longer than 65535 bytes to be refused");
+		} catch (IOException e) {
+			assertEquals(0, outbox.segmentCount());
+		}
+	}
+
+	@Test
+	public void testAcknowledgedSegmentsDeleted() throws IOException {
+		byte[] body = new byte[600];
+		CallbackOutbox.Entry first = outbox.append("http://localhost:8080/response", JSON, body);
+		CallbackOutbox.Entry second = outbox.append("http://localhost:8080/response", JSON, body);
+		assertEquals(2, outbox.segmentCount());
+		outbox.acknowledge(first);
+		assertEquals(1, outbox.segmentCount());
+		outbox.acknowledge(second);
+		outbox.acknowledge(second);
+		assertEquals(1, outbox.segmentCount());
+		outbox.close();
+
+		outbox = CallbackOutbox.open(folder.getRoot(), 1024, 10);
+		assertTrue(outbox.takeRecovered().isEmpty());
+		assertEquals(0, outbox.segmentCount());
+	}
+
+	@Test
+	public void testClose() throws IOException {
+		outbox.append("http://localhost:8080/response", JSON, "body".getBytes("UTF-8"));
+		outbox.close();
+		assertArrayEquals(new String[] { "0000000000000000000.log" }, folder.getRoot().list());
+		try {
+			outbox.append("http://localhost:8080/response", JSON, "body".getBytes("UTF-8"));
+			fail("Expected an append to a closed outbox to fail");
+		} catch (IOException e) {
+			assertEquals(1, outbox.segmentCount());
+		}
+	}
+
+	@Test
+	public void testDisabledWithoutDirectory() throws IOException {
+		assertNull(CallbackOutbox.get(new JsonObject()));
+	}
+
+	private static String repeat(final char c, final int count) {
+		StringBuilder builder = new StringBuilder(count);
+		for (int i = 0; i < count; i++) {
+			builder.append(c);
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (c) 2014 j2ro
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.security.DecisionCache;
+import org.vertx.java.http.eventbusbridge.security.Whitelist;
+
+/**
+ * Tests for DecisionCache.
+ *
+ * @author j2ro
+ *
+ */
+public class DecisionCacheTest {
+
+	@Test
+	public void testHitsAndMisses() {
+		DecisionCache cache = new DecisionCache(10);
+		assertNull(cache.get("address"));
+		cache.put("address", true);
+		cache.put("otheraddress", false);
+		assertEquals(Boolean.TRUE, cache.get("address"));
+		assertEquals(Boolean.FALSE, cache.get("otheraddress"));
+		assertEquals(2, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEvicted() {
+		DecisionCache cache = new DecisionCache(2);
+		cache.put("first", true);
+		cache.put("second", true);
+		cache.get("first");
+		cache.put("third", true);
+		assertEquals(2, cache.size());
+		assertNotNull(cache.get("first"));
+		assertNull(cache.get("second"));
+		assertNotNull(cache.get("third"));
+	}
+
+	@Test
+	public void testBounded() {
+		DecisionCache cache = new DecisionCache(1000);
+		for (int i = 0; i < 5000; i++) {
+			cache.put("address" + i, i % 2 == 0);
+		}
+		assertTrue(cache.size() <= 1000);
+	}
+
+	@Test
+	public void testWhitelistCachesRegexDecisions() {
+		JsonObject whitelistConfig = new JsonObject();
+		whitelistConfig.putArray("address", new JsonArray().addString("someaddress"));
+		whitelistConfig.putArray("address_re", new JsonArray().addString("all_.*"));
+		Whitelist whitelist = Whitelist.compile(whitelistConfig, 100);
+		DecisionCache cache = whitelist.getDecisionCache();
+
+		assertTrue(whitelist.allows("someaddress"));
+		assertEquals(0, cache.getMisses());
+		assertTrue(whitelist.allows("all_addresses"));
+		assertTrue(whitelist.allows("all_addresses"));
+		assertFalse(whitelist.allows("invalidaddress"));
+		assertFalse(whitelist.allows("invalidaddress"));
+		assertEquals(2, cache.getMisses());
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	public void testWhitelistWithoutCache() {
+		assertNull(Whitelist.compile(new JsonObject()).getDecisionCache());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSize() {
+		new DecisionCache(0);
+	}
+}
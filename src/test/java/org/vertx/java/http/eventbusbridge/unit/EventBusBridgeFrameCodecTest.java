@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeFrame;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeFrameType;
+import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
+import org.vertx.java.http.eventbusbridge.util.EventBusBridgeFrameCodec;
+
+/**
+ * Tests for EventBusBridgeFrameCodec.
+ *
+ * @author j2ro
+ *
+ */
+public class EventBusBridgeFrameCodecTest {
+
+	@Test
+	public void testRoundTrip() {
+		byte[] message = "Hello World".getBytes(StandardCharsets.UTF_8);
+		byte[] data = EventBusBridgeFrameCodec.encode(new EventBusBridgeFrame(EventBusBridgeFrameType.send, 42, "testaddress",
+				                                                              EventBusMessageType.String, message));
+		assertEquals(8 + "testaddress".length() + message.length, data.length);
+
+		EventBusBridgeFrame frame = EventBusBridgeFrameCodec.decode(new Buffer(data));
+		assertEquals(EventBusBridgeFrameType.send, frame.getType());
+		assertEquals(42, frame.getId());
+		assertEquals("testaddress", frame.getAddress());
+		assertEquals(EventBusMessageType.String, frame.getEventBusMessageType());
+		assertArrayEquals(message, frame.getMessage());
+	}
+
+	@Test
+	public void testWithoutMessage() {
+		byte[] data = EventBusBridgeFrameCodec.encode(EventBusBridgeFrameType.subscribe, 0, "testaddress", null, null);
+		EventBusBridgeFrame frame = EventBusBridgeFrameCodec.decode(new Buffer(data));
+		assertEquals(EventBusBridgeFrameType.subscribe, frame.getType());
+		assertNull(frame.getEventBusMessageType());
+		assertEquals(0, frame.getMessage().length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTooShort() {
+		EventBusBridgeFrameCodec.decode(new Buffer(new byte[] {1, 0, 0, 0}));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownType() {
+		EventBusBridgeFrameCodec.decode(new Buffer(new byte[] {9, 0, 0, 0, 0, 0, 0, -1}));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testAddressLongerThanFrame() {
+		EventBusBridgeFrameCodec.decode(new Buffer(new byte[] {1, 0, 0, 0, 0, 0, 10, 'a', -1}));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownMessageType() {
+		EventBusBridgeFrameCodec.decode(new Buffer(new byte[] {1, 0, 0, 0, 0, 0, 1, 'a', 99}));
+	}
+}
@@ -0,0 +1,359 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.http.CaseInsensitiveMultiMap;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.http.HttpServerResponse;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.limit.AdmissionController;
+import org.vertx.java.http.eventbusbridge.limit.RateLimiter;
+import org.vertx.java.http.eventbusbridge.model.NoOpResponseHandler;
+import org.vertx.java.http.eventbusbridge.reply.IdempotencyCache;
+import org.vertx.java.http.eventbusbridge.reply.ReplyStore;
+import org.vertx.java.http.eventbusbridge.security.EventBusBridgeRequestValidator;
+import org.vertx.java.http.eventbusbridge.server.EventBusBridgeRequestHandler;
+
+/**
+ * Tests for EventBusBridgeRequestHandler.
+ *
+ * @author j2ro
+ *
+ */
+public class EventBusBridgeRequestHandlerTest {
+
+	private static final long TIMEOUT = 60000;
+
+	private Vertx vertx;
+	private EventBus eventBus;
+	private HttpServerResponse response;
+	private EventBusBridgeRequestHandler handler;
+
+	@Before
+	public void setUp() {
+		AdmissionController.closeInstance();
+		RateLimiter.closeInstance();
+		ReplyStore.closeInstance();
+		IdempotencyCache.closeInstance();
+		EventBusBridgeRequestValidator.clearWhitelists();
+		vertx = Mockito.mock(Vertx.class);
+		eventBus = Mockito.mock(EventBus.class);
+		when(vertx.eventBus()).thenReturn(eventBus);
+		response = Mockito.mock(HttpServerResponse.class);
+		JsonObject config = new JsonObject()
+				.putObject("whitelist", new JsonObject()
+						.putObject("inbound", new JsonObject()
+								.putArray("address", new JsonArray().addString("testaddress")))
+						.putObject("outbound", new JsonObject()
+								.putArray("address", new JsonArray().addString("news/sport"))))
+				.putNumber("timeout", TIMEOUT)
+				.putString("base_path", "/api");
+		handler = new EventBusBridgeRequestHandler(vertx, config);
+	}
+
+	@Test
+	public void testSendJson() throws IOException {
+		handle("POST", "/api/eventbus/send", "application/json; charset=UTF-8", readResource("/unit/test-request.json"));
+		verify(eventBus).sendWithTimeout(eq("testaddress"), eq((Object) "Hello World"), eq(TIMEOUT), any(Handler.class));
+		verify(response).setStatusCode(202);
+		verify(response).end();
+	}
+
+	@Test
+	public void testPublishXml() throws IOException {
+		handle("POST", "/api/eventbus/publish", "application/xml", readResource("/unit/test-request.xml"));
+		verify(eventBus).publish("testaddress", (Object) "Hello World");
+		verify(response).setStatusCode(202);
+	}
+
+	@Test
+	public void testSendInvalidAddress() {
+		handle("POST", "/api/eventbus/send", "application/json",
+		       "{\"address\":\"illegaladdress\",\"message\":\"SGVsbG8gV29ybGQ=\",\"messageType\":\"String\"}");
+		verifyZeroInteractions(eventBus);
+		verify(response).setStatusCode(403);
+	}
+
+	@Test
+	public void testMalformedBody() {
+		handle("POST", "/api/eventbus/send", "application/json", "{\"address\":");
+		verify(response).setStatusCode(400);
+	}
+
+	@Test
+	public void testXmlExternalEntityRejected() {
+		handle("POST", "/api/eventbus/send", "application/xml",
+		       "<?xml version=\"1.0\"?><!DOCTYPE eventBusBridgeRequest [<!ENTITY xxe SYSTEM \"file:///etc/passwd\">]>"
+		       + "<eventBusBridgeRequest><address>testaddress</address><messageType>String</messageType>"
+		       + "<message>&xxe;</message></eventBusBridgeRequest>");
+		verifyZeroInteractions(eventBus);
+		verify(response).setStatusCode(400);
+	}
+
+	@Test
+	public void testUnsupportedMediaType() {
+		handle("POST", "/api/eventbus/send", "text/plain", "Hello World");
+		verify(response).setStatusCode(415);
+	}
+
+	@Test
+	public void testUnknownPath() {
+		handle("POST", "/api/eventbus/unknown", "application/json", null);
+		verify(response).setStatusCode(404);
+	}
+
+	@Test
+	public void testMethodNotAllowed() {
+		handle("GET", "/api/eventbus/send", null, null);
+		verify(response).setStatusCode(405);
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testPublishRetriedWithIdempotencyKey() {
+		for (int i = 0; i < 2; i++) {
+			HttpServerRequest request = mockRequest("POST", "/api/eventbus/publish", "application/json");
+			request.headers().add("Idempotency-Key", "native-publish-1");
+			handler.handle(request);
+			sendBody(request, "{\"address\":\"testaddress\",\"message\":\"SGVsbG8gV29ybGQ=\",\"messageType\":\"String\"}");
+		}
+		verify(eventBus, times(1)).publish("testaddress", (Object) "Hello World");
+		verify(response, times(2)).setStatusCode(202);
+	}
+
+	@Test
+	public void testNoReplyHandlerWithoutResponseUrl() {
+		handle("POST", "/api/eventbus/send", "application/json",
+		       "{\"address\":\"testaddress\",\"message\":\"SGVsbG8gV29ybGQ=\",\"messageType\":\"String\"}");
+		verify(eventBus).sendWithTimeout(eq("testaddress"), eq((Object) "Hello World"), eq(TIMEOUT), any(NoOpResponseHandler.class));
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testStream() {
+		HttpServerRequest request = mockRequest("POST", "/api/eventbus/stream", "application/x-ndjson");
+		handler.handle(request);
+		ArgumentCaptor<Handler> dataHandler = ArgumentCaptor.forClass(Handler.class);
+		ArgumentCaptor<Handler> endHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(request).dataHandler(dataHandler.capture());
+		verify(request).endHandler(endHandler.capture());
+		verify(response).setChunked(true);
+
+		dataHandler.getValue().handle(new Buffer("{\"instruction\":\"publish\",\"address\":\"testaddress\",\"message\":\"SGVsbG8g"));
+		verifyZeroInteractions(eventBus);
+		dataHandler.getValue().handle(new Buffer("V29ybGQ=\",\"messageType\":\"String\"}\n\n{\"address\":\n"));
+		verify(eventBus).publish("testaddress", (Object) "Hello World");
+
+		ArgumentCaptor<Buffer> acknowledgements = ArgumentCaptor.forClass(Buffer.class);
+		verify(response, times(2)).write(acknowledgements.capture());
+		assertEquals("{\"index\":0,\"address\":\"testaddress\",\"status\":202}\n", acknowledgements.getAllValues().get(0).toString());
+		assertTrue(acknowledgements.getAllValues().get(1).toString().startsWith("{\"index\":1,\"status\":400"));
+
+		endHandler.getValue().handle(null);
+		verify(response).end();
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testStreamLineTooLong() {
+		JsonObject config = new JsonObject()
+				.putObject("whitelist", new JsonObject()
+						.putObject("inbound", new JsonObject()
+								.putArray("address", new JsonArray().addString("testaddress"))))
+				.putObject("stream", new JsonObject().putNumber("max_line_length", 120));
+		HttpServerRequest request = mockRequest("POST", "/eventbus/stream", "application/x-ndjson");
+		new EventBusBridgeRequestHandler(vertx, config).handle(request);
+		ArgumentCaptor<Handler> dataHandler = ArgumentCaptor.forClass(Handler.class);
+		ArgumentCaptor<Handler> endHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(request).dataHandler(dataHandler.capture());
+		verify(request).endHandler(endHandler.capture());
+
+		dataHandler.getValue().handle(new Buffer("{\"instruction\":\"publish\",\"address\":\"testaddress\",\"message\":\"SGVsbG8gV29ybGQ=\","
+				                                 + "\"messageType\":\"String\"}\n{\"instruction\":\"publish\",\"address\":\"testaddress\","));
+		dataHandler.getValue().handle(new Buffer("\"message\":\"SGVsbG8gV29ybGQgSGVsbG8gV29ybGQgSGVsbG8gV29ybGQ=\",\"messageType\":\"String\"}\n"));
+		verify(eventBus, times(1)).publish("testaddress", (Object) "Hello World");
+
+		ArgumentCaptor<Buffer> acknowledgements = ArgumentCaptor.forClass(Buffer.class);
+		verify(response, times(2)).write(acknowledgements.capture());
+		assertEquals("{\"index\":0,\"address\":\"testaddress\",\"status\":202}\n", acknowledgements.getAllValues().get(0).toString());
+		assertTrue(acknowledgements.getAllValues().get(1).toString().startsWith("{\"index\":1,\"status\":413"));
+		verify(response).end();
+		verify(response).close();
+
+		endHandler.getValue().handle(null);
+		verify(response, times(1)).end();
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testStreamConnectionFailure() {
+		HttpServerRequest request = mockRequest("POST", "/api/eventbus/stream", "application/x-ndjson");
+		handler.handle(request);
+		ArgumentCaptor<Handler> exceptionHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(request).exceptionHandler(exceptionHandler.capture());
+		exceptionHandler.getValue().handle(new IllegalStateException("Connection reset"));
+		verify(response).close();
+	}
+
+	@Test
+	public void testStreamUnsupportedMediaType() {
+		handler.handle(mockRequest("POST", "/api/eventbus/stream", "application/xml"));
+		verify(response).setStatusCode(415);
+	}
+
+	@Test
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void testBodyTooLarge() {
+		JsonObject config = new JsonObject()
+				.putObject("whitelist", new JsonObject()
+						.putObject("inbound", new JsonObject()
+								.putArray("address", new JsonArray().addString("testaddress"))))
+				.putNumber("max_body_size", 64);
+		HttpServerRequest request = mockRequest("POST", "/eventbus/publish", "application/json");
+		new EventBusBridgeRequestHandler(vertx, config).handle(request);
+		ArgumentCaptor<Handler> dataHandler = ArgumentCaptor.forClass(Handler.class);
+		ArgumentCaptor<Handler> endHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(request).dataHandler(dataHandler.capture());
+		verify(request).endHandler(endHandler.capture());
+
+		dataHandler.getValue().handle(new Buffer("{\"address\":\"testaddress\",\"message\":\"SGVsbG8gV29ybGQ=\","));
+		verify(response, never()).setStatusCode(anyInt());
+		dataHandler.getValue().handle(new Buffer("\"messageType\":\"String\"}"));
+		verify(response).setStatusCode(413);
+		verify(response).close();
+
+		endHandler.getValue().handle(null);
+		verifyZeroInteractions(eventBus);
+		verify(response, times(1)).end();
+	}
+
+	private void handle(final String method, final String path, final String contentType, final String body) {
+		HttpServerRequest request = mockRequest(method, path, contentType);
+		handler.handle(request);
+		if (body != null) {
+			sendBody(request, body);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void sendBody(final HttpServerRequest request, final String body) {
+		ArgumentCaptor<Handler> dataHandler = ArgumentCaptor.forClass(Handler.class);
+		ArgumentCaptor<Handler> endHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(request).dataHandler(dataHandler.capture());
+		verify(request).endHandler(endHandler.capture());
+		dataHandler.getValue().handle(new Buffer(body));
+		endHandler.getValue().handle(null);
+	}
+
+	@Test
+	public void testMetrics() {
+		handler.handle(mockRequest("GET", "/api/eventbus/metrics", null));
+		verify(response).putHeader("Content-Type", "application/json");
+		verify(response).end(contains("\"callbacks\""));
+	}
+
+	@Test
+	public void testMetricsMethodNotAllowed() {
+		handler.handle(mockRequest("POST", "/api/eventbus/metrics", null));
+		verify(response).setStatusCode(405);
+	}
+
+	@Test
+	public void testPrometheusMetrics() {
+		handler.handle(mockRequest("GET", "/api/eventbus/metrics/prometheus", null));
+		verify(response).putHeader("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+		verify(response).end(contains("# TYPE eventbus_bridge_callbacks_total counter"));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testSubscribe() {
+		handler.handle(mockRequest("GET", "/api/eventbus/subscribe/news%2Fsport", null));
+		verify(response).setChunked(true);
+		verify(response).putHeader("Content-Type", "text/event-stream");
+		verify(eventBus).registerHandler(eq("news/sport"), any(Handler.class));
+		verify(response).write(any(Buffer.class));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testSubscribeNotAuthorized() {
+		handler.handle(mockRequest("GET", "/api/eventbus/subscribe/testaddress", null));
+		verify(response).setStatusCode(403);
+		verify(eventBus, never()).registerHandler(anyString(), any(Handler.class));
+	}
+
+	@Test
+	public void testSubscribeMethodNotAllowed() {
+		handler.handle(mockRequest("POST", "/api/eventbus/subscribe/news%2Fsport", null));
+		verify(response).setStatusCode(405);
+	}
+
+	@Test
+	public void testReplyUnknownTicket() {
+		handler.handle(mockRequest("GET", "/api/eventbus/reply/0123456789abcdef0123456789abcdef", null));
+		verify(response).setStatusCode(404);
+	}
+
+	@Test
+	public void testReplyInvalidWait() {
+		HttpServerRequest request = mockRequest("GET", "/api/eventbus/reply/0123456789abcdef0123456789abcdef", null);
+		request.params().add("wait", "soon");
+		handler.handle(request);
+		verify(response).setStatusCode(400);
+	}
+
+	@Test
+	public void testReplyMethodNotAllowed() {
+		handler.handle(mockRequest("DELETE", "/api/eventbus/reply/0123456789abcdef0123456789abcdef", null));
+		verify(response).setStatusCode(405);
+	}
+
+	private HttpServerRequest mockRequest(final String method, final String path, final String contentType) {
+		HttpServerRequest request = Mockito.mock(HttpServerRequest.class);
+		CaseInsensitiveMultiMap headers = new CaseInsensitiveMultiMap();
+		if (contentType != null) {
+			headers.add("Content-Type", contentType);
+		}
+		when(request.method()).thenReturn(method);
+		when(request.path()).thenReturn(path);
+		when(request.headers()).thenReturn(headers);
+		when(request.params()).thenReturn(new CaseInsensitiveMultiMap());
+		when(request.response()).thenReturn(response);
+		return request;
+	}
+
+	private String readResource(final String name) throws IOException {
+		InputStream input = getClass().getResourceAsStream(name);
+		return IOUtils.toString(input);
+	}
+}
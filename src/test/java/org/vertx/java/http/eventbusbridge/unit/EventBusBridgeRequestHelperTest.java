@@ -18,6 +18,7 @@ package org.vertx.java.http.eventbusbridge.unit;
 import static org.junit.Assert.*;
 
 import org.junit.Test;
+import org.vertx.java.core.json.DecodeException;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
@@ -144,4 +145,19 @@ public class EventBusBridgeRequestHelperTest {
 		assertTrue(convertedObject instanceof Short);
 		assertEquals(originalShort, convertedObject);
 	}	
+
+	@Test
+	public void testConvertMediaType() {
+		assertEquals(EventBusMessageType.JsonObject, EventBusMessageTypeConverter.convertMediaType("application/json", " {}".getBytes()));
+		assertEquals(EventBusMessageType.JsonArray, EventBusMessageTypeConverter.convertMediaType("application/json; charset=UTF-8", "\n[]".getBytes()));
+		assertEquals(EventBusMessageType.String, EventBusMessageTypeConverter.convertMediaType("text/plain", "Hello".getBytes()));
+		assertEquals(EventBusMessageType.ByteArray, EventBusMessageTypeConverter.convertMediaType("application/octet-stream", new byte[] {0}));
+		assertNull(EventBusMessageTypeConverter.convertMediaType("application/xml", "<a/>".getBytes()));
+		assertNull(EventBusMessageTypeConverter.convertMediaType(null, new byte[0]));
+	}
+
+	@Test(expected = DecodeException.class)
+	public void testConvertInvalidJsonObject() {
+		EventBusMessageTypeConverter.convertIncomingMessage("{invalid".getBytes(), EventBusMessageType.JsonObject);
+	}
 }
@@ -26,7 +26,9 @@ import javax.xml.bind.Unmarshaller;
 
 import org.glassfish.jersey.internal.util.Base64;
 import org.junit.Test;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeBatchRequest;
 import org.vertx.java.http.eventbusbridge.model.EventBusBridgeRequest;
+import org.vertx.java.http.eventbusbridge.model.EventBusInstruction;
 
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
@@ -64,4 +66,42 @@ public class EventBusBridgeRequestTest {
 		assertEquals("String", request.getEventBusMessageType().toString());
 		assertEquals("application/json", request.getResponseMediaType().toString());
 	}
+
+	@Test
+	public void testUnmarshallingInlineJsonMessage() throws JsonParseException, JsonMappingException, IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		InputStream input = getClass().getResourceAsStream("/unit/test-request-inline.json");
+		EventBusBridgeRequest request = mapper.readValue(input, EventBusBridgeRequest.class);
+		assertEquals("testaddress", request.getAddress());
+		assertEquals("{\"greeting\":\"Hello World\",\"values\":[1,2]}", new String(request.getMessage()));
+		assertEquals("JsonObject", request.getEventBusMessageType().toString());
+	}
+
+	@Test
+	public void testUnmarshallingBatchFromJsonObject() throws JsonParseException, JsonMappingException, IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		String json = "{\"requests\":[{\"instruction\":\"send\",\"address\":\"testaddress\",\"message\":\"SGVsbG8gV29ybGQ=\","
+				+ "\"messageType\":\"String\"}]}";
+		EventBusBridgeBatchRequest batchRequest = mapper.readValue(json, EventBusBridgeBatchRequest.class);
+		assertEquals(1, batchRequest.getRequests().size());
+		assertEquals("testaddress", batchRequest.getRequests().get(0).getAddress());
+		assertEquals(EventBusInstruction.send, batchRequest.getRequests().get(0).getInstruction());
+	}
+
+	@Test
+	public void testUnmarshallingBatchFromJsonArray() throws JsonParseException, JsonMappingException, IOException {
+		ObjectMapper mapper = new ObjectMapper();
+		String json = "[{\"instruction\":\"send\",\"address\":\"testaddress\",\"message\":\"SGVsbG8gV29ybGQ=\",\"messageType\":\"String\"},"
+				+ "{\"instruction\":\"publish\",\"address\":\"otheraddress\",\"message\":\"SGVsbG8gV29ybGQ=\",\"messageType\":\"String\"}]";
+		EventBusBridgeBatchRequest batchRequest = mapper.readValue(json, EventBusBridgeBatchRequest.class);
+		assertEquals(2, batchRequest.getRequests().size());
+		assertEquals("testaddress", batchRequest.getRequests().get(0).getAddress());
+		assertEquals(Base64.decodeAsString("SGVsbG8gV29ybGQ="), new String(batchRequest.getRequests().get(0).getMessage()));
+		assertEquals(EventBusInstruction.publish, batchRequest.getRequests().get(1).getInstruction());
+	}
+
+	@Test(expected = JsonMappingException.class)
+	public void testUnmarshallingBatchWithUnknownField() throws JsonParseException, JsonMappingException, IOException {
+		new ObjectMapper().readValue("{\"request\":[]}", EventBusBridgeBatchRequest.class);
+	}
 }
@@ -24,8 +24,10 @@ import java.nio.charset.Charset;
 import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
+import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
 import org.vertx.java.http.eventbusbridge.security.EventBusBridgeRequestValidator;
+import org.vertx.java.http.eventbusbridge.security.Whitelist;
 
 /**
  * Tests for EventBusBridgeRequestValidator.
@@ -39,6 +41,7 @@ public class EventBusBridgeRequestValidatorTest {
 	
 	@Before
 	public void setUpClass() throws IOException {
+		EventBusBridgeRequestValidator.clearWhitelists();
 		InputStream input = getClass().getResourceAsStream("/unit/security-test-config.json");
 		String configString = IOUtils.toString(input, Charset.defaultCharset());
 		config = new JsonObject(configString);
@@ -75,4 +78,41 @@ public class EventBusBridgeRequestValidatorTest {
 		assertFalse(EventBusBridgeRequestValidator.validateIncomingAddress("test", config));
 	}
 
+	@Test
+	public void testNullAddress() {
+		assertFalse(EventBusBridgeRequestValidator.validateIncomingAddress(null, config));
+	}
+
+	@Test
+	public void testWhitelistSharedByConfigCopies() {
+		config.getObject("whitelist").putNumber("decision_cache_size", 16);
+		JsonObject firstInstance = config.copy();
+		JsonObject secondInstance = config.copy();
+		Whitelist whitelist = EventBusBridgeRequestValidator.getInboundWhitelist(firstInstance);
+		assertTrue(EventBusBridgeRequestValidator.validateIncomingAddress("all_addresses", secondInstance));
+		assertSame(whitelist, EventBusBridgeRequestValidator.getInboundWhitelist(secondInstance));
+		assertNotNull(whitelist.getDecisionCache());
+		assertSame(whitelist.getDecisionCache(), EventBusBridgeRequestValidator.getInboundWhitelist(secondInstance).getDecisionCache());
+	}
+
+	@Test
+	public void testOutboundAddress() {
+		JsonObject outboundConfig = new JsonObject().putObject("whitelist", new JsonObject()
+				.putObject("inbound", new JsonObject().putArray("address", new JsonArray().addString("inaddress")))
+				.putObject("outbound", new JsonObject()
+						.putArray("address", new JsonArray().addString("outaddress"))
+						.putArray("address_re", new JsonArray().addString("news\\..*"))));
+		assertTrue(EventBusBridgeRequestValidator.validateOutgoingAddress("outaddress", outboundConfig));
+		assertTrue(EventBusBridgeRequestValidator.validateOutgoingAddress("news.sport", outboundConfig));
+		assertFalse(EventBusBridgeRequestValidator.validateOutgoingAddress("inaddress", outboundConfig));
+		assertFalse(EventBusBridgeRequestValidator.validateIncomingAddress("outaddress", outboundConfig));
+		assertFalse(EventBusBridgeRequestValidator.validateOutgoingAddress("someaddress", config));
+	}
+
+	@Test
+	public void testMissingWhitelist() {
+		assertFalse(EventBusBridgeRequestValidator.validateIncomingAddress("someaddress", new JsonObject()));
+		assertFalse(Whitelist.compile(null).allows("someaddress"));
+	}
+
 }
@@ -19,6 +19,7 @@ import static org.junit.Assert.*;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 import javax.ws.rs.core.MediaType;
 import javax.xml.bind.JAXBException;
@@ -26,6 +27,7 @@ import javax.xml.bind.JAXBException;
 import org.apache.commons.io.IOUtils;
 import org.glassfish.jersey.internal.util.Base64;
 import org.junit.Test;
+import org.vertx.java.core.buffer.Buffer;
 import org.vertx.java.http.eventbusbridge.model.EventBusBridgeResponse;
 import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
 import org.vertx.java.http.eventbusbridge.util.SerializationHelper;
@@ -74,6 +76,58 @@ public class EventBusBridgeResponseTest {
 		assertEquals(expectedJson, actualJson);
 	}
 	
+	@Test
+	public void testUnmarshallingInlineJsonResponseToJson() throws IOException, JAXBException {
+		EventBusBridgeResponse response = new EventBusBridgeResponse();
+		response.setAddress("originaladdress");
+		response.setSuccessful(true);
+		response.setResponseMessage("{\"greeting\":\"Hello World\"}".getBytes());
+		response.setEventBusMessageType(EventBusMessageType.JsonObject);
+		response.setInlineJson(true);
+		String actualJson = SerializationHelper.serialize(response, MediaType.APPLICATION_JSON, true);
+		assertTrue(actualJson.contains("\"message\":{\"greeting\":\"Hello World\"}"));
+		actualJson = SerializationHelper.serialize(response, MediaType.APPLICATION_JSON);
+		assertTrue(actualJson.contains("\"greeting\" : \"Hello World\""));
+		response.setInlineJson(false);
+		actualJson = SerializationHelper.serialize(response, MediaType.APPLICATION_JSON);
+		assertTrue(actualJson.contains("\"message\" : \"eyJncmVldGluZyI6IkhlbGxvIFdvcmxkIn0=\""));
+	}
+
+	@Test
+	public void testInlineJsonResponseIsUtf8() throws IOException, JAXBException {
+		EventBusBridgeResponse response = new EventBusBridgeResponse();
+		response.setAddress("originaladdress");
+		response.setSuccessful(true);
+		response.setResponseMessage("[\"Gr\u00fc\u00dfe\",\"\u65e5\u672c\"]".getBytes(StandardCharsets.UTF_8));
+		response.setEventBusMessageType(EventBusMessageType.JsonArray);
+		response.setInlineJson(true);
+		String actualJson = SerializationHelper.serialize(response, MediaType.APPLICATION_JSON, true);
+		assertTrue(actualJson.contains("\"message\":[\"Gr\u00fc\u00dfe\",\"\u65e5\u672c\"]"));
+		Buffer buffer = SerializationHelper.serializeToBuffer(response, MediaType.APPLICATION_JSON, true);
+		assertEquals(actualJson, buffer.toString("UTF-8"));
+	}
+
+	@Test
+	public void testCompactSerialization() throws IOException, JAXBException {
+		EventBusBridgeResponse response = createSuccessfulResponse();
+		assertEquals("{\"address\":\"originaladdress\",\"successful\":true,\"message\":\"VkdWemRGSmxjM0J2Ym5ObA==\",\"messageType\":\"String\"}",
+				     SerializationHelper.serialize(response, MediaType.APPLICATION_JSON, true));
+		String compactXml = SerializationHelper.serialize(response, MediaType.APPLICATION_XML, true);
+		assertFalse(compactXml.contains("\n"));
+		assertTrue(compactXml.contains("<address>originaladdress</address><messageType>String</messageType>"));
+	}
+
+	@Test
+	public void testSerializationToBuffer() throws IOException, JAXBException {
+		EventBusBridgeResponse response = createSuccessfulResponse();
+		for (String mediaType : new String[] { MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML }) {
+			for (boolean compact : new boolean[] { true, false }) {
+				Buffer buffer = SerializationHelper.serializeToBuffer(response, mediaType, compact);
+				assertEquals(SerializationHelper.serialize(response, mediaType, compact), buffer.toString("UTF-8"));
+			}
+		}
+	}
+
 	private EventBusBridgeResponse createSuccessfulResponse() {
 		EventBusBridgeResponse response = new EventBusBridgeResponse();
 		response.setAddress("originaladdress");
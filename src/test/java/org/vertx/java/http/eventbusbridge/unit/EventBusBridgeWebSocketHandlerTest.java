@@ -0,0 +1,169 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.buffer.Buffer;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.http.CaseInsensitiveMultiMap;
+import org.vertx.java.core.http.ServerWebSocket;
+import org.vertx.java.core.json.JsonArray;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.limit.AdmissionController;
+import org.vertx.java.http.eventbusbridge.limit.RateLimiter;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeFrame;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeFrameType;
+import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
+import org.vertx.java.http.eventbusbridge.reply.IdempotencyCache;
+import org.vertx.java.http.eventbusbridge.reply.ReplyStore;
+import org.vertx.java.http.eventbusbridge.security.EventBusBridgeRequestValidator;
+import org.vertx.java.http.eventbusbridge.server.EventBusBridgeWebSocketHandler;
+import org.vertx.java.http.eventbusbridge.util.EventBusBridgeFrameCodec;
+
+/**
+ * Tests for EventBusBridgeWebSocketHandler.
+ *
+ * @author j2ro
+ *
+ */
+@SuppressWarnings({ "unchecked", "rawtypes" })
+public class EventBusBridgeWebSocketHandlerTest {
+
+	private static final long TIMEOUT = 60000;
+
+	private EventBus eventBus;
+	private ServerWebSocket socket;
+	private Handler<Buffer> dataHandler;
+
+	@Before
+	public void setUp() {
+		AdmissionController.closeInstance();
+		RateLimiter.closeInstance();
+		ReplyStore.closeInstance();
+		IdempotencyCache.closeInstance();
+		EventBusBridgeRequestValidator.clearWhitelists();
+		Vertx vertx = Mockito.mock(Vertx.class);
+		eventBus = Mockito.mock(EventBus.class);
+		when(vertx.eventBus()).thenReturn(eventBus);
+		JsonObject config = new JsonObject()
+				.putObject("whitelist", new JsonObject()
+						.putObject("inbound", new JsonObject()
+								.putArray("address", new JsonArray().addString("testaddress")))
+						.putObject("outbound", new JsonObject()
+								.putArray("address", new JsonArray().addString("news"))))
+				.putNumber("timeout", TIMEOUT)
+				.putString("base_path", "/api");
+		socket = mockSocket("/api/eventbus/websocket");
+		new EventBusBridgeWebSocketHandler(vertx, config).handle(socket);
+		ArgumentCaptor<Handler> handler = ArgumentCaptor.forClass(Handler.class);
+		verify(socket).dataHandler(handler.capture());
+		dataHandler = handler.getValue();
+	}
+
+	@Test
+	public void testRejectOtherPath() {
+		ServerWebSocket other = mockSocket("/api/eventbus/other");
+		new EventBusBridgeWebSocketHandler(Mockito.mock(Vertx.class), new JsonObject().putString("base_path", "/api")).handle(other);
+		verify(other).reject();
+	}
+
+	@Test
+	public void testSendWithReply() {
+		dataHandler.handle(frame(EventBusBridgeFrameType.send, 7, "testaddress", EventBusMessageType.String, "Hello World"));
+		ArgumentCaptor<Handler> replyHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(eventBus).sendWithTimeout(eq("testaddress"), eq((Object) "Hello World"), eq(TIMEOUT), replyHandler.capture());
+
+		Message<Object> reply = Mockito.mock(Message.class);
+		when(reply.body()).thenReturn((Object) "Hi");
+		AsyncResult<Message<Object>> event = Mockito.mock(AsyncResult.class);
+		when(event.succeeded()).thenReturn(true);
+		when(event.result()).thenReturn(reply);
+		replyHandler.getValue().handle(event);
+
+		EventBusBridgeFrame written = written();
+		assertEquals(EventBusBridgeFrameType.reply, written.getType());
+		assertEquals(7, written.getId());
+		assertEquals(EventBusMessageType.String, written.getEventBusMessageType());
+		assertEquals("Hi", new String(written.getMessage(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testPublishNotAuthorized() {
+		dataHandler.handle(frame(EventBusBridgeFrameType.publish, 3, "news", EventBusMessageType.String, "Hello World"));
+		verify(eventBus, never()).publish(anyString(), any());
+		EventBusBridgeFrame written = written();
+		assertEquals(EventBusBridgeFrameType.error, written.getType());
+		assertEquals(3, written.getId());
+		assertTrue(new String(written.getMessage(), StandardCharsets.UTF_8).startsWith("403 "));
+	}
+
+	@Test
+	public void testSubscribe() {
+		dataHandler.handle(frame(EventBusBridgeFrameType.subscribe, 5, "news", null, null));
+		ArgumentCaptor<Handler> messageHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(eventBus).registerHandler(eq("news"), messageHandler.capture());
+		assertEquals(EventBusBridgeFrameType.reply, written().getType());
+
+		Message<Object> message = Mockito.mock(Message.class);
+		when(message.body()).thenReturn((Object) "Breaking");
+		messageHandler.getValue().handle(message);
+		ArgumentCaptor<Buffer> data = ArgumentCaptor.forClass(Buffer.class);
+		verify(socket, times(2)).write(data.capture());
+		EventBusBridgeFrame delivered = EventBusBridgeFrameCodec.decode(data.getValue());
+		assertEquals(EventBusBridgeFrameType.message, delivered.getType());
+		assertEquals("news", delivered.getAddress());
+		assertEquals("Breaking", new String(delivered.getMessage(), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testMalformedFrame() {
+		dataHandler.handle(new Buffer(new byte[] {1, 2}));
+		EventBusBridgeFrame written = written();
+		assertEquals(EventBusBridgeFrameType.error, written.getType());
+		assertTrue(new String(written.getMessage(), StandardCharsets.UTF_8).startsWith("400 "));
+	}
+
+	private EventBusBridgeFrame written() {
+		ArgumentCaptor<Buffer> data = ArgumentCaptor.forClass(Buffer.class);
+		verify(socket).write(data.capture());
+		return EventBusBridgeFrameCodec.decode(data.getValue());
+	}
+
+	private static Buffer frame(final EventBusBridgeFrameType type, final int id, final String address,
+			                    final EventBusMessageType messageType, final String message) {
+		byte[] messageBytes = message != null ? message.getBytes(StandardCharsets.UTF_8) : null;
+		return new Buffer(EventBusBridgeFrameCodec.encode(type, id, address, messageType, messageBytes));
+	}
+
+	private static ServerWebSocket mockSocket(final String path) {
+		ServerWebSocket socket = Mockito.mock(ServerWebSocket.class);
+		when(socket.path()).thenReturn(path);
+		when(socket.headers()).thenReturn(new CaseInsensitiveMultiMap());
+		return socket;
+	}
+}
@@ -15,25 +15,46 @@
  */
 package org.vertx.java.http.eventbusbridge.unit;
 
+import static org.junit.Assert.*;
 import static org.mockito.Mockito.*;
 
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
 
+import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.Handler;
 import org.vertx.java.core.Vertx;
 import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
 import org.vertx.java.core.http.HttpClient;
 import org.vertx.java.core.json.JsonArray;
 import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.limit.AdmissionController;
+import org.vertx.java.http.eventbusbridge.limit.RateLimiter;
+import org.vertx.java.http.eventbusbridge.metrics.BridgeMetrics;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeBatchRequest;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeBatchResponse;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeBatchStatus;
 import org.vertx.java.http.eventbusbridge.model.EventBusBridgeRequest;
+import org.vertx.java.http.eventbusbridge.model.EventBusBridgeTicket;
 import org.vertx.java.http.eventbusbridge.model.EventBusInstruction;
 import org.vertx.java.http.eventbusbridge.model.EventBusMessageType;
 import org.vertx.java.http.eventbusbridge.model.HttpResponseHandler;
 import org.vertx.java.http.eventbusbridge.model.NoOpResponseHandler;
+import org.vertx.java.http.eventbusbridge.model.SyncResponseHandler;
+import org.vertx.java.http.eventbusbridge.reply.IdempotencyCache;
+import org.vertx.java.http.eventbusbridge.reply.ReplyStore;
+import org.vertx.java.http.eventbusbridge.security.EventBusBridgeRequestValidator;
 import org.vertx.java.http.eventbusbridge.service.HttpEventBusBridgeService;
 import org.vertx.java.platform.Container;
 
@@ -45,6 +66,15 @@ import org.vertx.java.platform.Container;
  */
 public class HttpEventBusBridgeServiceTest {
 
+	@Before
+	public void setUp() {
+		AdmissionController.closeInstance();
+		RateLimiter.closeInstance();
+		ReplyStore.closeInstance();
+		IdempotencyCache.closeInstance();
+		EventBusBridgeRequestValidator.clearWhitelists();
+	}
+
 	@Test
 	public void testForwardSendNoReply() throws MalformedURLException {
 		String address = "testaddress";
@@ -63,7 +93,7 @@ public class HttpEventBusBridgeServiceTest {
 		Container container = Mockito.mock(Container.class); 
 		when(container.config()).thenReturn(config);
 
-		service.forward(request, EventBusInstruction.send, vertx, container);
+		service.forward(request, EventBusInstruction.send, null, vertx, container);
 		verify(eventBus, times(1)).sendWithTimeout(eq(address), eq((Object) message), eq(timeout), any(NoOpResponseHandler.class));
 	}
 	
@@ -89,10 +119,37 @@ public class HttpEventBusBridgeServiceTest {
 		Container container = Mockito.mock(Container.class); 
 		when(container.config()).thenReturn(config);
 
-		service.forward(request, EventBusInstruction.send, vertx, container);
+		service.forward(request, EventBusInstruction.send, null, vertx, container);
 		verify(eventBus, times(1)).sendWithTimeout(eq(address), eq((Object)message), eq(timeout), any(HttpResponseHandler.class));
 	}
 	
+	@Test
+	public void testForwardSendOverloaded() throws MalformedURLException {
+		String address = "testaddress";
+		String message = "HelloWorld";
+		long timeout = 60000;
+		JsonObject config = createConfig(address, timeout);
+		config.putObject("admission", new JsonObject().putNumber("max_in_flight", 1).putNumber("retry_after", 5));
+		HttpEventBusBridgeService service = new HttpEventBusBridgeService();
+
+		Vertx vertx = Mockito.mock(Vertx.class);
+		EventBus eventBus = Mockito.mock(EventBus.class);
+		when(vertx.eventBus()).thenReturn(eventBus);
+
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+
+		service.forward(createRequest(address, message, null, null), EventBusInstruction.send, null, vertx, container);
+		try {
+			service.forward(createRequest(address, message, null, null), EventBusInstruction.send, null, vertx, container);
+			fail("Expected the second send to be refused");
+		} catch (WebApplicationException e) {
+			assertEquals(Response.Status.SERVICE_UNAVAILABLE.getStatusCode(), e.getResponse().getStatus());
+			assertEquals("5", e.getResponse().getHeaderString("Retry-After"));
+		}
+		verify(eventBus, times(1)).sendWithTimeout(eq(address), eq((Object) message), eq(timeout), any(Handler.class));
+	}
+
 	@Test(expected = WebApplicationException.class)
 	public void testForwardSendInvalidAddress() throws MalformedURLException {
 		String invalidAddress = "illegaladdress";
@@ -109,7 +166,24 @@ public class HttpEventBusBridgeServiceTest {
 		Container container = Mockito.mock(Container.class); 
 		when(container.config()).thenReturn(config);
 
-		service.forward(request, EventBusInstruction.send, vertx, container);
+		service.forward(request, EventBusInstruction.send, null, vertx, container);
+	}
+
+	@Test
+	public void testForwardSendInvalidAddressMetrics() throws MalformedURLException {
+		BridgeMetrics.reset();
+		JsonObject config = createConfig("validaddress", 60000);
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+		try {
+			new HttpEventBusBridgeService().forward(createRequest("illegaladdress", "HelloWorld", null, null), EventBusInstruction.send, null,
+					                                Mockito.mock(Vertx.class), container);
+			fail("Expected the send to be refused");
+		} catch (WebApplicationException e) {
+			assertEquals(Response.Status.FORBIDDEN.getStatusCode(), e.getResponse().getStatus());
+		}
+		assertNull(BridgeMetrics.toJson().getObject("addresses").getObject("illegaladdress"));
+		assertEquals(1, BridgeMetrics.getAddress(null).getRejections(Response.Status.FORBIDDEN.getStatusCode()));
 	}
 	
 	@Test
@@ -130,7 +204,7 @@ public class HttpEventBusBridgeServiceTest {
 		Container container = Mockito.mock(Container.class); 
 		when(container.config()).thenReturn(config);
 
-		service.forward(request, EventBusInstruction.publish, vertx, container);
+		service.forward(request, EventBusInstruction.publish, null, vertx, container);
 		verify(eventBus, times(1)).publish(address, (Object) message);
 	}
 	
@@ -150,7 +224,288 @@ public class HttpEventBusBridgeServiceTest {
 		Container container = Mockito.mock(Container.class); 
 		when(container.config()).thenReturn(config);
 
-		service.forward(request, EventBusInstruction.publish, vertx, container);
+		service.forward(request, EventBusInstruction.publish, null, vertx, container);
+	}
+
+	@Test
+	public void testRequest() {
+		String address = "testaddress";
+		String message = "HelloWorld";
+		long timeout = 60000;
+		JsonObject config = createConfig(address, timeout);
+		HttpEventBusBridgeService service = new HttpEventBusBridgeService();
+		EventBusBridgeRequest request = createRequest(address, message, null, null);
+		AsyncResponse asyncResponse = Mockito.mock(AsyncResponse.class);
+
+		Vertx vertx = Mockito.mock(Vertx.class);
+		EventBus eventBus = Mockito.mock(EventBus.class);
+		when(vertx.eventBus()).thenReturn(eventBus);
+
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+
+		service.request(request, asyncResponse, null, vertx, container);
+		verify(eventBus, times(1)).sendWithTimeout(eq(address), eq((Object) message), eq(timeout), any(SyncResponseHandler.class));
+	}
+
+	@Test(expected = WebApplicationException.class)
+	public void testRequestInvalidAddress() {
+		JsonObject config = createConfig("validaddress", 60000);
+		HttpEventBusBridgeService service = new HttpEventBusBridgeService();
+		EventBusBridgeRequest request = createRequest("illegaladdress", "HelloWorld", null, null);
+
+		Vertx vertx = Mockito.mock(Vertx.class);
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+
+		service.request(request, Mockito.mock(AsyncResponse.class), null, vertx, container);
+	}
+
+	@Test
+	public void testForwardRawPublish() throws MalformedURLException {
+		String address = "testaddress";
+		long timeout = 60000;
+		JsonObject config = createConfig(address, timeout);
+		HttpEventBusBridgeService service = new HttpEventBusBridgeService();
+		AsyncResponse asyncResponse = Mockito.mock(AsyncResponse.class);
+
+		Vertx vertx = Mockito.mock(Vertx.class);
+		EventBus eventBus = Mockito.mock(EventBus.class);
+		when(vertx.eventBus()).thenReturn(eventBus);
+
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+
+		service.forwardRaw("{\"hello\":\"world\"}".getBytes(), EventBusInstruction.publish, address, null, "application/json",
+				           null, null, asyncResponse, null, vertx, container);
+		verify(eventBus, times(1)).publish(address, (Object) new JsonObject("{\"hello\":\"world\"}"));
+		verify(asyncResponse, times(1)).resume(any(Response.class));
+	}
+
+	@Test
+	public void testForwardRawSendWithMessageTypeHeader() throws MalformedURLException {
+		String address = "testaddress";
+		long timeout = 60000;
+		JsonObject config = createConfig(address, timeout);
+		HttpEventBusBridgeService service = new HttpEventBusBridgeService();
+
+		Vertx vertx = Mockito.mock(Vertx.class);
+		EventBus eventBus = Mockito.mock(EventBus.class);
+		when(vertx.eventBus()).thenReturn(eventBus);
+
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+
+		service.forwardRaw("42".getBytes(), EventBusInstruction.send, address, "Integer", "text/plain", null, null,
+				           Mockito.mock(AsyncResponse.class), null, vertx, container);
+		verify(eventBus, times(1)).sendWithTimeout(eq(address), eq((Object) Integer.valueOf(42)), eq(timeout), any(NoOpResponseHandler.class));
+	}
+
+	@Test
+	public void testForwardRawMalformedJson() throws MalformedURLException {
+		String address = "testaddress";
+		JsonObject config = createConfig(address, 60000);
+		HttpEventBusBridgeService service = new HttpEventBusBridgeService();
+
+		Vertx vertx = Mockito.mock(Vertx.class);
+		EventBus eventBus = Mockito.mock(EventBus.class);
+		when(vertx.eventBus()).thenReturn(eventBus);
+
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+
+		try {
+			service.forwardRaw("{\"hello\":".getBytes(), EventBusInstruction.publish, address, null, "application/json", null, null,
+					           Mockito.mock(AsyncResponse.class), null, vertx, container);
+			fail("Expected the malformed message to be refused");
+		} catch (WebApplicationException e) {
+			assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), e.getResponse().getStatus());
+		}
+		verify(eventBus, never()).publish(anyString(), any());
+	}
+
+	@Test(expected = WebApplicationException.class)
+	public void testForwardRawUnsupportedMediaType() throws MalformedURLException {
+		String address = "testaddress";
+		JsonObject config = createConfig(address, 60000);
+		HttpEventBusBridgeService service = new HttpEventBusBridgeService();
+		Vertx vertx = Mockito.mock(Vertx.class);
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+
+		service.forwardRaw("<a/>".getBytes(), EventBusInstruction.publish, address, null, "application/xml", null, null,
+				           Mockito.mock(AsyncResponse.class), null, vertx, container);
+	}
+
+	@Test
+	public void testForwardBatch() {
+		String address = "testaddress";
+		String message = "HelloWorld";
+		long timeout = 60000;
+		JsonObject config = createConfig(address, timeout);
+		HttpEventBusBridgeService service = new HttpEventBusBridgeService();
+
+		EventBusBridgeRequest publishRequest = createRequest(address, message, null, null);
+		publishRequest.setInstruction(EventBusInstruction.publish);
+		EventBusBridgeRequest sendRequest = createRequest(address, message, null, null);
+		sendRequest.setInstruction(EventBusInstruction.send);
+		EventBusBridgeRequest invalidAddressRequest = createRequest("illegaladdress", message, null, null);
+		invalidAddressRequest.setInstruction(EventBusInstruction.publish);
+		EventBusBridgeRequest missingInstructionRequest = createRequest(address, message, null, null);
+		EventBusBridgeBatchRequest batchRequest = new EventBusBridgeBatchRequest();
+		batchRequest.setRequests(Arrays.asList(publishRequest, sendRequest, invalidAddressRequest, missingInstructionRequest));
+
+		Vertx vertx = Mockito.mock(Vertx.class);
+		EventBus eventBus = Mockito.mock(EventBus.class);
+		when(vertx.eventBus()).thenReturn(eventBus);
+
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+
+		Response response = service.forwardBatch(batchRequest, null, vertx, container);
+		List<EventBusBridgeBatchStatus> statuses = ((EventBusBridgeBatchResponse) response.getEntity()).getStatuses();
+		assertEquals(4, statuses.size());
+		assertEquals(Response.Status.ACCEPTED.getStatusCode(), statuses.get(0).getStatus());
+		assertEquals(Response.Status.ACCEPTED.getStatusCode(), statuses.get(1).getStatus());
+		assertEquals(Response.Status.FORBIDDEN.getStatusCode(), statuses.get(2).getStatus());
+		assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), statuses.get(3).getStatus());
+		verify(eventBus, times(1)).publish(address, (Object) message);
+		verify(eventBus, times(1)).sendWithTimeout(eq(address), eq((Object) message), eq(timeout), any(NoOpResponseHandler.class));
+	}
+
+	@Test
+	public void testForwardSendTicket() throws MalformedURLException {
+		String address = "testaddress";
+		String message = "HelloWorld";
+		long timeout = 60000;
+		JsonObject config = createConfig(address, timeout);
+		config.putObject("reply_store", new JsonObject().putNumber("max_entries", 10));
+		HttpEventBusBridgeService service = new HttpEventBusBridgeService();
+
+		Vertx vertx = Mockito.mock(Vertx.class);
+		EventBus eventBus = Mockito.mock(EventBus.class);
+		when(vertx.eventBus()).thenReturn(eventBus);
+
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+
+		Response accepted = service.forward(createRequest(address, message, null, null), EventBusInstruction.send, null, vertx, container);
+		assertEquals(Response.Status.ACCEPTED.getStatusCode(), accepted.getStatus());
+		String ticket = ((EventBusBridgeTicket) accepted.getEntity()).getTicket();
+		assertEquals(32, ticket.length());
+		assertTrue(accepted.getLocation().toString().endsWith("eventbus/reply/" + ticket));
+
+		ArgumentCaptor<Handler> replyHandler = ArgumentCaptor.forClass(Handler.class);
+		verify(eventBus).sendWithTimeout(eq(address), eq((Object) message), eq(timeout), replyHandler.capture());
+		AsyncResponse pending = Mockito.mock(AsyncResponse.class);
+		service.reply(ticket, 0, pending, vertx, container);
+		ArgumentCaptor<Response> pendingResponse = ArgumentCaptor.forClass(Response.class);
+		verify(pending).resume(pendingResponse.capture());
+		assertEquals(Response.Status.ACCEPTED.getStatusCode(), pendingResponse.getValue().getStatus());
+
+		Message<Object> reply = Mockito.mock(Message.class);
+		when(reply.body()).thenReturn((Object) "Hi");
+		AsyncResult<Message<Object>> event = Mockito.mock(AsyncResult.class);
+		when(event.succeeded()).thenReturn(true);
+		when(event.result()).thenReturn(reply);
+		replyHandler.getValue().handle(event);
+
+		AsyncResponse completed = Mockito.mock(AsyncResponse.class);
+		service.reply(ticket, 0, completed, vertx, container);
+		ArgumentCaptor<Response> completedResponse = ArgumentCaptor.forClass(Response.class);
+		verify(completed).resume(completedResponse.capture());
+		assertEquals(Response.Status.OK.getStatusCode(), completedResponse.getValue().getStatus());
+		assertTrue(new String((byte[]) completedResponse.getValue().getEntity()).contains("\"address\":\"testaddress\""));
+
+		AsyncResponse taken = Mockito.mock(AsyncResponse.class);
+		service.reply(ticket, 0, taken, vertx, container);
+		ArgumentCaptor<Response> takenResponse = ArgumentCaptor.forClass(Response.class);
+		verify(taken).resume(takenResponse.capture());
+		assertEquals(Response.Status.NOT_FOUND.getStatusCode(), takenResponse.getValue().getStatus());
+	}
+
+	@Test
+	public void testForwardPublishRetried() throws MalformedURLException {
+		String address = "testaddress";
+		String message = "HelloWorld";
+		JsonObject config = createConfig(address, 60000);
+		HttpEventBusBridgeService service = new HttpEventBusBridgeService();
+
+		Vertx vertx = Mockito.mock(Vertx.class);
+		EventBus eventBus = Mockito.mock(EventBus.class);
+		when(vertx.eventBus()).thenReturn(eventBus);
+
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+
+		for (int i = 0; i < 3; i++) {
+			EventBusBridgeRequest request = createRequest(address, message, null, null);
+			request.setIdempotencyKey("publish-1");
+			Response response = service.forward(request, EventBusInstruction.publish, null, vertx, container);
+			assertEquals(Response.Status.ACCEPTED.getStatusCode(), response.getStatus());
+		}
+		verify(eventBus, times(1)).publish(address, (Object) message);
+	}
+
+	@Test
+	public void testForwardSendRetriedTicket() throws MalformedURLException {
+		String address = "testaddress";
+		String message = "HelloWorld";
+		JsonObject config = createConfig(address, 60000);
+		config.putObject("reply_store", new JsonObject().putNumber("max_entries", 10));
+		HttpEventBusBridgeService service = new HttpEventBusBridgeService();
+
+		Vertx vertx = Mockito.mock(Vertx.class);
+		EventBus eventBus = Mockito.mock(EventBus.class);
+		when(vertx.eventBus()).thenReturn(eventBus);
+
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+
+		EventBusBridgeRequest request = createRequest(address, message, null, null);
+		request.setIdempotencyKey("send-1");
+		Response first = service.forward(request, EventBusInstruction.send, null, vertx, container);
+		Response retry = service.forward(request, EventBusInstruction.send, null, vertx, container);
+		assertEquals(((EventBusBridgeTicket) first.getEntity()).getTicket(), ((EventBusBridgeTicket) retry.getEntity()).getTicket());
+		verify(eventBus, times(1)).sendWithTimeout(eq(address), eq((Object) message), eq(60000L), any(Handler.class));
+	}
+
+	@Test
+	public void testForwardBatchCorrelationId() {
+		String address = "testaddress";
+		JsonObject config = createConfig(address, 60000);
+		HttpEventBusBridgeService service = new HttpEventBusBridgeService();
+
+		EventBusBridgeRequest publishRequest = createRequest(address, "HelloWorld", null, null);
+		publishRequest.setInstruction(EventBusInstruction.publish);
+		publishRequest.setCorrelationId("order-1");
+		EventBusBridgeRequest invalidRequest = createRequest("illegaladdress", "HelloWorld", null, null);
+		invalidRequest.setInstruction(EventBusInstruction.publish);
+		invalidRequest.setCorrelationId("order-2");
+		EventBusBridgeBatchRequest batchRequest = new EventBusBridgeBatchRequest();
+		batchRequest.setRequests(Arrays.asList(publishRequest, invalidRequest));
+
+		Vertx vertx = Mockito.mock(Vertx.class);
+		when(vertx.eventBus()).thenReturn(Mockito.mock(EventBus.class));
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+
+		Response response = service.forwardBatch(batchRequest, null, vertx, container);
+		List<EventBusBridgeBatchStatus> statuses = ((EventBusBridgeBatchResponse) response.getEntity()).getStatuses();
+		assertEquals("order-1", statuses.get(0).getCorrelationId());
+		assertEquals("order-2", statuses.get(1).getCorrelationId());
+		assertEquals(Response.Status.FORBIDDEN.getStatusCode(), statuses.get(1).getStatus());
+	}
+
+	@Test(expected = WebApplicationException.class)
+	public void testForwardEmptyBatch() {
+		JsonObject config = createConfig("testaddress", 60000);
+		HttpEventBusBridgeService service = new HttpEventBusBridgeService();
+		Vertx vertx = Mockito.mock(Vertx.class);
+		Container container = Mockito.mock(Container.class);
+		when(container.config()).thenReturn(config);
+
+		service.forwardBatch(new EventBusBridgeBatchRequest(), null, vertx, container);
 	}
 
 	private EventBusBridgeRequest createRequest(String address, String message, URL responseUrl, String responseMediaType) {
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.model.EventBusInstruction;
+import org.vertx.java.http.eventbusbridge.reply.IdempotencyCache;
+
+/**
+ * Tests for IdempotencyCache.
+ *
+ * @author j2ro
+ *
+ */
+public class IdempotencyCacheTest {
+
+	@Before
+	public void setUp() {
+		IdempotencyCache.closeInstance();
+	}
+
+	@Test
+	public void testEnabledByDefault() {
+		assertTrue(IdempotencyCache.get(new JsonObject()).isEnabled());
+		assertFalse(createCache(0, 60000).isEnabled());
+	}
+
+	@Test
+	public void testNotReplaced() {
+		IdempotencyCache cache = createCache(100, 60000);
+		assertNull(cache.claim(EventBusInstruction.publish, "address", "key"));
+		assertSame(cache, IdempotencyCache.get(new JsonObject()));
+		assertNotNull(IdempotencyCache.get(new JsonObject()).claim(EventBusInstruction.publish, "address", "key"));
+	}
+
+	@Test
+	public void testRetryDeduplicated() {
+		IdempotencyCache cache = createCache(100, 60000);
+		assertNull(cache.claim(EventBusInstruction.publish, "address", "key"));
+		assertSame(IdempotencyCache.NO_TICKET, cache.claim(EventBusInstruction.publish, "address", "key"));
+		assertEquals(1, cache.getDeduplicated());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testTicketRecorded() {
+		IdempotencyCache cache = createCache(100, 60000);
+		assertNull(cache.claim(EventBusInstruction.send, "address", "key"));
+		cache.record(EventBusInstruction.send, "address", "key", "ticket");
+		assertEquals("ticket", cache.claim(EventBusInstruction.send, "address", "key"));
+	}
+
+	@Test
+	public void testKeyScopedByInstructionAndAddress() {
+		IdempotencyCache cache = createCache(100, 60000);
+		assertNull(cache.claim(EventBusInstruction.send, "address", "key"));
+		assertNull(cache.claim(EventBusInstruction.publish, "address", "key"));
+		assertNull(cache.claim(EventBusInstruction.send, "other", "key"));
+		assertEquals(0, cache.getDeduplicated());
+	}
+
+	@Test
+	public void testRelease() {
+		IdempotencyCache cache = createCache(100, 60000);
+		assertNull(cache.claim(EventBusInstruction.send, "address", "key"));
+		cache.release(EventBusInstruction.send, "address", "key");
+		assertNull(cache.claim(EventBusInstruction.send, "address", "key"));
+	}
+
+	@Test
+	public void testWindow() throws InterruptedException {
+		IdempotencyCache cache = createCache(100, 1);
+		assertNull(cache.claim(EventBusInstruction.publish, "address", "key"));
+		Thread.sleep(5);
+		assertNull(cache.claim(EventBusInstruction.publish, "address", "key"));
+	}
+
+	@Test
+	public void testEviction() {
+		IdempotencyCache cache = createCache(2, 60000);
+		cache.claim(EventBusInstruction.publish, "address", "first");
+		cache.claim(EventBusInstruction.publish, "address", "second");
+		cache.claim(EventBusInstruction.publish, "address", "third");
+		assertEquals(2, cache.size());
+		assertNotNull(cache.claim(EventBusInstruction.publish, "address", "third"));
+		assertNull(cache.claim(EventBusInstruction.publish, "address", "first"));
+	}
+
+	private IdempotencyCache createCache(final int maxKeys, final long window) {
+		IdempotencyCache.closeInstance();
+		return IdempotencyCache.get(new JsonObject().putObject("idempotency", new JsonObject()
+				.putNumber("max_keys", maxKeys)
+				.putNumber("window", window)));
+	}
+}
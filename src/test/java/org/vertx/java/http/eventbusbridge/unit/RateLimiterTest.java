@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.net.InetSocketAddress;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.vertx.java.core.http.CaseInsensitiveMultiMap;
+import org.vertx.java.core.http.HttpServerRequest;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.limit.RateLimiter;
+import org.vertx.java.http.eventbusbridge.limit.TokenBucket;
+
+/**
+ * Tests for RateLimiter and TokenBucket.
+ *
+ * @author j2ro
+ *
+ */
+public class RateLimiterTest {
+
+	private RateLimiter limiter;
+
+	@Before
+	public void setUp() {
+		RateLimiter.closeInstance();
+		JsonObject config = new JsonObject()
+				.putObject("rate_limit", new JsonObject()
+						.putObject("address", new JsonObject()
+								.putObject("testaddress", new JsonObject().putNumber("rate", 1).putNumber("burst", 2)))
+						.putObject("address_re", new JsonObject()
+								.putObject("valid.*", new JsonObject().putNumber("rate", 1)))
+						.putObject("client", new JsonObject()
+								.putString("header", "X-Client-Id")
+								.putNumber("rate", 1)
+								.putNumber("burst", 3))
+						.putNumber("max_buckets", 64));
+		limiter = RateLimiter.get(config);
+	}
+
+	@Test
+	public void testTokenBucketBurst() {
+		TokenBucket bucket = new TokenBucket(10, 3);
+		long now = System.nanoTime();
+		assertEquals(0, bucket.tryAcquire(now));
+		assertEquals(0, bucket.tryAcquire(now));
+		assertEquals(0, bucket.tryAcquire(now));
+		assertEquals(100000000L, bucket.tryAcquire(now));
+		assertFalse(bucket.isFull(now));
+		assertEquals(0, bucket.tryAcquire(now + 100000000L));
+		assertTrue(bucket.isFull(now + 1000000000L));
+	}
+
+	@Test
+	public void testAddressLimit() {
+		assertEquals(0, limiter.acquire("testaddress", null));
+		assertEquals(0, limiter.acquire("testaddress", null));
+		assertTrue(limiter.acquire("testaddress", null) > 0);
+		assertEquals(0, limiter.acquire("unlimitedaddress", null));
+	}
+
+	@Test
+	public void testAddressRegexLimitPerAddress() {
+		assertEquals(0, limiter.acquire("valid1", null));
+		assertTrue(limiter.acquire("valid1", null) > 0);
+		assertEquals(0, limiter.acquire("valid2", null));
+	}
+
+	@Test
+	public void testClientLimit() {
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, limiter.acquire("address" + i, "client"));
+		}
+		assertTrue(limiter.acquire("address", "client") > 0);
+		assertEquals(0, limiter.acquire("address", "otherclient"));
+	}
+
+	@Test
+	public void testBucketsBounded() {
+		for (int i = 0; i < 1000; i++) {
+			assertEquals(0, limiter.acquire("valid" + i, "client" + i));
+		}
+		assertTrue(limiter.addressBuckets() <= 64);
+		assertTrue(limiter.clientBuckets() <= 64);
+	}
+
+	@Test
+	public void testNotReplaced() {
+		assertSame(limiter, RateLimiter.get(new JsonObject()));
+	}
+
+	@Test
+	public void testIdentify() {
+		HttpServerRequest request = Mockito.mock(HttpServerRequest.class);
+		CaseInsensitiveMultiMap headers = new CaseInsensitiveMultiMap();
+		when(request.headers()).thenReturn(headers);
+		when(request.remoteAddress()).thenReturn(new InetSocketAddress("127.0.0.1", 40000));
+		assertEquals("127.0.0.1", limiter.identify(request));
+
+		headers.add("X-Client-Id", "client");
+		assertEquals("client", limiter.identify(request));
+		assertNull(limiter.identify(null));
+	}
+}
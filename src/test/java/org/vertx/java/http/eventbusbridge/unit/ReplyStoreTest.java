@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.vertx.java.core.Context;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.reply.ParkedReply;
+import org.vertx.java.http.eventbusbridge.reply.ReplyStore;
+
+/**
+ * Tests for ReplyStore.
+ *
+ * @author j2ro
+ *
+ */
+public class ReplyStoreTest {
+
+	private Vertx vertx;
+	private List<ParkedReply> replies;
+	private Handler<ParkedReply> handler;
+
+	@Before
+	public void setUp() {
+		ReplyStore.closeInstance();
+		vertx = Mockito.mock(Vertx.class);
+		Context context = Mockito.mock(Context.class);
+		when(vertx.currentContext()).thenReturn(context);
+		doAnswer(new Answer<Void>() {
+			@Override
+			@SuppressWarnings("unchecked")
+			public Void answer(final InvocationOnMock invocation) {
+				((Handler<Void>) invocation.getArguments()[0]).handle(null);
+				return null;
+			}
+		}).when(context).runOnContext(any(Handler.class));
+		replies = new ArrayList<ParkedReply>();
+		handler = new Handler<ParkedReply>() {
+			@Override
+			public void handle(final ParkedReply reply) {
+				replies.add(reply);
+			}
+		};
+	}
+
+	@Test
+	public void testDisabledByDefault() {
+		assertFalse(ReplyStore.get(new JsonObject()).isEnabled());
+		assertTrue(createStore(10, 0, 0).isEnabled());
+	}
+
+	@Test
+	public void testNotReplaced() {
+		ReplyStore store = createStore(10, 60000, 0);
+		String ticket = store.open();
+		ReplyStore other = ReplyStore.get(new JsonObject());
+		assertSame(store, other);
+		assertTrue(other.isEnabled());
+		other.complete(ticket, 200, "application/json", "reply".getBytes());
+		store.get(ticket, 0, vertx, handler);
+		assertEquals("reply", new String(replies.get(0).getBody()));
+	}
+
+	@Test
+	public void testRetrievedOnce() {
+		ReplyStore store = createStore(10, 60000, 0);
+		String ticket = store.open();
+		assertEquals(32, ticket.length());
+		assertNotEquals(ticket, store.open());
+
+		store.get(ticket, 0, vertx, handler);
+		assertSame(ReplyStore.PENDING, replies.get(0));
+
+		store.complete(ticket, 200, "application/json", "reply".getBytes());
+		assertEquals(5, store.getBytes());
+		store.get(ticket, 0, vertx, handler);
+		assertEquals(200, replies.get(1).getStatus());
+		assertEquals("application/json", replies.get(1).getMediaType());
+		assertEquals("reply", new String(replies.get(1).getBody()));
+		assertEquals(0, store.getBytes());
+
+		store.get(ticket, 0, vertx, handler);
+		assertNull(replies.get(2));
+		store.get("unknown", 0, vertx, handler);
+		assertNull(replies.get(3));
+	}
+
+	@Test
+	public void testExpiry() throws InterruptedException {
+		ReplyStore store = createStore(10, 1, 0);
+		String ticket = store.open();
+		store.complete(ticket, 200, "application/json", "reply".getBytes());
+		Thread.sleep(5);
+		store.get(ticket, 0, vertx, handler);
+		assertNull(replies.get(0));
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	public void testEviction() {
+		ReplyStore store = createStore(2, 60000, 0);
+		String first = store.open();
+		String second = store.open();
+		String third = store.open();
+		assertEquals(2, store.size());
+		store.get(first, 0, vertx, handler);
+		store.get(second, 0, vertx, handler);
+		store.get(third, 0, vertx, handler);
+		assertNull(replies.get(0));
+		assertSame(ReplyStore.PENDING, replies.get(1));
+		assertSame(ReplyStore.PENDING, replies.get(2));
+	}
+
+	@Test
+	public void testOffHeap() {
+		ReplyStore store = createStore(10, 60000, 4);
+		String small = store.open();
+		String large = store.open();
+		store.complete(small, 200, "application/json", "abc".getBytes());
+		store.complete(large, 504, "application/json", "timeout".getBytes());
+		store.get(small, 0, vertx, handler);
+		store.get(large, 0, vertx, handler);
+		assertFalse(replies.get(0).isOffHeap());
+		assertTrue(replies.get(1).isOffHeap());
+		assertEquals(504, replies.get(1).getStatus());
+		assertEquals("timeout", new String(replies.get(1).getBody()));
+	}
+
+	@Test
+	public void testWaitForReply() {
+		ReplyStore store = createStore(10, 60000, 0);
+		when(vertx.setTimer(eq(1000L), any(Handler.class))).thenReturn(7L);
+		String ticket = store.open();
+		store.get(ticket, 1000, vertx, handler);
+		assertTrue(replies.isEmpty());
+
+		store.complete(ticket, 200, "application/json", "reply".getBytes());
+		assertEquals("reply", new String(replies.get(0).getBody()));
+		verify(vertx).cancelTimer(7L);
+		assertEquals(0, store.size());
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testWaitTimesOut() {
+		ReplyStore store = createStore(10, 60000, 0);
+		String ticket = store.open();
+		store.get(ticket, 120000, vertx, handler);
+		ArgumentCaptor<Handler> timer = ArgumentCaptor.forClass(Handler.class);
+		verify(vertx).setTimer(eq(30000L), timer.capture());
+
+		timer.getValue().handle(1L);
+		assertSame(ReplyStore.PENDING, replies.get(0));
+		store.complete(ticket, 200, "application/json", "reply".getBytes());
+		assertEquals(1, replies.size());
+		store.get(ticket, 0, vertx, handler);
+		assertEquals("reply", new String(replies.get(1).getBody()));
+	}
+
+	private ReplyStore createStore(final int maxEntries, final long ttl, final int offHeapThreshold) {
+		ReplyStore.closeInstance();
+		return ReplyStore.get(new JsonObject().putObject("reply_store", new JsonObject()
+				.putNumber("max_entries", maxEntries)
+				.putNumber("ttl", ttl)
+				.putNumber("off_heap_threshold", offHeapThreshold)));
+	}
+}
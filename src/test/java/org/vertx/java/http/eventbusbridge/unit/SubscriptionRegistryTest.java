@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) 2014 j2ro
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import java.io.IOException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.vertx.java.core.Handler;
+import org.vertx.java.core.Vertx;
+import org.vertx.java.core.eventbus.EventBus;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.json.JsonObject;
+import org.vertx.java.http.eventbusbridge.subscription.OutboundMessage;
+import org.vertx.java.http.eventbusbridge.subscription.Subscriber;
+import org.vertx.java.http.eventbusbridge.subscription.SubscriptionRegistry;
+
+/**
+ * Tests for SubscriptionRegistry.
+ *
+ * @author j2ro
+ *
+ */
+@SuppressWarnings({ "unchecked", "rawtypes" })
+public class SubscriptionRegistryTest {
+
+	private Vertx vertx;
+	private EventBus eventBus;
+	private SubscriptionRegistry registry;
+
+	@Before
+	public void setUp() {
+		vertx = Mockito.mock(Vertx.class);
+		eventBus = Mockito.mock(EventBus.class);
+		when(vertx.eventBus()).thenReturn(eventBus);
+		registry = SubscriptionRegistry.get(vertx, new JsonObject());
+	}
+
+	@Test
+	public void testRegistrationSharedBySubscribers() throws IOException {
+		Subscriber first = Mockito.mock(Subscriber.class);
+		Subscriber second = Mockito.mock(Subscriber.class);
+		registry.subscribe("testaddress", first);
+		registry.subscribe("testaddress", second);
+		assertEquals(2, registry.getSubscriberCount("testaddress"));
+
+		ArgumentCaptor<Handler> handler = ArgumentCaptor.forClass(Handler.class);
+		verify(eventBus, times(1)).registerHandler(eq("testaddress"), handler.capture());
+
+		Message<Object> message = Mockito.mock(Message.class);
+		when(message.body()).thenReturn((Object) "Hello World");
+		handler.getValue().handle(message);
+
+		ArgumentCaptor<OutboundMessage> delivered = ArgumentCaptor.forClass(OutboundMessage.class);
+		verify(first).deliver(delivered.capture());
+		verify(second).deliver(delivered.getValue());
+		String event = new String(delivered.getValue().getSseEvent(), "UTF-8");
+		assertTrue(event.startsWith("data: {\"address\":\"testaddress\",\"successful\":true,"));
+		assertTrue(event.endsWith("}\n\n"));
+		assertSame(delivered.getValue().getSseEvent(), delivered.getValue().getSseEvent());
+	}
+
+	@Test
+	public void testUnregisteredAfterLastSubscriber() {
+		Subscriber first = Mockito.mock(Subscriber.class);
+		Subscriber second = Mockito.mock(Subscriber.class);
+		registry.subscribe("testaddress", first);
+		registry.subscribe("testaddress", second);
+
+		registry.unsubscribe("testaddress", first);
+		registry.unsubscribe("testaddress", first);
+		verify(eventBus, never()).unregisterHandler(anyString(), any(Handler.class));
+		assertEquals(1, registry.getSubscriberCount("testaddress"));
+
+		registry.unsubscribe("testaddress", second);
+		verify(eventBus).unregisterHandler(eq("testaddress"), any(Handler.class));
+		assertEquals(0, registry.size());
+	}
+
+	@Test
+	public void testRegistrySharedOnSameThread() {
+		assertSame(registry, SubscriptionRegistry.get(vertx, new JsonObject()));
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (c) 2014 j2ro
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vertx.java.http.eventbusbridge.unit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.vertx.java.core.AsyncResult;
+import org.vertx.java.core.eventbus.Message;
+import org.vertx.java.core.eventbus.ReplyException;
+import org.vertx.java.core.eventbus.ReplyFailure;
+import org.vertx.java.http.eventbusbridge.model.SyncResponseHandler;
+
+/**
+ * Tests for SyncResponseHandler.
+ *
+ * @author j2ro
+ *
+ */
+@SuppressWarnings("unchecked")
+public class SyncResponseHandlerTest {
+
+	@Test
+	public void testSuccessfulReply() {
+		AsyncResponse asyncResponse = Mockito.mock(AsyncResponse.class);
+		Message<Object> message = Mockito.mock(Message.class);
+		when(message.body()).thenReturn((Object) "TestResponse");
+		AsyncResult<Message<Object>> event = Mockito.mock(AsyncResult.class);
+		when(event.succeeded()).thenReturn(true);
+		when(event.result()).thenReturn(message);
+
+		new SyncResponseHandler(asyncResponse, MediaType.APPLICATION_JSON, "testaddress").handle(event);
+
+		Response response = captureResponse(asyncResponse);
+		assertEquals(Response.Status.OK.getStatusCode(), response.getStatus());
+		assertEquals(MediaType.APPLICATION_JSON_TYPE, response.getMediaType());
+		assertTrue(((String) response.getEntity()).contains("\"successful\" : true"));
+	}
+
+	@Test
+	public void testTimedOutReply() {
+		AsyncResponse asyncResponse = Mockito.mock(AsyncResponse.class);
+		AsyncResult<Message<Object>> event = Mockito.mock(AsyncResult.class);
+		when(event.succeeded()).thenReturn(false);
+		when(event.failed()).thenReturn(true);
+		when(event.cause()).thenReturn(new ReplyException(ReplyFailure.TIMEOUT, "Timed out"));
+
+		new SyncResponseHandler(asyncResponse, MediaType.APPLICATION_XML, "testaddress").handle(event);
+
+		Response response = captureResponse(asyncResponse);
+		assertEquals(Response.Status.GATEWAY_TIMEOUT.getStatusCode(), response.getStatus());
+		assertTrue(((String) response.getEntity()).contains("<cause>TIMEOUT</cause>"));
+	}
+
+	@Test
+	public void testCorrelationIdEchoed() {
+		AsyncResponse asyncResponse = Mockito.mock(AsyncResponse.class);
+		Message<Object> message = Mockito.mock(Message.class);
+		when(message.body()).thenReturn((Object) "TestResponse");
+		AsyncResult<Message<Object>> event = Mockito.mock(AsyncResult.class);
+		when(event.succeeded()).thenReturn(true);
+		when(event.result()).thenReturn(message);
+
+		new SyncResponseHandler(asyncResponse, MediaType.APPLICATION_XML, "testaddress", false, true, "order-42").handle(event);
+
+		Response response = captureResponse(asyncResponse);
+		assertTrue(((String) response.getEntity()).contains("<correlationId>order-42</correlationId>"));
+	}
+
+	@Test
+	public void testCorrelationIdEchoedJson() {
+		AsyncResponse asyncResponse = Mockito.mock(AsyncResponse.class);
+		Message<Object> message = Mockito.mock(Message.class);
+		when(message.body()).thenReturn((Object) "TestResponse");
+		AsyncResult<Message<Object>> event = Mockito.mock(AsyncResult.class);
+		when(event.succeeded()).thenReturn(true);
+		when(event.result()).thenReturn(message);
+
+		new SyncResponseHandler(asyncResponse, MediaType.APPLICATION_JSON, "testaddress", false, true, "order-42").handle(event);
+
+		Response response = captureResponse(asyncResponse);
+		assertTrue(((String) response.getEntity()).contains("\"correlationId\":\"order-42\""));
+	}
+
+	private Response captureResponse(final AsyncResponse asyncResponse) {
+		ArgumentCaptor<Response> captor = ArgumentCaptor.forClass(Response.class);
+		verify(asyncResponse).resume(captor.capture());
+		return captor.getValue();
+	}
+}